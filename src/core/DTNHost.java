@@ -6,6 +6,7 @@ package core;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import movement.MovementModel;
@@ -20,6 +21,11 @@ import static core.Constants.DEBUG;
  */
 public class DTNHost implements Comparable<DTNHost> {
 	private static int nextAddress = 0;
+	/** the largest speed any host has used */
+	private static double maxSpeed = 0;
+	/** simulation time that the current locations of the hosts
+	 * correspond to */
+	private static double locationTime = 0;
 	private int address;
 
 	private Coord location; 	// where is the host
@@ -35,6 +41,14 @@ public class DTNHost implements Comparable<DTNHost> {
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
 	private ModuleCommunicationBus comBus;
+	/** read-only snapshot of the connections of all the interfaces
+	 * (replaced with a new one when the connections change) */
+	private volatile List<Connection> connections;
+	/** how many times the connections have changed */
+	private int connectionsModCount;
+	/** simulation time until which the router is parked, i.e., its updates
+	 * are skipped (see {@link World#PARK_IDLE_HOSTS_S}) */
+	private double routerParkedUntil = 0;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -60,6 +74,8 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.address = getNextAddress();
 		this.name = groupId+address;
 		this.net = new ArrayList<NetworkInterface>();
+		this.connections = Collections.emptyList();
+		this.connectionsModCount = 0;
 
 		for (NetworkInterface i : interf) {
 			NetworkInterface ni = i.replicate();
@@ -105,6 +121,38 @@ public class DTNHost implements Comparable<DTNHost> {
 	 */
 	public static void reset() {
 		nextAddress = 0;
+		maxSpeed = 0;
+		locationTime = 0;
+	}
+
+	/**
+	 * Sets the simulation time that the current locations of the hosts
+	 * correspond to. Hosts are not moved for the updates that are done at
+	 * the times of external events, so this can be earlier than the
+	 * current simulation time.
+	 * @param time The time of the latest movement of the hosts
+	 */
+	static void setLocationTime(double time) {
+		locationTime = time;
+	}
+
+	/**
+	 * Returns the simulation time that the current locations of the hosts
+	 * correspond to
+	 * @return The time of the latest movement of the hosts
+	 * @see #setLocationTime(double)
+	 */
+	public static double getLocationTime() {
+		return locationTime;
+	}
+
+	/**
+	 * Returns the largest speed that any host has used so far. This is an
+	 * upper bound for the current speeds of all hosts.
+	 * @return The largest speed so far
+	 */
+	public static double getMaxSpeed() {
+		return maxSpeed;
 	}
 
 	/**
@@ -173,17 +221,56 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns true if this host has connections with other hosts
+	 * @return true if this host has connections with other hosts
+	 */
+	public boolean hasConnections() {
+		return !getConnections().isEmpty();
+	}
+
+	/**
+	 * Returns a read-only snapshot of the connections this host has with
+	 * other hosts. The snapshot is not changed afterwards; it is valid until
+	 * the next change in the connections, after which this method returns a
+	 * new snapshot.
+	 * @return a list of connections this host has with other hosts
+	 * @see #getConnectionsModCount()
 	 */
 	public List<Connection> getConnections() {
-		List<Connection> lc = new ArrayList<Connection>();
+		return this.connections;
+	}
 
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
+	/**
+	 * Returns the number of times the connections of this host have changed.
+	 * Data derived from the connections can be cached as long as the count
+	 * stays the same.
+	 * @return the modification count of the connections
+	 */
+	public int getConnectionsModCount() {
+		return this.connectionsModCount;
+	}
+
+	/**
+	 * Called by the network interfaces of this host when their list of
+	 * connections has changed
+	 */
+	void connectionsChanged() {
+		List<Connection> list = new ArrayList<Connection>();
+		for (int i=0, n=net.size(); i<n; i++) {
+			list.addAll(net.get(i).getConnections());
 		}
+		this.connections = Collections.unmodifiableList(list);
+		this.connectionsModCount++;
+		wakeUpRouter();
+	}
 
-		return lc;
+	/**
+	 * Wakes up the router of this host if it is parked, i.e., makes sure the
+	 * router is updated in the next update of this host. Called when the
+	 * state of the router changes so that it may have something to do.
+	 */
+	public void wakeUpRouter() {
+		this.routerParkedUntil = 0;
 	}
 
 	/**
@@ -204,6 +291,72 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 
+	/**
+	 * Returns the simulation time until which this host keeps moving with
+	 * its current velocity (see {@link #getVelocityX()} and
+	 * {@link #getVelocityY()}), i.e., when the host reaches its next waypoint
+	 * or, if the host is waiting, when it may start moving again. For hosts
+	 * that are about to request a new path, or whose movement isn't active,
+	 * the current time is returned.
+	 * @return The time when the velocity of this host can change
+	 */
+	public double getVelocityChangeTime() {
+		double now = SimClock.getTime();
+
+		if (!isMovementActive()) {
+			return now;
+		}
+		if (now < this.nextTimeToMove) {
+			return this.nextTimeToMove; /* waiting */
+		}
+		if (this.path == null || this.destination == null) {
+			return now;
+		}
+
+		double distance = this.location.distance(this.destination);
+		if (distance == 0) {
+			return now;
+		}
+		if (this.speed <= 0) {
+			return Double.MAX_VALUE; /* not going anywhere */
+		}
+		return locationTime + distance / this.speed;
+	}
+
+	/**
+	 * Returns the x-component of this host's current velocity
+	 * @return The x-component of the velocity
+	 */
+	public double getVelocityX() {
+		return getVelocity(this.destination == null ? 0 :
+			this.destination.getX() - this.location.getX());
+	}
+
+	/**
+	 * Returns the y-component of this host's current velocity
+	 * @return The y-component of the velocity
+	 */
+	public double getVelocityY() {
+		return getVelocity(this.destination == null ? 0 :
+			this.destination.getY() - this.location.getY());
+	}
+
+	/**
+	 * Returns the velocity component corresponding to a component of the
+	 * vector from the current location to the destination
+	 * @param delta The component of the vector to the destination
+	 * @return The velocity component (zero if the host is not moving)
+	 */
+	private double getVelocity(double delta) {
+		if (this.path == null || this.destination == null ||
+				SimClock.getTime() < this.nextTimeToMove ||
+				!isMovementActive()) {
+			return 0;
+		}
+		double distance = this.location.distance(this.destination);
+		return (distance == 0 ? 0 : this.speed * delta / distance);
+	}
+
 	/**
 	 * Sets the Node's location overriding any location set by movement model
 	 * @param location The location to set
@@ -332,6 +485,20 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param simulateConnections Should network layer be updated too
 	 */
 	public void update(boolean simulateConnections) {
+		update(simulateConnections, false);
+	}
+
+	/**
+	 * Updates node's network layer and router. If parking is requested, a
+	 * router that is idle after its update (see {@link MessageRouter#isIdle()})
+	 * is parked: it is not updated again before the end of its idle time
+	 * ({@link MessageRouter#getIdleEndTime()}) or a wake-up
+	 * ({@link #wakeUpRouter()}), e.g., by a connection change or a new
+	 * message.
+	 * @param simulateConnections Should network layer be updated too
+	 * @param parkIdleRouter If true, idle routers are parked
+	 */
+	public void update(boolean simulateConnections, boolean parkIdleRouter) {
 		if (!isRadioActive()) {
 			// Make sure inactive nodes don't have connections
 			tearDownAllConnections();
@@ -343,7 +510,18 @@ public class DTNHost implements Comparable<DTNHost> {
 				i.update();
 			}
 		}
+		if (!parkIdleRouter) {
+			this.router.update();
+			return;
+		}
+
+		if (SimClock.getTime() < this.routerParkedUntil) {
+			return; // parked: nothing to do before a wake-up
+		}
 		this.router.update();
+		if (this.router.isIdle()) {
+			this.routerParkedUntil = this.router.getIdleEndTime();
+		}
 	}
 
 	/**
@@ -407,6 +585,43 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.location.translate(dx, dy);
 	}
 
+	/**
+	 * Moves the node like {@link #move(double)} but only if the move can be
+	 * completed on the current path segment, i.e., without requesting a new
+	 * path or waypoint and without informing movement listeners. Doesn't
+	 * change any state shared with other hosts so it can be called
+	 * concurrently for different hosts.
+	 * @param timeIncrement How long time the node moves
+	 * @return True if the move was done (or the node was not supposed to move
+	 * at all), false if nothing was done and {@link #move(double)} must be
+	 * called instead
+	 */
+	public boolean moveOnCurrentSegment(double timeIncrement) {
+		double possibleMovement;
+		double distance;
+
+		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
+			return true;
+		}
+		if (this.destination == null) {
+			return false;
+		}
+
+		possibleMovement = timeIncrement * speed;
+		distance = this.location.distance(this.destination);
+
+		if (possibleMovement >= distance) {
+			return false; /* would reach the next waypoint */
+		}
+
+		this.location.translate(
+				(possibleMovement/distance) * (this.destination.getX() -
+						this.location.getX()),
+				(possibleMovement/distance) * (this.destination.getY() -
+						this.location.getY()));
+		return true;
+	}
+
 	/**
 	 * Sets the next destination and speed to correspond the next waypoint
 	 * on the path.
@@ -424,12 +639,23 @@ public class DTNHost implements Comparable<DTNHost> {
 			return false;
 		}
 
-		this.destination = path.getNextWaypoint();
+		path.moveToNextWaypoint();
+		if (this.destination == null) {
+			this.destination = new Coord(path.getCurrentX(),
+					path.getCurrentY());
+		}
+		else { // reuse the same object for all the destinations
+			this.destination.setLocation(path.getCurrentX(),
+					path.getCurrentY());
+		}
 		this.speed = path.getSpeed();
+		if (this.speed > maxSpeed) {
+			maxSpeed = this.speed;
+		}
 
 		if (this.movListeners != null) {
 			for (MovementListener l : this.movListeners) {
-				l.newDestination(this, this.destination, this.speed);
+				l.newDestination(this, this.destination.clone(), this.speed);
 			}
 		}
 
@@ -18,6 +18,10 @@ public class DTNSim {
 	/** If this option ({@value}) is given to program, batch mode and
 	 * Text UI are used*/
 	public static final String BATCH_MODE_FLAG = "-b";
+	/** If this option ({@value}) is given after the batch mode option (and
+	 * the optional number of runs), it must be followed by the number of
+	 * batch runs that are executed concurrently */
+	public static final String PARALLEL_RUNS_FLAG = "-j";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
 
@@ -34,7 +38,10 @@ public class DTNSim {
 	 * or a with a combination of starting run and the number of runs,
 	 * delimited with a {@value #RANGE_DELIMETER}. Different settings from run
 	 * arrays are used for different runs (see
-	 * {@link Settings#setRunIndex(int)}). Following arguments are the settings
+	 * {@link Settings#setRunIndex(int)}). Batch mode options can be followed
+	 * by the {@link #PARALLEL_RUNS_FLAG} option and the number of runs to
+	 * execute concurrently (see {@link ParallelBatchRunner}). Following
+	 * arguments are the settings
 	 * files for the simulation run (if any). For GUI mode, the number before
 	 * settings files (if given) is the run index to use for that run.
 	 * @param args Command line arguments
@@ -42,6 +49,7 @@ public class DTNSim {
 	public static void main(String[] args) {
 		boolean batchMode = false;
 		int nrofRuns[] = {0,1};
+		int nrofParallelRuns = 1;
 		String confFiles[];
 		int firstConfIndex = 0;
 		int guiIndex = 0;
@@ -52,12 +60,24 @@ public class DTNSim {
 		if (args.length > 0) {
 			if (args[0].equals(BATCH_MODE_FLAG)) {
 				batchMode = true;
-                if (args.length == 1) {
+                if (args.length == 1 || args[1].equals(PARALLEL_RUNS_FLAG)) {
                     firstConfIndex = 1;
                 }
                 else {
                     nrofRuns = parseNrofRuns(args[1]);
                     firstConfIndex = 2;
+                }
+                if (args.length > firstConfIndex &&
+                        args[firstConfIndex].equals(PARALLEL_RUNS_FLAG)) {
+                    if (args.length == firstConfIndex + 1) {
+                        System.err.println("Missing the number of " +
+                                "concurrent runs for option " +
+                                PARALLEL_RUNS_FLAG);
+                        System.exit(-1);
+                    }
+                    nrofParallelRuns =
+                        parseNrofParallelRuns(args[firstConfIndex + 1]);
+                    firstConfIndex += 2;
                 }
 			}
 			else { /* GUI mode */
@@ -76,7 +96,14 @@ public class DTNSim {
 
 		initSettings(confFiles, firstConfIndex);
 
-		if (batchMode) {
+		if (batchMode && nrofParallelRuns > 1) {
+			long startTime = System.currentTimeMillis();
+			new ParallelBatchRunner(confFiles, firstConfIndex).run(
+					nrofRuns[0], nrofRuns[1], nrofParallelRuns);
+			double duration = (System.currentTimeMillis() - startTime)/1000.0;
+			print("---\nAll done in " + String.format("%.2f", duration) + "s");
+		}
+		else if (batchMode) {
 			long startTime = System.currentTimeMillis();
 			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
 				print("Run " + (i+1) + "/" + nrofRuns[1]);
@@ -93,6 +120,25 @@ public class DTNSim {
 		}
 	}
 
+	/**
+	 * Executes a single batch run. Used by {@link ParallelBatchRunner} to
+	 * start a run in a separate run context, where none of the static state
+	 * has been initialized. The registered classes are reset also after the
+	 * run, so that the run context doesn't keep any background threads
+	 * (e.g., of prefetching readers) running after the run.
+	 * @param confFiles File name paths where to read the settings
+	 * @param firstConfIndex Index of the first config file name
+	 * @param runIndex Index of the run
+	 */
+	public static void runBatchRun(String[] confFiles, int firstConfIndex,
+			int runIndex) {
+		initSettings(confFiles, firstConfIndex);
+		Settings.setRunIndex(runIndex);
+		resetForNextRun();
+		new DTNSimTextUI().start();
+		resetForNextRun();
+	}
+
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings
@@ -216,6 +262,28 @@ public class DTNSim {
 		return val;
 	}
 
+	/**
+	 * Parses the number of concurrent batch runs from a command line argument
+	 * @param arg The argument to parse
+	 * @return The number of concurrent runs
+	 */
+	private static int parseNrofParallelRuns(String arg) {
+		int val = 0;
+		try {
+			val = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			/* handled below */
+		}
+
+		if (val < 1) {
+			System.err.println("Invalid argument '" + arg + "' for" +
+					" number of concurrent runs");
+			System.exit(-1);
+		}
+
+		return val;
+	}
+
 	/**
 	 * Prints text to stdout
 	 * @param txt Text to print
@@ -5,49 +5,47 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
+ * <P>
+ * The data that is the same for all replicates of a message (e.g., the
+ * sender, the recipient, the ID and the size) is kept in a payload object
+ * that the replicates share. If a replicate changes any of that data, it
+ * gets its own copy of the payload first (copy-on-write). The path of
+ * nodes the message has passed is a linked list from the latest node
+ * backwards, so replicates share the common part of their paths. Also the
+ * properties are shared until a replicate changes them.
+ * </P>
  */
 public class Message implements Comparable<Message> {
 	/** Value for infinite TTL of message */
 	public static final int INFINITE_TTL = -1;
-	private DTNHost from;
-	private DTNHost to;
-	/** Identifier of the message */
-	private String id;
-	/** Size of the message (bytes) */
-	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path;
+	/** The data that is shared by replicates of the message */
+	private Payload payload;
+	/** Can the payload be shared with other replicates */
+	private boolean payloadShared;
+	/** The last node of the path this message has passed */
+	private Hop path;
 	/** Next unique identifier to be given */
 	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Handles given to the message identifiers */
+	private static Map<String, Integer> handles;
 	/** The time this message was received */
 	private double timeReceived;
-	/** The time when this message was created */
-	private double timeCreated;
-	/** Initial TTL of the message */
-	private int initTtl;
-
-	/** if a response to this message is required, this is the size of the
-	 * response message (or 0 if no response is requested) */
-	private int responseSize;
-	/** if this message is a response message, this is set to the request msg*/
-	private Message requestMsg;
 
 	/** Container for generic message properties. Note that all values
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
-
-	/** Application ID of the application that created the message */
-	private String	appID;
+	/** Can the properties be shared with other replicates */
+	private boolean propertiesShared;
 
 	static {
 		reset();
@@ -63,31 +61,43 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the message (in bytes)
 	 */
 	public Message(DTNHost from, DTNHost to, String id, int size) {
-		this.from = from;
-		this.to = to;
-		this.id = id;
-		this.size = size;
-		this.path = new ArrayList<DTNHost>();
+		this.payload = new Payload(from, to, id, internId(id), size,
+				SimClock.getTime());
+		this.payloadShared = false;
+		this.path = null;
 		this.uniqueId = nextUniqueId;
 
-		this.timeCreated = SimClock.getTime();
-		this.timeReceived = this.timeCreated;
-		this.initTtl = INFINITE_TTL;
-		this.responseSize = 0;
-		this.requestMsg = null;
+		this.timeReceived = this.payload.timeCreated;
 		this.properties = null;
-		this.appID = null;
+		this.propertiesShared = false;
 
 		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 
+	/**
+	 * Creates a replicate of a message. The replicate shares the payload,
+	 * the path and the properties with the original.
+	 * @param original The message to replicate
+	 */
+	private Message(Message original) {
+		this.payload = original.payload;
+		this.payloadShared = true;
+		original.payloadShared = true;
+		this.path = original.path;
+		this.uniqueId = nextUniqueId;
+		this.timeReceived = SimClock.getTime();
+		shareProperties(original);
+
+		Message.nextUniqueId++;
+	}
+
 	/**
 	 * Returns the node this message is originally from
 	 * @return the node this message is originally from
 	 */
 	public DTNHost getFrom() {
-		return this.from;
+		return this.payload.from;
 	}
 
 	/**
@@ -95,7 +105,7 @@ public class Message implements Comparable<Message> {
 	 * @return the node this message is originally to
 	 */
 	public DTNHost getTo() {
-		return this.to;
+		return this.payload.to;
 	}
 
 	/**
@@ -103,7 +113,42 @@ public class Message implements Comparable<Message> {
 	 * @return The message id
 	 */
 	public String getId() {
-		return this.id;
+		return this.payload.id;
+	}
+
+	/**
+	 * Returns an integer handle of the message ID. All replicates of the
+	 * message have the same handle and different messages have different
+	 * handles, so the handle can be used instead of the ID as a key.
+	 * @return The handle of the message ID
+	 */
+	public int getHandle() {
+		return this.payload.handle;
+	}
+
+	/**
+	 * Returns the handle of a message ID
+	 * @param id The message ID
+	 * @return The handle of the ID or -1 if no message has had that ID
+	 */
+	public static int lookupHandle(String id) {
+		Integer handle = handles.get(id);
+		return (handle == null ? -1 : handle.intValue());
+	}
+
+	/**
+	 * Returns the handle of a message ID, giving a new handle for IDs that
+	 * haven't been seen before
+	 * @param id The message ID
+	 * @return The handle of the ID
+	 */
+	private static int internId(String id) {
+		Integer handle = handles.get(id);
+		if (handle == null) {
+			handle = handles.size();
+			handles.put(id, handle);
+		}
+		return handle.intValue();
 	}
 
 	/**
@@ -120,7 +165,7 @@ public class Message implements Comparable<Message> {
 	 * @return the size of the message
 	 */
 	public int getSize() {
-		return this.size;
+		return this.payload.size;
 	}
 
 	/**
@@ -128,15 +173,34 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new Hop(node, this.path);
 	}
 
 	/**
-	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * Returns a list of nodes this message has passed so far. The list is
+	 * a copy, so changing it doesn't change the path of the message.
+	 * @return The list of nodes
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		DTNHost[] hops = new DTNHost[this.path.length];
+		for (Hop h = this.path; h != null; h = h.previous) {
+			hops[h.length - 1] = h.node;
+		}
+		return new ArrayList<DTNHost>(Arrays.asList(hops));
+	}
+
+	/**
+	 * Returns true if the given node is on the path this message has passed
+	 * @param node The node to look for
+	 * @return true if the node is on the path, false if not
+	 */
+	public boolean isOnPath(DTNHost node) {
+		for (Hop h = this.path; h != null; h = h.previous) {
+			if (h.node == node) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -144,7 +208,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.path.length -1;
 	}
 
 	/**
@@ -154,15 +218,26 @@ public class Message implements Comparable<Message> {
 	 * @return The TTL (minutes)
 	 */
 	public int getTtl() {
-		if (this.initTtl == INFINITE_TTL) {
+		if (this.payload.initTtl == INFINITE_TTL) {
 			return Integer.MAX_VALUE;
 		}
 		else {
-			return (int)( ((this.initTtl * 60) -
-					(SimClock.getTime()-this.timeCreated)) /60.0 );
+			return (int)( ((this.payload.initTtl * 60) -
+					(SimClock.getTime()-this.payload.timeCreated)) /60.0 );
 		}
 	}
 
+	/**
+	 * Returns the simulation time when the TTL of the message expires or
+	 * Double.MAX_VALUE if the TTL is infinite
+	 * @return The expiry time (seconds)
+	 */
+	public double getExpiryTime() {
+		if (this.payload.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.payload.timeCreated + this.payload.initTtl * 60;
+	}
 
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
@@ -171,7 +246,7 @@ public class Message implements Comparable<Message> {
 	 * @param ttl The time-to-live to set
 	 */
 	public void setTtl(int ttl) {
-		this.initTtl = ttl;
+		ownPayload().initTtl = ttl;
 	}
 
 	/**
@@ -195,7 +270,7 @@ public class Message implements Comparable<Message> {
 	 * @return the time when this message was created
 	 */
 	public double getCreationTime() {
-		return this.timeCreated;
+		return this.payload.timeCreated;
 	}
 
 	/**
@@ -203,7 +278,7 @@ public class Message implements Comparable<Message> {
 	 * @param request The request message
 	 */
 	public void setRequest(Message request) {
-		this.requestMsg = request;
+		ownPayload().requestMsg = request;
 	}
 
 	/**
@@ -212,7 +287,7 @@ public class Message implements Comparable<Message> {
 	 * @return the message this message is response to
 	 */
 	public Message getRequest() {
-		return this.requestMsg;
+		return this.payload.requestMsg;
 	}
 
 	/**
@@ -220,7 +295,7 @@ public class Message implements Comparable<Message> {
 	 * @return true if this message is a response message
 	 */
 	public boolean isResponse() {
-		return this.requestMsg != null;
+		return this.payload.requestMsg != null;
 	}
 
 	/**
@@ -229,7 +304,7 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the response message
 	 */
 	public void setResponseSize(int size) {
-		this.responseSize = size;
+		ownPayload().responseSize = size;
 	}
 
 	/**
@@ -238,7 +313,7 @@ public class Message implements Comparable<Message> {
 	 * @return the size of the requested response message
 	 */
 	public int getResponseSize() {
-		return responseSize;
+		return this.payload.responseSize;
 	}
 
 	/**
@@ -246,28 +321,52 @@ public class Message implements Comparable<Message> {
 	 * @return a string representation of the message
 	 */
 	public String toString () {
-		return id;
+		return this.payload.id;
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
-	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * Copies message data from other message. The path and the properties
+	 * are shared with the other message until either one changes them.
+	 * If new fields are introduced to this class, most likely they should be
+	 * copied here too (unless done in constructor).
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
-		this.timeCreated = m.timeCreated;
-		this.responseSize = m.responseSize;
-		this.requestMsg  = m.requestMsg;
-		this.initTtl = m.initTtl;
-		this.appID = m.appID;
+		Payload p = ownPayload();
+		this.path = m.path;
+		p.timeCreated = m.payload.timeCreated;
+		p.responseSize = m.payload.responseSize;
+		p.requestMsg  = m.payload.requestMsg;
+		p.initTtl = m.payload.initTtl;
+		p.appID = m.payload.appID;
+		shareProperties(m);
+	}
+
+	/**
+	 * Returns the payload of this message for modification. If the payload
+	 * is shared with other replicates, a copy of it is made first.
+	 * @return The payload that only this message uses
+	 */
+	private Payload ownPayload() {
+		if (this.payloadShared) {
+			this.payload = this.payload.copy();
+			this.payloadShared = false;
+		}
+		return this.payload;
+	}
 
+	/**
+	 * Shares the properties of another message with this message
+	 * @param m The other message
+	 */
+	private void shareProperties(Message m) {
+		this.properties = m.properties;
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+			this.propertiesShared = true;
+			m.propertiesShared = true;
+		}
+		else {
+			this.propertiesShared = false;
 		}
 	}
 
@@ -317,6 +416,11 @@ public class Message implements Comparable<Message> {
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
 		}
+		else if (this.propertiesShared) {
+			/* copy-on-write: other replicates still use the old map */
+			this.properties = new HashMap<String, Object>(this.properties);
+		}
+		this.propertiesShared = false;
 
 		this.properties.put(key, value);
 	}
@@ -326,9 +430,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 
 	/**
@@ -344,20 +446,91 @@ public class Message implements Comparable<Message> {
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		handles = new HashMap<String, Integer>();
 	}
 
 	/**
 	 * @return the appID
 	 */
 	public String getAppID() {
-		return appID;
+		return this.payload.appID;
 	}
 
 	/**
 	 * @param appID the appID to set
 	 */
 	public void setAppID(String appID) {
-		this.appID = appID;
+		ownPayload().appID = appID;
+	}
+
+	/**
+	 * The data that replicates of a message have in common
+	 */
+	private static class Payload {
+		private final DTNHost from;
+		private final DTNHost to;
+		/** Identifier of the message */
+		private final String id;
+		/** Integer handle of the identifier */
+		private final int handle;
+		/** Size of the message (bytes) */
+		private final int size;
+		/** The time when this message was created */
+		private double timeCreated;
+		/** Initial TTL of the message */
+		private int initTtl;
+		/** if a response to this message is required, this is the size of
+		 * the response message (or 0 if no response is requested) */
+		private int responseSize;
+		/** if this message is a response message, this is set to the
+		 * request msg */
+		private Message requestMsg;
+		/** Application ID of the application that created the message */
+		private String appID;
+
+		public Payload(DTNHost from, DTNHost to, String id, int handle,
+				int size, double timeCreated) {
+			this.from = from;
+			this.to = to;
+			this.id = id;
+			this.handle = handle;
+			this.size = size;
+			this.timeCreated = timeCreated;
+			this.initTtl = INFINITE_TTL;
+			this.responseSize = 0;
+			this.requestMsg = null;
+			this.appID = null;
+		}
+
+		/**
+		 * Returns a copy of this payload
+		 * @return a copy of this payload
+		 */
+		public Payload copy() {
+			Payload p = new Payload(from, to, id, handle, size, timeCreated);
+			p.initTtl = this.initTtl;
+			p.responseSize = this.responseSize;
+			p.requestMsg = this.requestMsg;
+			p.appID = this.appID;
+			return p;
+		}
 	}
 
+	/**
+	 * A node on the path of the message. The hops form a linked list from
+	 * the latest node to the first one, so paths of replicates can share
+	 * their common beginning.
+	 */
+	private static class Hop {
+		private final DTNHost node;
+		private final Hop previous;
+		/** Number of nodes on the path up to and including this one */
+		private final int length;
+
+		public Hop(DTNHost node, Hop previous) {
+			this.node = node;
+			this.previous = previous;
+			this.length = (previous == null ? 1 : previous.length + 1);
+		}
+	}
 }
@@ -6,8 +6,10 @@ package core;
 
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.NeighborGrid;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
@@ -32,6 +34,16 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public static final String NET_SUB_NS = "net";
 
+	/**
+	 * Event-driven contact detection -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Boolean. If true,
+	 * interfaces check their connectivity only when, based on the current
+	 * path segments and speeds of the hosts, some contact can start or end.
+	 * Interfaces with a scanning interval or activeness settings are
+	 * checked on every update. Default is false.
+	 */
+	public static final String EVENT_DRIVEN_CONTACTS_S = "eventDrivenContacts";
+
 	/** Activeness offset jitter -setting id ({@value})
 	 * The maximum amount of random offset for the offset */
 	public static final String ACT_JITTER_S = "activenessOffsetJitter";
@@ -49,7 +61,12 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
 
+	/** how much earlier than the predicted contact change time the
+	 * connectivity is checked (to allow rounding errors in the prediction) */
+	private static final double CONTACT_CHECK_MARGIN = 1e-6;
+
 	private static Random rng;
+	private static boolean eventDrivenContacts;
 	protected DTNHost host = null;
 
 	protected String interfacetype;
@@ -60,6 +77,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected double oldTransmitRange;
 	protected int transmitSpeed;
 	protected ConnectivityOptimizer optimizer = null;
+	/** simulation time of the next needed connectivity check in the
+	 * event-driven contacts mode */
+	private double nextContactCheck = 0;
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
@@ -81,6 +101,17 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public static void reset() {
 		rng = new Random(0);
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		eventDrivenContacts = s.getBoolean(EVENT_DRIVEN_CONTACTS_S, false);
+	}
+
+	/**
+	 * Returns true if the event-driven contact detection is in use
+	 * @return true if the event-driven contact detection is in use
+	 * @see #EVENT_DRIVEN_CONTACTS_S
+	 */
+	public static boolean isEventDrivenContacts() {
+		return eventDrivenContacts;
 	}
 
 	/**
@@ -88,7 +119,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface(Settings s) {
 		this.interfacetype = s.getNameSpace();
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
 
 		this.transmitRange = s.getDouble(TRANSMIT_RANGE_S);
 		this.transmitSpeed = s.getInt(TRANSMIT_SPEED_S);
@@ -101,14 +132,14 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface() {
 		this.interfacetype = "Default";
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
 	}
 
 	/**
 	 * copy constructor
 	 */
 	public NetworkInterface(NetworkInterface ni) {
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
 		this.host = ni.host;
 		this.cListeners = ni.cListeners;
 		this.interfacetype = ni.interfacetype;
@@ -154,7 +185,11 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			comBus.subscribe(SPEED_ID, this);
 		}
 
-		if (transmitRange > 0) {
+		if (transmitRange > 0 && NeighborGrid.isEnabled()) {
+			optimizer = NeighborGrid.NeighborGridFactory(
+					this.interfacetype.hashCode(), transmitRange);
+			optimizer.addInterface(this);
+		} else if (transmitRange > 0) {
 			optimizer = ConnectivityGrid.ConnectivityGridFactory(
 					this.interfacetype.hashCode(), transmitRange);
 			optimizer.addInterface(this);
@@ -316,6 +351,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * @param anotherInterface The interface to connect to
 	 */
 	protected void connect(Connection con, NetworkInterface anotherInterface) {
+		this.nextContactCheck = 0;
+		anotherInterface.nextContactCheck = 0;
 		this.connections.add(con);
 		notifyConnectionListeners(CON_UP, anotherInterface.getHost());
 
@@ -334,6 +371,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	protected void disconnect(Connection con,
 			NetworkInterface anotherInterface) {
+		this.nextContactCheck = 0;
+		anotherInterface.nextContactCheck = 0;
 		con.setUpState(false);
 		notifyConnectionListeners(CON_DOWN, anotherInterface.getHost());
 
@@ -379,6 +418,149 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return false;
 	}
 
+	/**
+	 * Updates the location of this interface in the connectivity optimizer,
+	 * tears down the connections that are out of range, and tries to connect
+	 * to the near interfaces. In the event-driven contacts mode, only the
+	 * location is updated if no contact can have started or ended since the
+	 * previous check.
+	 */
+	protected void updateConnectivity() {
+		// First break the old ones
+		optimizer.updateLocation(this);
+		if (!isContactCheckDue()) {
+			return;
+		}
+
+		for (int i=0; i<this.connections.size(); ) {
+			Connection con = this.connections.get(i);
+			NetworkInterface anotherInterface = con.getOtherInterface(this);
+
+			// all connections should be up at this stage
+			assert con.isUp() : "Connection " + con + " was down!";
+
+			if (!isWithinRange(anotherInterface)) {
+				disconnect(con,anotherInterface);
+				connections.remove(i);
+			}
+			else {
+				i++;
+			}
+		}
+		// Then find new possible connections
+		Collection<NetworkInterface> interfaces =
+			optimizer.getNearInterfaces(this);
+		for (NetworkInterface i : interfaces) {
+			connect(i);
+		}
+
+		if (eventDrivenContacts) {
+			scheduleContactCheck();
+		}
+	}
+
+	/**
+	 * Returns true if the connectivity of this interface needs to be
+	 * checked now. Always true if the event-driven contacts mode is not in
+	 * use, or if this interface's scanning or activeness can change with time.
+	 * @return true if the connectivity needs to be checked
+	 */
+	private boolean isContactCheckDue() {
+		if (!eventDrivenContacts || this.scanInterval > 0 ||
+				(this.ah != null && !this.ah.isAlwaysActive())) {
+			return true;
+		}
+		return SimClock.getTime() >= this.nextContactCheck;
+	}
+
+	/**
+	 * Sets the time of the next connectivity check to the earliest time
+	 * when any of the contacts of this interface can start or end. Assumes
+	 * that the hosts keep moving with their current velocities until the
+	 * next velocity change of this host. Changes in the other hosts'
+	 * velocities are taken care of by the checks of their interfaces, and
+	 * all connection and range changes force a new check.
+	 */
+	private void scheduleContactCheck() {
+		double myRange = getTransmitRange();
+		/* interfaces that are not near can't get in range before they have
+		   covered the gap, even if moving towards each other at max speed */
+		double gap = optimizer.getNearDistance() - myRange;
+		if (gap <= 0) {
+			this.nextContactCheck = 0; /* check on every update */
+			return;
+		}
+
+		double now = DTNHost.getLocationTime();
+		double next = this.host.getVelocityChangeTime();
+		double vx = this.host.getVelocityX();
+		double vy = this.host.getVelocityY();
+		double closingSpeed = Math.sqrt(vx*vx + vy*vy) + DTNHost.getMaxSpeed();
+		if (closingSpeed > 0 && now + gap / closingSpeed < next) {
+			next = now + gap / closingSpeed;
+		}
+
+		Coord loc = getLocation();
+		for (NetworkInterface ni : optimizer.getNearInterfaces(this)) {
+			if (ni == this) {
+				continue;
+			}
+			DTNHost other = ni.getHost();
+			double range = Math.min(myRange, ni.getTransmitRange());
+			double t = contactChangeTime(
+					ni.getLocation().getX() - loc.getX(),
+					ni.getLocation().getY() - loc.getY(),
+					other.getVelocityX() - vx, other.getVelocityY() - vy,
+					range);
+			if (now + t < next) {
+				next = now + t;
+			}
+		}
+
+		this.nextContactCheck = next - CONTACT_CHECK_MARGIN;
+	}
+
+	/**
+	 * Returns the time after which two hosts, moving with constant
+	 * velocities, get within range of each other (if they are not in range
+	 * now) or out of range (if they are in range now).
+	 * @param dx Difference of the x-coordinates
+	 * @param dy Difference of the y-coordinates
+	 * @param dvx Difference of the velocities' x-components
+	 * @param dvy Difference of the velocities' y-components
+	 * @param range The range
+	 * @return The time, or {@link Double#MAX_VALUE} if the contact state
+	 * doesn't change
+	 */
+	private static double contactChangeTime(double dx, double dy,
+			double dvx, double dvy, double range) {
+		double a = dvx*dvx + dvy*dvy;
+		double b = dx*dvx + dy*dvy;
+		double c = dx*dx + dy*dy - range*range;
+
+		if (a == 0) {
+			return Double.MAX_VALUE; /* no relative movement */
+		}
+		double discriminant = b*b - a*c;
+		if (c <= 0) { /* in range -> when the distance grows over range */
+			return (-b + Math.sqrt(Math.max(discriminant, 0))) / a;
+		}
+		if (b >= 0 || discriminant < 0) {
+			return Double.MAX_VALUE; /* never gets in range */
+		}
+		return (-b - Math.sqrt(discriminant)) / a;
+	}
+
+	/**
+	 * Updates the location of this interface in the connectivity optimizer
+	 * (if the interface uses one)
+	 */
+	public void updateOptimizerLocation() {
+		if (optimizer != null) {
+			optimizer.updateLocation(this);
+		}
+	}
+
 	/**
 	 * Makes sure that a value is positive
 	 * @param value Value to check
@@ -428,6 +610,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * @param newValue New value for the variable
 	 */
 	public void moduleValueChanged(String key, Object newValue) {
+		this.nextContactCheck = 0;
 		if (key.equals(SCAN_INTERVAL_ID)) {
 			this.scanInterval = (Double)newValue;
 		}
@@ -475,6 +658,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			NetworkInterface anotherInterface) {
 		Connection con = this.connections.get(index);
 		DTNHost anotherNode = anotherInterface.getHost();
+		this.nextContactCheck = 0;
+		anotherInterface.nextContactCheck = 0;
 		con.setUpState(false);
 		notifyConnectionListeners(CON_DOWN, anotherNode);
 
@@ -514,4 +699,51 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			". Connections: " +	this.connections;
 	}
 
+
+	/**
+	 * List of the connections of an interface. Tells the host of the
+	 * interface about the changes (additions, removals and clearing), so the
+	 * host can keep its list of connections up to date.
+	 */
+	@SuppressWarnings("serial")
+	private class ConnectionList extends ArrayList<Connection> {
+		@Override
+		public boolean add(Connection con) {
+			boolean added = super.add(con);
+			changed();
+			return added;
+		}
+
+		@Override
+		public void add(int index, Connection con) {
+			super.add(index, con);
+			changed();
+		}
+
+		@Override
+		public Connection remove(int index) {
+			Connection removed = super.remove(index);
+			changed();
+			return removed;
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			boolean removed = super.remove(o);
+			changed();
+			return removed;
+		}
+
+		@Override
+		public void clear() {
+			super.clear();
+			changed();
+		}
+
+		private void changed() {
+			if (host != null) {
+				host.connectionsChanged();
+			}
+		}
+	}
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs batch mode simulation runs concurrently in the same JVM.
+ * <P>
+ * The simulator keeps a lot of its state in static fields (e.g.,
+ * {@link SimClock}, host addresses and random number generators), so
+ * simulation runs can't share the same classes. Hence, every run gets its
+ * own run context: a class loader that loads all the simulator classes
+ * anew from the class path. The static fields of the classes in one run
+ * context are not visible to any other run, and no resetting between runs
+ * is needed. Only the classes of the Java platform and
+ * {@link SharedRunData} are shared; the latter is used for immutable data
+ * that is loaded once for all the runs (e.g., the map data of map based
+ * movement models).
+ * </P>
+ */
+public class ParallelBatchRunner {
+	/** Name of the method that is called in the run context to execute
+	 * a single run ({@value})
+	 * @see DTNSim#runBatchRun(String[], int, int) */
+	public static final String RUN_METHOD_NAME = "runBatchRun";
+
+	private String[] confFiles;
+	private int firstConfIndex;
+	private URL[] classPath;
+
+	/**
+	 * Constructor.
+	 * @param confFiles File name paths where to read the settings for every
+	 * run
+	 * @param firstConfIndex Index of the first config file name
+	 */
+	public ParallelBatchRunner(String[] confFiles, int firstConfIndex) {
+		this.confFiles = confFiles;
+		this.firstConfIndex = firstConfIndex;
+		this.classPath = parseClassPath(
+				System.getProperty("java.class.path"));
+	}
+
+	/**
+	 * Executes the runs of the given run index range using a pool of threads
+	 * and waits until all runs are done. If a run fails, the other runs are
+	 * stopped and the failure is thrown.
+	 * @param firstRun Index of the first run
+	 * @param lastRun Index of the last run + 1
+	 * @param nrofThreads How many runs are executed at the same time
+	 */
+	public void run(int firstRun, int lastRun, int nrofThreads) {
+		ExecutorService pool = Executors.newFixedThreadPool(nrofThreads,
+				new ThreadFactory() {
+			private int nrofThreads = 0;
+			public Thread newThread(Runnable r) {
+				/* daemon, so runs that ignore the stop request can't keep
+				   the JVM running after a failure */
+				Thread t = new Thread(r, "BatchRun-" + (++nrofThreads));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		CompletionService<Integer> runs =
+			new ExecutorCompletionService<Integer>(pool);
+
+		SharedRunData.setInUse(true);
+		for (int i=firstRun; i<lastRun; i++) {
+			runs.submit(new Run(i));
+		}
+		pool.shutdown();
+
+		try {
+			for (int i=firstRun; i<lastRun; i++) {
+				int runIndex = runs.take().get(); /* in completion order */
+				print("Run " + (runIndex+1) + "/" + lastRun + " done");
+			}
+		} catch (ExecutionException e) {
+			pool.shutdownNow(); /* don't start or continue other runs */
+			Throwable cause = e.getCause();
+			if (cause instanceof InvocationTargetException) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new SimError(cause.toString(), cause);
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			throw new SimError(e);
+		}
+	}
+
+	/**
+	 * Converts a class path string to an array of URLs
+	 * @param path The class path
+	 * @return Locations of the class path entries
+	 */
+	private static URL[] parseClassPath(String path) {
+		String[] entries = path.split(File.pathSeparator);
+		URL[] urls = new URL[entries.length];
+
+		for (int i=0; i<entries.length; i++) {
+			try {
+				urls[i] = new File(entries[i]).toURI().toURL();
+			} catch (MalformedURLException e) {
+				throw new SimError("Invalid class path entry " + entries[i]);
+			}
+		}
+
+		return urls;
+	}
+
+	/**
+	 * A single batch run that is executed in its own run context
+	 */
+	private class Run implements Callable<Integer> {
+		private int runIndex;
+
+		/**
+		 * Constructor.
+		 * @param runIndex Index of the run
+		 */
+		public Run(int runIndex) {
+			this.runIndex = runIndex;
+		}
+
+		public Integer call() throws Exception {
+			Thread thread = Thread.currentThread();
+			ClassLoader previous = thread.getContextClassLoader();
+			URLClassLoader context = new RunContextLoader(classPath);
+			try {
+				thread.setContextClassLoader(context);
+
+				print("Run " + (runIndex+1) + " started");
+				Class<?> sim = Class.forName(DTNSim.class.getName(), true,
+						context);
+				Method m = sim.getMethod(RUN_METHOD_NAME, String[].class,
+						int.class, int.class);
+				m.invoke(null, confFiles, firstConfIndex, runIndex);
+			} finally {
+				thread.setContextClassLoader(previous);
+				context.close();
+			}
+
+			return runIndex;
+		}
+	}
+
+	/**
+	 * Class loader of a run context. Loads all the simulator classes anew,
+	 * except {@link SharedRunData} which is shared by all the run contexts.
+	 */
+	private static class RunContextLoader extends URLClassLoader {
+		private static final String SHARED_CLASS =
+			SharedRunData.class.getName();
+
+		/**
+		 * Constructor.
+		 * @param classPath Locations of the simulator classes
+		 */
+		public RunContextLoader(URL[] classPath) {
+			/* the platform classes are shared between run contexts */
+			super(classPath, ClassLoader.getSystemClassLoader().getParent());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve)
+				throws ClassNotFoundException {
+			if (name.equals(SHARED_CLASS)) {
+				return SharedRunData.class;
+			}
+			return super.loadClass(name, resolve);
+		}
+	}
+
+	/**
+	 * Prints text to stdout
+	 * @param txt Text to print
+	 */
+	private static void print(String txt) {
+		System.out.println(txt);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <P>
+ * Immutable data that is loaded once and shared by all the concurrent batch
+ * runs of a JVM. The run contexts of {@link ParallelBatchRunner} load all the
+ * other simulator classes anew, but this class is loaded only once, so a
+ * value that one run has loaded is available to all the other runs. When
+ * many runs ask for a value at the same time, only one of them loads it and
+ * the others wait for it.
+ * </P>
+ * <P>
+ * Because the run contexts don't share the simulator's classes, the values
+ * must be instances of Java platform classes (e.g., byte arrays) and they
+ * must not be modified after they have been loaded. For the same reason,
+ * this class must not refer to any other simulator class.
+ * </P>
+ */
+public class SharedRunData {
+	/** Is the data shared (are there concurrent runs) */
+	private static volatile boolean inUse = false;
+	/** The values (or the tasks that load them) by their keys */
+	private static final Map<String, FutureTask<Object>> values =
+		new HashMap<String, FutureTask<Object>>();
+
+	/**
+	 * Sets whether the data is shared. Set by {@link ParallelBatchRunner}
+	 * before the concurrent runs are started.
+	 * @param use true if the data is shared
+	 */
+	public static void setInUse(boolean use) {
+		inUse = use;
+	}
+
+	/**
+	 * Returns true if the data is shared between concurrent runs
+	 * @return true if the data is shared
+	 */
+	public static boolean isInUse() {
+		return inUse;
+	}
+
+	/**
+	 * Returns the value for the key. If no run has loaded the value yet, it
+	 * is loaded (in the calling thread) with the given loader. If another run
+	 * is loading the value, waits until it is loaded. If the loading fails,
+	 * the value is not stored and the exception is thrown to the run that
+	 * tried to load it; other runs that were waiting for it try to load it
+	 * themselves.
+	 * @param key The key of the value
+	 * @param loader The loader that loads the value if it is not loaded yet
+	 * @return The value
+	 * @throws Exception if the loader failed to load the value
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(String key, Callable<T> loader) throws Exception {
+		while (true) {
+			FutureTask<Object> task;
+			boolean load = false;
+			synchronized (values) {
+				task = values.get(key);
+				if (task == null) {
+					task = new FutureTask<Object>((Callable<Object>)loader);
+					values.put(key, task);
+					load = true;
+				}
+			}
+
+			if (load) {
+				task.run();
+			}
+
+			try {
+				return (T)task.get();
+			} catch (ExecutionException e) {
+				synchronized (values) {
+					if (values.get(key) == task) {
+						values.remove(key);
+					}
+				}
+				if (load) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Error) {
+						throw (Error)cause;
+					}
+					throw (Exception)cause;
+				}
+				/* loading failed in another run -> try to load it here */
+			}
+		}
+	}
+}
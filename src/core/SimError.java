@@ -21,6 +21,18 @@ public class SimError extends AssertionError {
 		this.e = e;
 	}
 
+	/**
+	 * Constructor for errors caused by any throwable (also ones that are
+	 * neither exceptions nor errors). The throwable is set as the cause.
+	 * @param cause Description of the error
+	 * @param t The throwable that caused the error
+	 */
+	public SimError(String cause, Throwable t) {
+		super(cause);
+		initCause(t);
+		this.e = (t instanceof Exception ? (Exception)t : null);
+	}
+
 	public SimError(Exception e) {
 		this(e.getMessage(),e);
 	}
@@ -49,8 +49,14 @@ public class VBRConnection extends Connection {
 			"start transfer of " + m + " from " + from;
 
 		this.msgFromNode = from;
+		DTNHost to = getOtherNode(from);
+		int retVal = to.getRouter().checkAdmission(m, from);
+		if (retVal != MessageRouter.RCV_OK) {
+			return retVal; // rejected, no need to replicate the message
+		}
+
 		Message newMessage = m.replicate();
-		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
+		retVal = to.receiveMessage(newMessage, from);
 
 		if (retVal == MessageRouter.RCV_OK) {
 			this.msgOnFly = newMessage;
@@ -4,6 +4,7 @@
  */
 package core;
 
+import input.EventCalendar;
 import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
@@ -12,6 +13,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,9 +40,55 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Should the movement of hosts be run in parallel -setting id
+	 * ({@value}). Boolean (true/false) variable. Default is false.
+	 * Connection changes and router updates are still done in the same
+	 * (possibly randomized) order as without this setting.
+	 */
+	public static final String PARALLEL_UPDATE_S = "parallelUpdate";
+	/**
+	 * Number of threads used for parallel update -setting id ({@value}).
+	 * Integer. Default is the number of available processors.
+	 */
+	public static final String PARALLEL_THREADS_S = "parallelThreads";
+
+	/**
+	 * Should the external events that happen at the same time (or within
+	 * {@link #EVENT_BATCH_WINDOW_S}) be processed as a batch -setting id
+	 * ({@value}). Boolean (true/false) variable. Default is false. If true,
+	 * only the hosts that an event concerns are updated after every event
+	 * and all the hosts are updated once after the batch. If false, all the
+	 * hosts are updated after every event.
+	 */
+	public static final String BATCH_EVENTS_S = "batchEvents";
+	/**
+	 * How close in time (simulated seconds) the events must be to the first
+	 * event of a batch to be processed in the same batch -setting id
+	 * ({@value}). Double. Default is 0, i.e., only events with the same
+	 * time are batched.
+	 */
+	public static final String EVENT_BATCH_WINDOW_S = "eventBatchWindow";
+
+	/**
+	 * Should the routers of idle hosts be parked -setting id ({@value}).
+	 * Boolean (true/false) variable. Default is false. If true, a router
+	 * that is idle after its update (see
+	 * {@link routing.MessageRouter#isIdle()}), e.g., an active router
+	 * without connections, is not updated again until it is woken up by a
+	 * connection change, a new message or its next TTL check time. The
+	 * hosts are still moved and their connectivity updated, and the results
+	 * are the same as without this setting.
+	 */
+	public static final String PARK_IDLE_HOSTS_S = "parkIdleHosts";
+
+	/** how many hosts a single parallel update task handles at most */
+	private static final int PARALLEL_TASK_SIZE = 64;
+
 	private int sizeX;
 	private int sizeY;
-	private List<EventQueue> eventQueues;
+	/** calendar that merges the external event queues */
+	private EventCalendar eventCalendar;
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
@@ -56,6 +105,19 @@ public class World {
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
+	/** thread pool for parallel movement or null if not in use */
+	private ForkJoinPool parallelPool;
+	/** for each host, was the movement done in the parallel phase */
+	private boolean[] movedInParallel;
+	/** are the external events processed in batches */
+	private boolean batchEvents;
+	/** maximum time difference of the events in the same batch */
+	private double eventBatchWindow;
+	/** hosts that the currently processed event has requested, or null
+	 * if no event is being processed in the batch mode */
+	private List<DTNHost> eventHosts;
+	/** are the router updates of idle hosts skipped */
+	private boolean parkIdleHosts;
 
 	/**
 	 * Constructor.
@@ -69,7 +131,7 @@ public class World {
 		this.updateInterval = updateInterval;
 		this.updateListeners = updateListeners;
 		this.simulateConnections = simulateConnections;
-		this.eventQueues = eventQueues;
+		this.eventCalendar = new EventCalendar(eventQueues);
 
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
@@ -91,6 +153,30 @@ public class World {
 		}
 		simulateConOnce = s.getBoolean(SIMULATE_CON_ONCE_S, false);
 
+		if (s.getBoolean(PARALLEL_UPDATE_S, false)) {
+			int nrofThreads = s.getInt(PARALLEL_THREADS_S,
+					Runtime.getRuntime().availableProcessors());
+			if (nrofThreads < 1) {
+				throw new SettingsError("Invalid value (" + nrofThreads +
+						") for " + OPTIMIZATION_SETTINGS_NS + "." +
+						PARALLEL_THREADS_S);
+			}
+			this.parallelPool = new ForkJoinPool(nrofThreads);
+			this.movedInParallel = new boolean[this.hosts.size()];
+		}
+		else {
+			this.parallelPool = null;
+		}
+
+		parkIdleHosts = s.getBoolean(PARK_IDLE_HOSTS_S, false);
+		batchEvents = s.getBoolean(BATCH_EVENTS_S, false);
+		eventBatchWindow = s.getDouble(EVENT_BATCH_WINDOW_S, 0);
+		if (eventBatchWindow < 0) {
+			throw new SettingsError("Invalid value (" + eventBatchWindow +
+					") for " + OPTIMIZATION_SETTINGS_NS + "." +
+					EVENT_BATCH_WINDOW_S);
+		}
+
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
 			this.updateOrder = new ArrayList<DTNHost>(this.hosts);
@@ -123,19 +209,19 @@ public class World {
 	}
 
 	/**
-	 * Goes through all event Queues and sets the
-	 * event queue that has the next event.
+	 * Sets the event queue that has the next event. The scheduled updates
+	 * are checked first and the rest of the event queues are merged by
+	 * the event calendar.
 	 */
 	public void setNextEventQueue() {
 		EventQueue nextQueue = scheduledUpdates;
 		double earliest = nextQueue.nextEventsTime();
 
 		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;
-				earliest = eq.nextEventsTime();
-			}
+		EventQueue eq = eventCalendar.nextQueue();
+		if (eq != null && eq.nextEventsTime() < earliest) {
+			nextQueue = eq;
+			earliest = eq.nextEventsTime();
 		}
 
 		this.nextEventQueue = nextQueue;
@@ -154,6 +240,10 @@ public class World {
 
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
+			if (this.batchEvents) {
+				processEventBatch(runUntil);
+				continue;
+			}
 			simClock.setTime(this.nextQueueEventTime);
 			ExternalEvent ee = this.nextEventQueue.nextEvent();
 			ee.processEvent(this);
@@ -163,6 +253,7 @@ public class World {
 
 		moveHosts(this.updateInterval);
 		simClock.setTime(runUntil);
+		DTNHost.setLocationTime(runUntil);
 
 		updateHosts();
 
@@ -172,18 +263,54 @@ public class World {
 		}
 	}
 
+	/**
+	 * Processes the next event and all the following events that are due
+	 * within the event batch window from it (but not after the given time).
+	 * After every event, the hosts that the event requested from the world
+	 * are updated, and after the whole batch all the hosts are updated.
+	 * @param runUntil Time of the next interval update
+	 */
+	private void processEventBatch(double runUntil) {
+		double batchEnd = this.nextQueueEventTime + this.eventBatchWindow;
+		List<DTNHost> touched = new ArrayList<DTNHost>();
+
+		while (this.nextQueueEventTime <= runUntil &&
+				this.nextQueueEventTime <= batchEnd) {
+			simClock.setTime(this.nextQueueEventTime);
+			ExternalEvent ee = this.nextEventQueue.nextEvent();
+
+			touched.clear();
+			this.eventHosts = touched;
+			ee.processEvent(this);
+			this.eventHosts = null;
+
+			for (int i=0, n = touched.size(); i < n; i++) {
+				updateHost(touched.get(i));
+			}
+			setNextEventQueue();
+		}
+
+		updateHosts(); // update all hosts once after the batch
+	}
+
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
 	 * are made in random order.
 	 */
 	private void updateHosts() {
+		if (NetworkInterface.isEventDrivenContacts() && simulateConnections) {
+			/* contact checks are scheduled using the optimizers, so they
+			   must be up to date before any interface skips its check */
+			updateOptimizerLocations();
+		}
+
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				hosts.get(i).update(simulateConnections);
+				updateHost(hosts.get(i));
 			}
 		}
 		else { // update order randomizing is on
@@ -195,7 +322,7 @@ public class World {
 				if (this.isCancelled) {
 					break;
 				}
-				this.updateOrder.get(i).update(simulateConnections);
+				updateHost(this.updateOrder.get(i));
 			}
 		}
 
@@ -204,17 +331,105 @@ public class World {
 		}
 	}
 
+	/**
+	 * Updates a single host, parking its router if it is idle and host
+	 * parking is enabled
+	 * @param host The host to update
+	 */
+	private void updateHost(DTNHost host) {
+		if (parkIdleHosts) {
+			host.update(simulateConnections, true);
+		}
+		else {
+			host.update(simulateConnections);
+		}
+	}
+
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.parallelPool != null) {
+			moveHostsInParallel(timeIncrement);
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
 		}
 	}
 
+	/**
+	 * Moves all hosts in the world for a given amount of time using the
+	 * parallel thread pool. Hosts that stay on their current path segment
+	 * are moved in parallel and the rest (that need new waypoints or paths
+	 * from their movement models) are moved after that in the same order
+	 * as in {@link #moveHosts(double)}. Hence, the result is the same as
+	 * with sequential moving.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsInParallel(double timeIncrement) {
+		int n = hosts.size();
+		parallelPool.invoke(new MoveTask(timeIncrement, 0, n));
+
+		for (int i=0; i<n; i++) {
+			if (!movedInParallel[i]) {
+				hosts.get(i).move(timeIncrement);
+			}
+		}
+	}
+
+	/**
+	 * Updates the locations of all interfaces in the connectivity optimizers
+	 */
+	private void updateOptimizerLocations() {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			for (NetworkInterface ni : hosts.get(i).getInterfaces()) {
+				ni.updateOptimizerLocation();
+			}
+		}
+	}
+
+	/**
+	 * Task that moves a range of hosts on their current path segments.
+	 * Ranges larger than {@link World#PARALLEL_TASK_SIZE} are split in two.
+	 */
+	@SuppressWarnings("serial")
+	private class MoveTask extends RecursiveAction {
+		private double timeIncrement;
+		private int from;
+		private int to;
+
+		/**
+		 * Constructor.
+		 * @param timeIncrement The movement time
+		 * @param from Index of the first host to move
+		 * @param to Index of the last host to move + 1
+		 */
+		public MoveTask(double timeIncrement, int from, int to) {
+			this.timeIncrement = timeIncrement;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PARALLEL_TASK_SIZE) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new MoveTask(timeIncrement, from, mid),
+						new MoveTask(timeIncrement, mid, to));
+				return;
+			}
+
+			for (int i=from; i<to; i++) {
+				movedInParallel[i] =
+					hosts.get(i).moveOnCurrentSegment(timeIncrement);
+			}
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -261,6 +476,10 @@ public class World {
 		assert node.getAddress() == address : "Node indexing failed. " +
 			"Node " + node + " in index " + address;
 
+		if (this.eventHosts != null && !this.eventHosts.contains(node)) {
+			this.eventHosts.add(node); /* updated after the event */
+		}
+
 		return node;
 	}
 
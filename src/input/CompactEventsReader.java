@@ -0,0 +1,467 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.SimError;
+
+/**
+ * <P>
+ * Reads external events from a compact binary file that is accessed
+ * through memory mapping. The events are stored in fixed-width columns of
+ * primitive values (time, event type, host addresses, message ID, size and
+ * response size) and the message and interface IDs are stored only once in
+ * a string table. Events are decoded only when they are read, so opening
+ * even a very large file is fast.
+ * </P>
+ * <P>
+ * Compact files can be created from any external events (e.g., from
+ * standard-format text files) with
+ * {@link #storeToCompactFile(String, ExternalEventsReader)}, or from the
+ * command line:<BR>
+ * <TT>java -cp &lt;classpath&gt; input.CompactEventsReader &lt;text events
+ * file&gt; &lt;compact events file&gt;</TT>
+ * </P>
+ * <P>
+ * File layout: header (magic, version, number of events, number of
+ * strings), the columns {@code double time[n]}, {@code byte type[n]},
+ * {@code int host[n]}, {@code int host2[n]}, {@code int id[n]},
+ * {@code int size[n]}, {@code int respSize[n]} and the string table
+ * ({@code int offset[nrofStrings]} followed by the UTF-8 bytes of the
+ * strings). ID value -1 means no ID.
+ * </P>
+ */
+public class CompactEventsReader implements ExternalEventsReader {
+	/** Extension of compact external events file */
+	public static final String COMPACT_EXT = ".cee";
+
+	/** "ONEE" -- the first bytes of a compact events file */
+	private static final int MAGIC = 0x4F4E4545;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	/** bytes per event in the columns */
+	private static final int EVENT_SIZE = 8 + 1 + 5 * 4;
+	/** how many events are mapped to memory at a time */
+	private static final int WINDOW_SIZE = 64 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int NO_ID = -1;
+
+	/* event types */
+	private static final byte CREATE = 0;
+	private static final byte SEND = 1;
+	private static final byte DELIVERED = 2;
+	private static final byte ABORT = 3;
+	private static final byte DROP = 4;
+	private static final byte REMOVE = 5;
+	private static final byte CONN_UP = 6;
+	private static final byte CONN_DOWN = 7;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private int nrofEvents;
+	/** index of the next event to read */
+	private int nextEvent;
+
+	/** index of the first event of the mapped window */
+	private int windowStart;
+	/** number of events in the mapped window */
+	private int windowSize;
+	private ByteBuffer times;
+	private ByteBuffer types;
+	private ByteBuffer hosts;
+	private ByteBuffer hosts2;
+	private ByteBuffer ids;
+	private ByteBuffer sizes;
+	private ByteBuffer respSizes;
+
+	private ByteBuffer stringTable;
+	private int nrofStrings;
+	/** already decoded strings of the string table */
+	private String[] strings;
+
+	/**
+	 * Constructor.
+	 * @param eventsFile The file where the events are read
+	 */
+	public CompactEventsReader(File eventsFile) {
+		try {
+			this.file = new RandomAccessFile(eventsFile, "r");
+			this.channel = file.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					HEADER_SIZE);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				close();
+				throw new SimError("Invalid compact external events file " +
+						eventsFile.getAbsolutePath());
+			}
+			this.nrofEvents = header.getInt();
+			this.nrofStrings = header.getInt();
+
+			long tableStart = HEADER_SIZE + (long)EVENT_SIZE * nrofEvents;
+			this.stringTable = channel.map(FileChannel.MapMode.READ_ONLY,
+					tableStart, channel.size() - tableStart);
+			this.strings = new String[nrofStrings];
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+
+		this.nextEvent = 0;
+		this.windowStart = 0;
+		this.windowSize = 0;
+	}
+
+	/**
+	 * Reads events from the compact file
+	 * @param nrof Maximum number of events to read
+	 * @return Events in an ArrayList (empty list if didn't read any)
+	 */
+	public List<ExternalEvent> readEvents(int nrof) {
+		int count = Math.min(nrof, nrofEvents - nextEvent);
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>(count);
+
+		for (int i=0; i<count; i++) {
+			if (nextEvent >= windowStart + windowSize) {
+				mapWindow(nextEvent);
+			}
+			events.add(decode(nextEvent - windowStart));
+			nextEvent++;
+		}
+
+		return events;
+	}
+
+	/**
+	 * Decodes one event from the mapped window
+	 * @param i Index of the event in the window
+	 * @return The event
+	 */
+	private ExternalEvent decode(int i) {
+		double time = times.getDouble(i * 8);
+		byte type = types.get(i);
+		int host = hosts.getInt(i * 4);
+		int host2 = hosts2.getInt(i * 4);
+		String id = getString(ids.getInt(i * 4));
+
+		switch (type) {
+		case CREATE:
+			return new MessageCreateEvent(host, host2, id,
+					sizes.getInt(i * 4), respSizes.getInt(i * 4), time);
+		case SEND:
+			return new MessageRelayEvent(host, host2, id, time,
+					MessageRelayEvent.SENDING);
+		case DELIVERED:
+			return new MessageRelayEvent(host, host2, id, time,
+					MessageRelayEvent.TRANSFERRED);
+		case ABORT:
+			return new MessageRelayEvent(host, host2, id, time,
+					MessageRelayEvent.ABORTED);
+		case DROP:
+			return new MessageDeleteEvent(host, id, time, true);
+		case REMOVE:
+			return new MessageDeleteEvent(host, id, time, false);
+		case CONN_UP:
+			return new ConnectionEvent(host, host2, id, true, time);
+		case CONN_DOWN:
+			return new ConnectionEvent(host, host2, id, false, time);
+		default:
+			throw new SimError("Invalid event type " + type + " in " +
+					"compact external events file");
+		}
+	}
+
+	/**
+	 * Maps the columns of a window of events to memory
+	 * @param first Index of the first event of the window
+	 */
+	private void mapWindow(int first) {
+		int n = Math.min(WINDOW_SIZE, nrofEvents - first);
+		try {
+			times = mapColumn(0, 8, first, n);
+			types = mapColumn(8, 1, first, n);
+			hosts = mapColumn(9, 4, first, n);
+			hosts2 = mapColumn(13, 4, first, n);
+			ids = mapColumn(17, 4, first, n);
+			sizes = mapColumn(21, 4, first, n);
+			respSizes = mapColumn(25, 4, first, n);
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+		this.windowStart = first;
+		this.windowSize = n;
+	}
+
+	/**
+	 * Maps a part of a column to memory
+	 * @param columnOffset Sum of the value widths of the previous columns
+	 * @param width Width of a value in this column
+	 * @param first Index of the first event to map
+	 * @param n Number of events to map
+	 * @return The mapped part of the column
+	 * @throws IOException if the mapping fails
+	 */
+	private MappedByteBuffer mapColumn(int columnOffset, int width,
+			int first, int n) throws IOException {
+		long start = HEADER_SIZE + (long)columnOffset * nrofEvents +
+			(long)width * first;
+		return channel.map(FileChannel.MapMode.READ_ONLY, start,
+				(long)width * n);
+	}
+
+	/**
+	 * Returns a string from the string table
+	 * @param index Index of the string
+	 * @return The string or null if the index is {@value #NO_ID}
+	 */
+	private String getString(int index) {
+		if (index == NO_ID) {
+			return null;
+		}
+
+		String s = strings[index];
+		if (s == null) {
+			int start = stringTable.getInt(index * 4);
+			int end = (index + 1 < nrofStrings ?
+					stringTable.getInt((index + 1) * 4) :
+					stringTable.capacity() - nrofStrings * 4);
+			byte[] bytes = new byte[end - start];
+			ByteBuffer b = stringTable.duplicate();
+			b.position(nrofStrings * 4 + start);
+			b.get(bytes);
+			s = new String(bytes, UTF8);
+			strings[index] = s;
+		}
+		return s;
+	}
+
+	public void close() {
+		try {
+			this.file.close();
+		}
+		catch (IOException ioe) {
+			throw new SimError(ioe);
+		}
+	}
+
+	/**
+	 * Checks if the given file is a compact external events file
+	 * @param file The file to check
+	 * @return True if the file is a compact ee file, false if not
+	 */
+	public static boolean isCompactEeFile(File file) {
+		if (!file.getName().endsWith(COMPACT_EXT)) {
+			return false;
+		}
+
+		// extension matches, check the header
+		try {
+			InputStream in = new FileInputStream(file);
+			byte[] header = new byte[8];
+			int read = in.read(header);
+			in.close();
+			ByteBuffer b = ByteBuffer.wrap(header);
+			return read == header.length && b.getInt() == MAGIC &&
+				b.getInt() == VERSION;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reads all the events from the given reader and stores them to a
+	 * compact file
+	 * @param fileName Path to the file where the events are stored
+	 * @param source Where the events are read from
+	 * @throws IOException if something in storing went wrong
+	 */
+	public static void storeToCompactFile(String fileName,
+			ExternalEventsReader source) throws IOException {
+		String[] columnNames = {"time", "type", "host", "host2", "id", "size",
+				"respSize"};
+		File[] columnFiles = new File[columnNames.length];
+		DataOutputStream[] columns = new DataOutputStream[columnNames.length];
+		for (int i=0; i<columnNames.length; i++) {
+			columnFiles[i] = File.createTempFile("cee_" + columnNames[i],
+					".tmp");
+			columns[i] = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(columnFiles[i])));
+		}
+
+		Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		int nrofEvents = 0;
+
+		List<ExternalEvent> events = source.readEvents(WINDOW_SIZE);
+		while (events.size() > 0) {
+			for (ExternalEvent ee : events) {
+				writeEvent(ee, columns, stringIndexes, strings);
+				nrofEvents++;
+			}
+			events = source.readEvents(WINDOW_SIZE);
+		}
+
+		for (DataOutputStream c : columns) {
+			c.close();
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(nrofEvents);
+		out.writeInt(strings.size());
+
+		byte[] buffer = new byte[64 * 1024];
+		for (File f : columnFiles) {
+			InputStream in = new BufferedInputStream(new FileInputStream(f));
+			copy(in, out, buffer);
+			in.close();
+			f.delete();
+		}
+
+		List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+		int offset = 0;
+		for (String s : strings) {
+			byte[] bytes = s.getBytes(UTF8);
+			encoded.add(bytes);
+			out.writeInt(offset);
+			offset += bytes.length;
+		}
+		for (byte[] bytes : encoded) {
+			out.write(bytes);
+		}
+
+		out.close();
+	}
+
+	/**
+	 * Writes a single event to the columns
+	 * @param ee The event
+	 * @param columns Streams of the columns
+	 * @param stringIndexes Indexes of the strings in the string table
+	 * @param strings The string table
+	 * @throws IOException if writing fails
+	 */
+	private static void writeEvent(ExternalEvent ee, DataOutputStream[] columns,
+			Map<String, Integer> stringIndexes, List<String> strings)
+			throws IOException {
+		byte type;
+		int host;
+		int host2;
+		String id;
+		int size = 0;
+		int respSize = 0;
+
+		if (ee instanceof ConnectionEvent) {
+			ConnectionEvent ce = (ConnectionEvent)ee;
+			type = (ce.isUp ? CONN_UP : CONN_DOWN);
+			host = ce.fromAddr;
+			host2 = ce.toAddr;
+			id = ce.interfaceId;
+		}
+		else if (ee instanceof MessageEvent) {
+			MessageEvent me = (MessageEvent)ee;
+			host = me.fromAddr;
+			host2 = me.toAddr;
+			id = me.id;
+			if (ee instanceof MessageCreateEvent) {
+				type = CREATE;
+				size = ((MessageCreateEvent)ee).size;
+				respSize = ((MessageCreateEvent)ee).responseSize;
+			}
+			else if (ee instanceof MessageDeleteEvent) {
+				type = (((MessageDeleteEvent)ee).drop ? DROP : REMOVE);
+			}
+			else if (ee instanceof MessageRelayEvent) {
+				switch (((MessageRelayEvent)ee).stage) {
+				case MessageRelayEvent.SENDING:
+					type = SEND;
+					break;
+				case MessageRelayEvent.TRANSFERRED:
+					type = DELIVERED;
+					break;
+				default:
+					type = ABORT;
+				}
+			}
+			else {
+				throw new SimError("Can't store event " + ee);
+			}
+		}
+		else {
+			throw new SimError("Can't store event " + ee);
+		}
+
+		int idIndex = NO_ID;
+		if (id != null) {
+			Integer index = stringIndexes.get(id);
+			if (index == null) {
+				index = strings.size();
+				stringIndexes.put(id, index);
+				strings.add(id);
+			}
+			idIndex = index;
+		}
+
+		columns[0].writeDouble(ee.getTime());
+		columns[1].writeByte(type);
+		columns[2].writeInt(host);
+		columns[3].writeInt(host2);
+		columns[4].writeInt(idIndex);
+		columns[5].writeInt(size);
+		columns[6].writeInt(respSize);
+	}
+
+	/**
+	 * Copies all the bytes from an input stream to an output stream
+	 * @param in The input stream
+	 * @param out The output stream
+	 * @param buffer Buffer to use in copying
+	 * @throws IOException if reading or writing fails
+	 */
+	private static void copy(InputStream in, OutputStream out, byte[] buffer)
+			throws IOException {
+		int read = in.read(buffer);
+		while (read > 0) {
+			out.write(buffer, 0, read);
+			read = in.read(buffer);
+		}
+	}
+
+	/**
+	 * Converts a standard-format external events file to a compact file.
+	 * @param args The text file and the compact file
+	 * @throws IOException if the conversion fails
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: CompactEventsReader <text events file>"
+					+ " <compact events file>");
+			System.exit(1);
+		}
+
+		ExternalEventsReader source = new StandardEventsReader(
+				new File(args[0]));
+		storeToCompactFile(args[1], source);
+		source.close();
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import movement.map.MapNode;
+import movement.map.SimMap;
+import core.Coord;
+import core.SimError;
+
+/**
+ * <P>
+ * Compact binary files of map data that has already been read and
+ * processed (e.g., translated and checked for connectedness). Loading a map
+ * from a compact file doesn't require any parsing; the file is accessed
+ * through memory mapping and the nodes and their neighbors are created
+ * directly from the primitive values. The node order, the neighbor order and
+ * the node types are stored as they were in the original map, so a loaded
+ * map behaves exactly like the original one.
+ * </P>
+ * <P>
+ * The compact files are named by a hash of the contents of the map files
+ * they were created from (see {@link #getCacheFile(File, List)}), so a
+ * directory of compact files can be used as a persistent map cache: a
+ * changed map file simply results in a different compact file.
+ * </P>
+ * <P>
+ * File layout: header (magic, version, number of map files, offset x and y,
+ * mirrored flag (byte), number of nodes), {@code double x[n]},
+ * {@code double y[n]}, {@code int typeMask[n]}, {@code int degree[n]} and
+ * the node indexes of all the nodes' neighbors ({@code int[sum(degree)]}).
+ * </P>
+ */
+public class CompactMapFile {
+	/** Extension of compact map files */
+	public static final String COMPACT_MAP_EXT = ".bin";
+
+	/** "ONEM" -- the first bytes of a compact map file */
+	private static final int MAGIC = 0x4F4E454D;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 1 + 4;
+
+	private SimMap map;
+	private int nrofMapFiles;
+
+	/**
+	 * Constructor. Reads a map from a compact map file.
+	 * @param mapFile The compact map file
+	 */
+	public CompactMapFile(File mapFile) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(mapFile, "r");
+			FileChannel channel = file.getChannel();
+			read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+					mapFile.getAbsolutePath());
+		} catch (IOException e) {
+			throw new SimError(e);
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Constructor. Reads a map from compact map data in memory (see
+	 * {@link #toBytes(SimMap, int)}).
+	 * @param data The compact map data
+	 */
+	public CompactMapFile(byte[] data) {
+		read(ByteBuffer.wrap(data), "data");
+	}
+
+	/**
+	 * Reads the map from compact map data
+	 * @param b The buffer to read the data from
+	 * @param name Name of the data's source (for error messages)
+	 */
+	private void read(ByteBuffer b, String name) {
+		try {
+			if (b.remaining() < HEADER_SIZE || b.getInt() != MAGIC ||
+					b.getInt() != VERSION) {
+				throw new SimError("Invalid compact map file " + name);
+			}
+			this.nrofMapFiles = b.getInt();
+			Coord offset = new Coord(b.getDouble(), b.getDouble());
+			boolean mirrored = b.get() != 0;
+			int nrofNodes = b.getInt();
+
+			MapNode[] nodes = new MapNode[nrofNodes];
+			Map<Coord, MapNode> nodesMap = new Hashtable<Coord, MapNode>();
+			double[] xs = new double[nrofNodes];
+			for (int i=0; i<nrofNodes; i++) {
+				xs[i] = b.getDouble();
+			}
+			for (int i=0; i<nrofNodes; i++) {
+				Coord c = new Coord(xs[i], b.getDouble());
+				nodes[i] = new MapNode(c);
+				nodesMap.put(c, nodes[i]);
+			}
+			for (int i=0; i<nrofNodes; i++) {
+				int mask = b.getInt();
+				for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+					if ((mask & (1 << t)) != 0) {
+						nodes[i].addType(t);
+					}
+				}
+			}
+			int[] degrees = new int[nrofNodes];
+			for (int i=0; i<nrofNodes; i++) {
+				degrees[i] = b.getInt();
+			}
+			for (int i=0; i<nrofNodes; i++) {
+				for (int j=0; j<degrees[i]; j++) {
+					nodes[i].addNeighbor(nodes[b.getInt()]);
+				}
+			}
+
+			this.map = new SimMap(Arrays.asList(nodes), nodesMap, offset,
+					mirrored);
+		} catch (RuntimeException e) { // e.g., truncated data
+			throw new SimError("Invalid compact map file " + name, e);
+		}
+	}
+
+	/**
+	 * Returns the map that was read
+	 * @return the map that was read
+	 */
+	public SimMap getMap() {
+		return this.map;
+	}
+
+	/**
+	 * Returns how many map files the map was originally read from
+	 * @return how many map files the map was originally read from
+	 */
+	public int getNrofMapFiles() {
+		return this.nrofMapFiles;
+	}
+
+	/**
+	 * Returns the compact map file for a set of map files in a cache
+	 * directory. The name of the file is a hash of the map files' contents
+	 * and indexes, so the file doesn't need to exist yet.
+	 * @param cacheDir The cache directory
+	 * @param mapFiles Paths to the map files (in the order of their types)
+	 * @return The compact map file
+	 * @throws IOException if some map file can't be read
+	 */
+	public static File getCacheFile(File cacheDir, List<String> mapFiles)
+			throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		}
+
+		byte[] buffer = new byte[64 * 1024];
+		ByteBuffer header = ByteBuffer.allocate(8);
+		header.putInt(VERSION).putInt(mapFiles.size());
+		digest.update(header.array());
+		for (String path : mapFiles) {
+			File f = new File(path);
+			ByteBuffer length = ByteBuffer.allocate(8);
+			length.putLong(f.length());
+			digest.update(length.array());
+
+			InputStream in = new FileInputStream(f);
+			try {
+				int read;
+				while ((read = in.read(buffer)) > 0) {
+					digest.update(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		StringBuilder name = new StringBuilder("map-");
+		for (byte bt : digest.digest()) {
+			name.append(String.format("%02x", bt));
+		}
+		return new File(cacheDir, name + COMPACT_MAP_EXT);
+	}
+
+	/**
+	 * Stores a map to a compact map file. The file is first written to a
+	 * temporary file in the same directory and then renamed, so other
+	 * simulations that use the same cache directory never see partially
+	 * written files.
+	 * @param mapFile The compact map file
+	 * @param map The map to store
+	 * @param nrofMapFiles How many map files the map was read from
+	 * @throws IOException if something in storing went wrong
+	 */
+	public static void store(File mapFile, SimMap map, int nrofMapFiles)
+			throws IOException {
+		File dir = mapFile.getAbsoluteFile().getParentFile();
+		if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+			throw new IOException("Can't create map cache directory " + dir);
+		}
+
+		File tmp = File.createTempFile(mapFile.getName(), ".tmp", dir);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			write(out, map, nrofMapFiles);
+		} finally {
+			out.close();
+		}
+
+		if (!tmp.renameTo(mapFile)) {
+			tmp.delete();
+			if (!mapFile.exists()) {
+				throw new IOException("Can't create compact map file " +
+						mapFile.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Returns the compact map data of a map (the contents of a compact map
+	 * file)
+	 * @param map The map
+	 * @param nrofMapFiles How many map files the map was read from
+	 * @return The compact map data
+	 */
+	public static byte[] toBytes(SimMap map, int nrofMapFiles) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			write(new DataOutputStream(bytes), map, nrofMapFiles);
+		} catch (IOException e) {
+			throw new SimError(e); // shouldn't happen with a byte array
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes the compact map data of a map to a stream
+	 * @param out The stream to write to
+	 * @param map The map
+	 * @param nrofMapFiles How many map files the map was read from
+	 * @throws IOException if writing to the stream failed
+	 */
+	private static void write(DataOutputStream out, SimMap map,
+			int nrofMapFiles) throws IOException {
+		List<MapNode> nodes = map.getNodes();
+		Map<MapNode, Integer> indexes = new HashMap<MapNode, Integer>();
+		for (int i=0, n=nodes.size(); i<n; i++) {
+			indexes.put(nodes.get(i), i);
+		}
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(nrofMapFiles);
+		out.writeDouble(map.getOffset().getX());
+		out.writeDouble(map.getOffset().getY());
+		out.writeByte(map.isMirrored() ? 1 : 0);
+		out.writeInt(nodes.size());
+		for (MapNode n : nodes) {
+			out.writeDouble(n.getLocation().getX());
+		}
+		for (MapNode n : nodes) {
+			out.writeDouble(n.getLocation().getY());
+		}
+		for (MapNode n : nodes) {
+			int mask = 0;
+			for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+				if (n.isType(t)) {
+					mask |= 1 << t;
+				}
+			}
+			out.writeInt(mask);
+		}
+		for (MapNode n : nodes) {
+			out.writeInt(n.getNeighbors().size());
+		}
+		for (MapNode n : nodes) {
+			for (MapNode neighbor : n.getNeighbors()) {
+				out.writeInt(indexes.get(neighbor));
+			}
+		}
+		out.flush();
+	}
+}
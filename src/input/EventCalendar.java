@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Event queue that merges multiple event queues into a single calendar
+ * ordered by the events' times. The queues are kept in a binary heap keyed
+ * on the time of their next event, so finding and taking out the next event
+ * takes O(log n) time, where n is the number of queues. Events with the
+ * same time are returned in the order their queues were given to the
+ * calendar.
+ * <P>
+ * The next event time of a queue is expected to change only when an event
+ * is taken from it, either through this calendar or directly from the
+ * queue. The only exception is {@link DTN2Events}, whose events arrive
+ * asynchronously, so its time is checked every time.
+ * </P>
+ */
+public class EventCalendar implements EventQueue {
+	private PriorityQueue<Entry> heap;
+	/** queues whose next event time can change at any time */
+	private List<Entry> unordered;
+
+	/**
+	 * Constructor.
+	 * @param queues The event queues to merge
+	 */
+	public EventCalendar(List<EventQueue> queues) {
+		this.heap = new PriorityQueue<Entry>(Math.max(queues.size(), 1));
+		this.unordered = new ArrayList<Entry>();
+
+		for (int i=0, n=queues.size(); i<n; i++) {
+			Entry e = new Entry(queues.get(i), i);
+			if (e.queue instanceof DTN2Events) {
+				this.unordered.add(e);
+			}
+			else {
+				this.heap.add(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the queue that has the next event, or null if there are no
+	 * queues
+	 * @return The queue that has the next event
+	 */
+	public EventQueue nextQueue() {
+		Entry head = this.heap.peek();
+
+		/* re-key the head until its time is up to date; only the queue
+		   whose events have been taken can have a stale time */
+		while (head != null && head.time != head.queue.nextEventsTime()) {
+			this.heap.poll();
+			head.time = head.queue.nextEventsTime();
+			this.heap.add(head);
+			head = this.heap.peek();
+		}
+
+		for (Entry e : this.unordered) {
+			e.time = e.queue.nextEventsTime();
+			if (head == null || e.compareTo(head) < 0) {
+				head = e;
+			}
+		}
+
+		return (head == null ? null : head.queue);
+	}
+
+	/**
+	 * Returns the next event from the queue that has the earliest event or
+	 * ExternalEvent with time of double.MAX_VALUE if there are no events left
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		EventQueue next = nextQueue();
+		if (next == null) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return next.nextEvent();
+	}
+
+	/**
+	 * Returns the time of the earliest event in any of the queues
+	 * @return The time of the next event or double.MAX_VALUE if there are
+	 * no events left
+	 */
+	public double nextEventsTime() {
+		EventQueue next = nextQueue();
+		if (next == null) {
+			return Double.MAX_VALUE;
+		}
+		return next.nextEventsTime();
+	}
+
+	/**
+	 * Heap entry for a single event queue
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private EventQueue queue;
+		/** index of the queue (for ordering events with the same time) */
+		private int index;
+		/** next event time of the queue when the entry was put to the heap */
+		private double time;
+
+		public Entry(EventQueue queue, int index) {
+			this.queue = queue;
+			this.index = index;
+			this.time = queue.nextEventsTime();
+		}
+
+		public int compareTo(Entry other) {
+			if (this.time != other.time) {
+				return (this.time < other.time ? -1 : 1);
+			}
+			return this.index - other.index;
+		}
+	}
+}
@@ -8,6 +8,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import core.DTNSim;
 import core.Settings;
 
 /**
@@ -21,6 +22,10 @@ public class ExternalEventsQueue implements EventQueue {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** number of preload chunks (of {@link #PRELOAD_SETTING} events) that
+	 * are read ahead in a background thread -setting id ({@value}).
+	 * Default is 0 (events are read only when they are needed) */
+	public static final String PREFETCH_SETTING = "nrofPrefetch";
 
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
@@ -29,26 +34,53 @@ public class ExternalEventsQueue implements EventQueue {
 	private ExternalEventsReader reader;
 	private int nextEventIndex;
 	private int nrofPreload;
+	private int nrofPrefetch;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
 
+	/** queues whose readers haven't been closed yet */
+	private static List<ExternalEventsQueue> openQueues;
+
+	static {
+		DTNSim.registerForReset(ExternalEventsQueue.class.getCanonicalName());
+		reset();
+	}
+
 	/**
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
 	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is assumed to be a binary file, and if it ends with
+	 * {@link CompactEventsReader#COMPACT_EXT}, a compact binary file.
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
+	 * @see CompactEventsReader#storeToCompactFile(String, ExternalEventsReader)
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
 	 */
 	public ExternalEventsQueue(String filePath, int nrofPreload) {
+		this(filePath, nrofPreload, 0);
+	}
+
+	/**
+	 * Creates a new Queue from a file and reads the events ahead in a
+	 * background thread
+	 * @param filePath Path to the file where the events are read from
+	 * @param nrofPreload How many events to preload
+	 * @param nrofPrefetch How many preload chunks are read ahead in a
+	 * background thread (0 = no background reading)
+	 * @see #ExternalEventsQueue(String, int)
+	 */
+	public ExternalEventsQueue(String filePath, int nrofPreload,
+			int nrofPrefetch) {
 		setNrofPreload(nrofPreload);
+		setNrofPrefetch(nrofPrefetch);
 		init(filePath);
 	}
 
 	/**
-	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING}
-	 * and {@link #PATH_SETTING}. The path setting supports value filling.
+	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING},
+	 * {@link #PREFETCH_SETTING} and {@link #PATH_SETTING}. The path setting
+	 * supports value filling.
 	 * @param s The settings
 	 */
 	public ExternalEventsQueue(Settings s) {
@@ -58,6 +90,7 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
 		}
+		setNrofPrefetch(s.getInt(PREFETCH_SETTING, 0));
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
         init(eeFilePath);
     }
@@ -74,16 +107,35 @@ public class ExternalEventsQueue implements EventQueue {
 		this.nrofPreload = nrof;
 	}
 
+	/**
+	 * Sets the number of preload chunks that are read ahead in a background
+	 * thread
+	 * @param nrof Number of chunks to read ahead or 0 to read the events
+	 * only when they are needed
+	 */
+	private void setNrofPrefetch(int nrof) {
+		this.nrofPrefetch = Math.max(nrof, 0);
+	}
+
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (CompactEventsReader.isCompactEeFile(eventsFile)) {
+			this.reader = new CompactEventsReader(eventsFile);
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
 			this.reader = new StandardEventsReader(eventsFile);
 		}
 
+		if (nrofPrefetch > 0) {
+			this.reader = new PrefetchingEventsReader(this.reader, nrofPreload,
+					nrofPrefetch);
+		}
+		openQueues.add(this);
+
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
 	}
@@ -153,11 +205,36 @@ public class ExternalEventsQueue implements EventQueue {
 		List<ExternalEvent> events = reader.readEvents(nrof);
 
 		if (nrof > 0 && events.size() == 0) {
+			close();
+			openQueues.remove(this);
+		}
+
+		return events;
+	}
+
+	/**
+	 * Closes the reader (and stops its background reading, if any). No
+	 * more events are read after this.
+	 */
+	private void close() {
+		if (!allEventsRead) {
 			reader.close();
 			allEventsRead = true;
 		}
+	}
 
-		return events;
+	/**
+	 * Closes the readers of all the queues that haven't read all their
+	 * events, so that no background reading threads (and the events they
+	 * have read ahead) are left from the previous run.
+	 */
+	public static void reset() {
+		if (openQueues != null) {
+			for (ExternalEventsQueue q : openQueues) {
+				q.close();
+			}
+		}
+		openQueues = new ArrayList<ExternalEventsQueue>();
 	}
 
 }
@@ -41,6 +41,10 @@ public class ExternalMovementReader {
 	public static final String COMMENT_PREFIX = "#";
 	private Scanner scanner;
 	private double lastTimeStamp = -1;
+	/** time stamp of the latest moves parsed from the file */
+	private double readTimeStamp = -1;
+	/** reads the moves in a background thread, or null if not in use */
+	private Prefetcher<Tuple<Double, List<Tuple<String, Coord>>>> prefetcher;
 	private String lastLine;
 	private double minTime;
 	private double maxTime;
@@ -93,12 +97,64 @@ public class ExternalMovementReader {
 		this.normalize = normalize;
 	}
 
+	/**
+	 * Starts reading the moves of the following time instances in a
+	 * background thread. All the settings of the reader must be set before
+	 * calling this.
+	 * @param nrofInstances How many time instances are read ahead at most
+	 */
+	public void startPrefetching(int nrofInstances) {
+		this.prefetcher = new Prefetcher<Tuple<Double,
+				List<Tuple<String, Coord>>>>(nrofInstances) {
+			protected Tuple<Double, List<Tuple<String, Coord>>> readChunk() {
+				List<Tuple<String, Coord>> moves = parseNextMovements();
+				if (moves.size() == 0) {
+					return null;
+				}
+				return new Tuple<Double, List<Tuple<String, Coord>>>(
+						readTimeStamp, moves);
+			}
+		};
+		this.prefetcher.start("ExternalMovementPrefetcher");
+	}
+
+	/**
+	 * Stops the background reading started with
+	 * {@link #startPrefetching(int)} (if it was started)
+	 */
+	public void stopPrefetching() {
+		if (this.prefetcher != null) {
+			this.prefetcher.stop();
+		}
+	}
+
 	/**
 	 * Reads all new id-coordinate tuples that belong to the same time instance
 	 * @return A list of tuples or empty list if there were no more moves
 	 * @throws SettingError if an invalid line was read
 	 */
 	public List<Tuple<String, Coord>> readNextMovements() {
+		if (this.prefetcher == null) {
+			List<Tuple<String, Coord>> moves = parseNextMovements();
+			this.lastTimeStamp = this.readTimeStamp;
+			return moves;
+		}
+
+		Tuple<Double, List<Tuple<String, Coord>>> next = prefetcher.next();
+		if (next == null) {
+			return new ArrayList<Tuple<String, Coord>>();
+		}
+		this.lastTimeStamp = next.getKey();
+		return next.getValue();
+	}
+
+	/**
+	 * Parses all new id-coordinate tuples that belong to the same time
+	 * instance from the file
+	 * @return A list of tuples or empty list if there were no more moves
+	 * @throws SettingError if an invalid line was read
+	 */
+	private List<Tuple<String, Coord>> parseNextMovements() {
 		ArrayList<Tuple<String, Coord>> moves =
 			new ArrayList<Tuple<String, Coord>>();
 
@@ -118,9 +174,9 @@ public class ExternalMovementReader {
 			y -= minY;
 		}
 
-		lastTimeStamp = time;
+		readTimeStamp = time;
 
-		while (scanner.hasNextLine() && lastTimeStamp == time) {
+		while (scanner.hasNextLine() && readTimeStamp == time) {
 			lastLine = scanner.nextLine();
 
 			if (lastLine.trim().length() == 0 ||
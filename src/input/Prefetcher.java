@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import core.SimError;
+
+/**
+ * Reads chunks of input data in a background thread ahead of their use.
+ * At most the given number of chunks are kept in memory; when the buffer
+ * is full, the background thread waits until the oldest chunk has been
+ * taken. Errors in reading are passed to the thread that takes the chunks.
+ * @param <T> Type of the chunks
+ */
+public abstract class Prefetcher<T> {
+	private BlockingQueue<Chunk<T>> chunks;
+	private Thread thread;
+	private volatile boolean stopped;
+	/** has the end of data (or an error) been taken out */
+	private boolean ended;
+
+	/**
+	 * Constructor.
+	 * @param nrofChunks Maximum number of chunks read ahead
+	 */
+	public Prefetcher(int nrofChunks) {
+		this.chunks = new ArrayBlockingQueue<Chunk<T>>(nrofChunks);
+		this.stopped = false;
+		this.ended = false;
+	}
+
+	/**
+	 * Reads the next chunk of data. Called in the background thread.
+	 * @return The chunk or null if there is no more data
+	 */
+	protected abstract T readChunk();
+
+	/**
+	 * Starts reading in the background
+	 * @param name Name of the background thread
+	 */
+	public void start(String name) {
+		this.thread = new Thread(new Runnable() {
+			public void run() {
+				prefetch();
+			}
+		}, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Reads chunks until all data is read or reading is stopped
+	 */
+	private void prefetch() {
+		try {
+			while (!stopped) {
+				T data;
+				try {
+					data = readChunk();
+				} catch (RuntimeException e) {
+					chunks.put(new Chunk<T>(null, e));
+					return;
+				} catch (Error e) {
+					chunks.put(new Chunk<T>(null, e));
+					return;
+				}
+
+				chunks.put(new Chunk<T>(data, null));
+				if (data == null) {
+					return; /* all read */
+				}
+			}
+		} catch (InterruptedException e) {
+			/* stopped while waiting for space in the buffer */
+		}
+	}
+
+	/**
+	 * Returns the next chunk. Waits for the background thread if the chunk
+	 * hasn't been read yet.
+	 * @return The next chunk or null if there is no more data
+	 */
+	public T next() {
+		if (ended) {
+			return null;
+		}
+
+		Chunk<T> c;
+		try {
+			c = chunks.take();
+		} catch (InterruptedException e) {
+			throw new SimError(e);
+		}
+
+		if (c.error != null) {
+			ended = true;
+			if (c.error instanceof Error) {
+				throw (Error)c.error;
+			}
+			throw (RuntimeException)c.error;
+		}
+		if (c.data == null) {
+			ended = true;
+		}
+
+		return c.data;
+	}
+
+	/**
+	 * Stops the background reading and waits until the background thread
+	 * has finished
+	 */
+	public void stop() {
+		this.stopped = true;
+		if (this.thread == null) {
+			return;
+		}
+
+		this.thread.interrupt();
+		try {
+			this.thread.join();
+		} catch (InterruptedException e) {
+			throw new SimError(e);
+		}
+	}
+
+	/**
+	 * A chunk of data or an error that happened when reading it
+	 */
+	private static class Chunk<T> {
+		private T data;
+		private Throwable error;
+
+		public Chunk(T data, Throwable error) {
+			this.data = data;
+			this.error = error;
+		}
+	}
+}
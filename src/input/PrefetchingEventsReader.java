@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * External events reader that reads the events from another reader in a
+ * background thread, so that the next events are already parsed when the
+ * simulation needs them.
+ */
+public class PrefetchingEventsReader implements ExternalEventsReader {
+	private ExternalEventsReader source;
+	private Prefetcher<List<ExternalEvent>> prefetcher;
+	/** the chunk where events are currently taken from */
+	private List<ExternalEvent> current;
+	/** index of the next event in the current chunk */
+	private int nextIndex;
+
+	/**
+	 * Constructor. Starts reading from the source.
+	 * @param source Where the events are read from
+	 * @param chunkSize How many events are read from the source at a time
+	 * @param nrofChunks How many chunks are read ahead at most
+	 */
+	public PrefetchingEventsReader(final ExternalEventsReader source,
+			final int chunkSize, int nrofChunks) {
+		this.source = source;
+		this.current = new ArrayList<ExternalEvent>(0);
+		this.nextIndex = 0;
+		this.prefetcher = new Prefetcher<List<ExternalEvent>>(nrofChunks) {
+			protected List<ExternalEvent> readChunk() {
+				List<ExternalEvent> events = source.readEvents(chunkSize);
+				return (events.size() > 0 ? events : null);
+			}
+		};
+		this.prefetcher.start("ExternalEventsPrefetcher");
+	}
+
+	public List<ExternalEvent> readEvents(int nrof) {
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
+
+		while (events.size() < nrof) {
+			if (nextIndex >= current.size()) {
+				current = prefetcher.next();
+				nextIndex = 0;
+				if (current == null) {
+					current = new ArrayList<ExternalEvent>(0);
+					break; /* all events read */
+				}
+			}
+			int n = Math.min(nrof - events.size(), current.size() - nextIndex);
+			events.addAll(current.subList(nextIndex, nextIndex + n));
+			nextIndex += n;
+		}
+
+		return events;
+	}
+
+	public void close() {
+		prefetcher.stop();
+		source.close();
+	}
+}
@@ -4,25 +4,24 @@
  */
 package input;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.TreeSet;
 
 /**
  * Event queue where simulation objects can request an update to happen
  * at the specified simulation time. Multiple updates at the same time
- * are merged to a single update.
+ * are merged to a single update. The update times are kept in a sorted
+ * set so both adding an update and taking the next one out take
+ * O(log n) time.
  */
 public class ScheduledUpdatesQueue implements EventQueue {
-	/** Time of the event (simulated seconds) */
-	private ExternalEvent nextEvent;
-	private List<ExternalEvent> updates;
+	/** Times of the requested updates (simulated seconds) */
+	private TreeSet<Double> updates;
 
 	/**
 	 * Constructor. Creates an empty update queue.
 	 */
 	public ScheduledUpdatesQueue(){
-		this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		this.updates = new ArrayList<ExternalEvent>();
+		this.updates = new TreeSet<Double>();
 	}
 
 	/**
@@ -31,16 +30,11 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event
 	 */
 	public ExternalEvent nextEvent() {
-		ExternalEvent event = this.nextEvent;
-
-		if (this.updates.size() == 0) {
-			this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		}
-		else {
-			this.nextEvent = this.updates.remove(0);
+		if (this.updates.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
 		}
 
-		return event;
+		return new ExternalEvent(this.updates.pollFirst());
 	}
 
 	/**
@@ -49,7 +43,11 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event's time
 	 */
 	public double nextEventsTime() {
-		return this.nextEvent.getTime();
+		if (this.updates.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+
+		return this.updates.first();
 	}
 
 	/**
@@ -57,47 +55,22 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @param simTime The time when the update should happen
 	 */
 	public void addUpdate(double simTime) {
-		ExternalEvent ee = new ExternalEvent(simTime);
-
-		if (ee.compareTo(nextEvent) == 0) { // this event is already next
-			return;
-		}
-		else if (this.nextEvent.getTime() > simTime) { // new nextEvent
-			putToQueue(this.nextEvent); // put the old nextEvent back to q
-			this.nextEvent = ee;
-		}
-		else { // given event happens later..
-			putToQueue(ee);
+		if (simTime == Double.MAX_VALUE) {
+			return; /* same as no update at all */
 		}
-	}
-
-	/**
-	 * Puts a event to the queue in the right place
-	 * @param ee The event to put to the queue
-	 */
-	private void putToQueue(ExternalEvent ee) {
-		double eeTime = ee.getTime();
-
-		for (int i=0, n=this.updates.size(); i<n; i++) {
-			double time = updates.get(i).getTime();
-			if (time == eeTime) {
-				return; // update with the given time exists -> no need for new
-			}
-			else if (eeTime < time) {
-				this.updates.add(i, ee);
-				return;
-			}
-		}
-
-		/* all existing updates are earlier -> add to the end of the list */
-		this.updates.add(ee);
+		this.updates.add(simTime); // update with the same time is merged
 	}
 
 	public String toString() {
-		String times = "updates @ " + this.nextEvent.getTime();
+		String times = "updates @ " + nextEventsTime();
 
-		for (ExternalEvent ee : this.updates) {
-			times += ", " + ee.getTime();
+		boolean first = true;
+		for (Double time : this.updates) {
+			if (first) { /* the next update is already listed */
+				first = false;
+				continue;
+			}
+			times += ", " + time;
 		}
 
 		return times;
@@ -13,7 +13,6 @@ import java.lang.Integer;
 import java.lang.NumberFormatException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 import java.util.regex.Pattern;
 
 import core.SimError;
@@ -66,12 +65,22 @@ public class StandardEventsReader implements ExternalEventsReader {
 	/** Message identifier to use to refer to all messages ({@value}) */
 	public static final String ALL_MESSAGES_ID = "*";
 
-	//private Scanner scanner;
+	/** pattern of empty and comment lines */
+	private static final Pattern SKIP_PATTERN =
+		Pattern.compile("(#.*)|(^\\s*$)");
+	/** pattern of the field separators */
+	private static final Pattern SPLIT_PATTERN = Pattern.compile("\\s+");
+	/** pattern of plain integer values */
+	private static final Pattern INT_PATTERN = Pattern.compile("[-+]?\\d+");
+	/** patterns of the host IDs with and without a non-numeric prefix */
+	private static final Pattern ADDRESS_PATTERN = Pattern.compile("^\\d+$");
+	private static final Pattern PREFIXED_ADDRESS_PATTERN =
+		Pattern.compile("^\\D+\\d+$");
+
 	private BufferedReader reader;
 
 	public StandardEventsReader(File eventsFile){
 		try {
-			//this.scanner = new Scanner(eventsFile);
 			this.reader = new BufferedReader(new FileReader(eventsFile));
 		} catch (FileNotFoundException e) {
 			throw new SimError(e.getMessage(),e);
@@ -82,8 +91,6 @@ public class StandardEventsReader implements ExternalEventsReader {
 	public List<ExternalEvent> readEvents(int nrof) {
 		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
 		int eventsRead = 0;
-		// skip empty and comment lines
-		Pattern skipPattern = Pattern.compile("(#.*)|(^\\s*$)");
 
 		String line;
 		try {
@@ -92,8 +99,7 @@ public class StandardEventsReader implements ExternalEventsReader {
 			throw new SimError("Reading from external event file failed.");
 		}
 		while (eventsRead < nrof && line != null) {
-			Scanner lineScan = new Scanner(line);
-			if (skipPattern.matcher(line).matches()) {
+			if (SKIP_PATTERN.matcher(line).matches()) {
 				// skip empty and comment lines
 				try {
 					line = this.reader.readLine();
@@ -104,107 +110,8 @@ public class StandardEventsReader implements ExternalEventsReader {
 				continue;
 			}
 
-			double time;
-			String action;
-			String msgId;
-			int hostAddr;
-			int host2Addr;
-
 			try {
-				time = lineScan.nextDouble();
-				action = lineScan.next();
-
-				if (action.equals(DROP)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-					events.add(new MessageDeleteEvent(hostAddr, msgId,
-							time, true));
-				}
-				else if (action.equals(REMOVE)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-					events.add(new MessageDeleteEvent(hostAddr, msgId,
-							time, false));
-				}
-				else if (action.equals(CONNECTION)) {
-					String connEventType;
-					boolean isUp;
-					hostAddr = getHostAddress(lineScan.next());
-					host2Addr = getHostAddress(lineScan.next());
-					connEventType = lineScan.next();
-
-					String interfaceId = null;
-					if (lineScan.hasNext()) {
-						interfaceId = lineScan.next();
-					}
-
-					if (connEventType.equalsIgnoreCase(CONNECTION_UP)) {
-						isUp = true;
-					}
-					else if (connEventType.equalsIgnoreCase(CONNECTION_DOWN)) {
-						isUp = false;
-					}
-					else {
-						throw new SimError("Unknown up/down value '" +
-								connEventType + "'");
-					}
-
-					ConnectionEvent ce = new ConnectionEvent(hostAddr,
-							host2Addr, interfaceId, isUp, time);
-
-					events.add(ce);
-				}
-				else {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-
-					host2Addr = getHostAddress(lineScan.next());
-
-					if (action.equals(CREATE)){
-						int size = 0;
-
-						if (lineScan.hasNextInt()){
-							size = lineScan.nextInt();
-						}
-						else if (lineScan.hasNext()){
-							size = convertToInteger(lineScan.next());
-						}else{
-							throw new Exception("Invalid number of columns for CREATE event");
-						}
-
-						int respSize = 0;
-						if (lineScan.hasNextInt()) {
-							respSize = lineScan.nextInt();
-						}
-						else if(lineScan.hasNext()) {
-							respSize = convertToInteger(lineScan.next());
-						}
-						events.add(new MessageCreateEvent(hostAddr, host2Addr,
-								msgId, size, respSize, time));
-					}
-					else {
-						int stage = -1;
-						if (action.equals(SEND)) {
-							stage = MessageRelayEvent.SENDING;
-						}
-						else if (action.equals(DELIVERED)) {
-							stage = MessageRelayEvent.TRANSFERRED;
-						}
-						else if (action.equals(ABORT)) {
-							stage = MessageRelayEvent.ABORTED;
-						}
-						else {
-							throw new SimError("Unknown action '" + action +
-								"' in external events");
-						}
-						events.add(new MessageRelayEvent(hostAddr, host2Addr,
-								msgId, time, stage));
-					}
-				}
-				// discard the newline in the end
-				if (lineScan.hasNextLine()) {
-					lineScan.nextLine(); // TODO: test
-				}
+				events.add(parseEvent(SPLIT_PATTERN.split(line.trim())));
 				eventsRead++;
 				if (eventsRead < nrof) {
 					line = this.reader.readLine();
@@ -219,6 +126,111 @@ public class StandardEventsReader implements ExternalEventsReader {
 		return events;
 	}
 
+	/**
+	 * Creates an event from the fields of an event line
+	 * @param fields The whitespace separated fields of the line
+	 * @return The event
+	 * @throws Exception if the fields are not valid
+	 */
+	private ExternalEvent parseEvent(String[] fields) throws Exception {
+		double time;
+		String action;
+		String msgId;
+		int hostAddr;
+		int host2Addr;
+		int next = 0;
+
+		time = Double.parseDouble(fields[next++]);
+		action = fields[next++];
+
+		if (action.equals(DROP)) {
+			msgId = fields[next++];
+			hostAddr = getHostAddress(fields[next++]);
+			return new MessageDeleteEvent(hostAddr, msgId, time, true);
+		}
+		else if (action.equals(REMOVE)) {
+			msgId = fields[next++];
+			hostAddr = getHostAddress(fields[next++]);
+			return new MessageDeleteEvent(hostAddr, msgId, time, false);
+		}
+		else if (action.equals(CONNECTION)) {
+			String connEventType;
+			boolean isUp;
+			hostAddr = getHostAddress(fields[next++]);
+			host2Addr = getHostAddress(fields[next++]);
+			connEventType = fields[next++];
+
+			String interfaceId = null;
+			if (next < fields.length) {
+				interfaceId = fields[next++];
+			}
+
+			if (connEventType.equalsIgnoreCase(CONNECTION_UP)) {
+				isUp = true;
+			}
+			else if (connEventType.equalsIgnoreCase(CONNECTION_DOWN)) {
+				isUp = false;
+			}
+			else {
+				throw new SimError("Unknown up/down value '" +
+						connEventType + "'");
+			}
+
+			return new ConnectionEvent(hostAddr, host2Addr, interfaceId,
+					isUp, time);
+		}
+
+		msgId = fields[next++];
+		hostAddr = getHostAddress(fields[next++]);
+		host2Addr = getHostAddress(fields[next++]);
+
+		if (action.equals(CREATE)){
+			int size = 0;
+
+			if (next < fields.length) {
+				size = parseSize(fields[next++]);
+			}else{
+				throw new Exception("Invalid number of columns for CREATE event");
+			}
+
+			int respSize = 0;
+			if (next < fields.length) {
+				respSize = parseSize(fields[next++]);
+			}
+			return new MessageCreateEvent(hostAddr, host2Addr, msgId, size,
+					respSize, time);
+		}
+
+		int stage = -1;
+		if (action.equals(SEND)) {
+			stage = MessageRelayEvent.SENDING;
+		}
+		else if (action.equals(DELIVERED)) {
+			stage = MessageRelayEvent.TRANSFERRED;
+		}
+		else if (action.equals(ABORT)) {
+			stage = MessageRelayEvent.ABORTED;
+		}
+		else {
+			throw new SimError("Unknown action '" + action +
+				"' in external events");
+		}
+		return new MessageRelayEvent(hostAddr, host2Addr, msgId, time, stage);
+	}
+
+	/**
+	 * Parses a size value that is either a plain integer or an integer with
+	 * a data unit (see {@link #convertToInteger(String)})
+	 * @param str The value to parse
+	 * @return The size
+	 */
+	private int parseSize(String str) {
+		if (INT_PATTERN.matcher(str).matches()) {
+			return Integer.parseInt(str);
+		}
+		return convertToInteger(str);
+	}
+
 	/**
 	 * Parses a host address from a hostId string (the numeric part after
 	 * optional non-numeric part).
@@ -228,10 +240,10 @@ public class StandardEventsReader implements ExternalEventsReader {
 	 */
 	private int getHostAddress(String hostId) {
 		String addressPart = "";
-		if (hostId.matches("^\\d+$")) {
+		if (ADDRESS_PATTERN.matcher(hostId).matches()) {
 			addressPart = hostId; // host id is only the address
 		}
-		else if (hostId.matches("^\\D+\\d+$")) {
+		else if (PREFIXED_ADDRESS_PATTERN.matcher(hostId).matches()) {
 			String [] parts = hostId.split("\\D");
 			addressPart = parts[parts.length-1]; // last occurence is the addr
 		}
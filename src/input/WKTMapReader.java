@@ -5,13 +5,14 @@
 package input;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import movement.map.MapNode;
 import movement.map.SimMap;
@@ -28,6 +29,8 @@ public class WKTMapReader extends WKTReader {
 	/** are all paths bidirectional */
 	private boolean bidirectionalPaths = true;
 	private int nodeType = -1;
+	/** reusable key for looking up nodes by location */
+	private Coord lookupKey = new Coord(0, 0);
 
 	/**
 	 * Constructor. Creates a new WKT reader ready for addPaths() calls.
@@ -78,10 +81,10 @@ public class WKTMapReader extends WKTReader {
 	 * @throws IOException If something went wrong while reading the file
 	 */
 	public void addPaths(File file, int type) throws IOException {
-		addPaths(new FileReader(file), type);
+		init(file);
+		updateMap(readPaths(), type);
 	}
 
-
 	/**
 	 * Add paths to current path set. Adding paths multiple times
 	 * has the same result as concatenating the data before adding it.
@@ -91,53 +94,72 @@ public class WKTMapReader extends WKTReader {
 	 * @throws IOException if something went wrong with reading from the input
 	 */
 	public void addPaths(Reader input, int nodeType) throws IOException {
-		this.nodeType = nodeType;
-		String type;
-		String contents;
-
 		init(input);
+		updateMap(readPaths(), nodeType);
+	}
 
-		while((type = nextType()) != null) {
-			if (type.equals(LINESTRING)) {
-				contents = readNestedContents();
-				updateMap(parseLineString(contents));
-			}
-			else if (type.equals(MULTILINESTRING)) {
-				for (List<Coord> list : parseMultilinestring()) {
-					updateMap(list);
+	/**
+	 * Adds paths from many files. The files are parsed in parallel if more
+	 * than one thread is allowed, but the paths are added to the map in the
+	 * order of the files, so the result is the same as when calling
+	 * {@link #addPaths(File, int)} for each file in turn.
+	 * @param files The files where the WKT data is read from
+	 * @param types The types to use for the nodes of each file
+	 * @param nrofThreads Maximum number of threads to use
+	 * @throws IOException If something went wrong while reading the files
+	 */
+	public void addPaths(List<File> files, int[] types, int nrofThreads)
+			throws IOException {
+		List<Callable<LineBuffer>> tasks =
+			new ArrayList<Callable<LineBuffer>>(files.size());
+		for (final File f : files) {
+			tasks.add(new Callable<LineBuffer>() {
+				public LineBuffer call() throws IOException {
+					WKTReader r = new WKTReader();
+					r.init(f);
+					return r.readPaths();
 				}
-			}
-			else {
-				// known type but not interesting -> skip
-				readNestedContents();
-			}
+			});
+		}
+
+		List<LineBuffer> paths = runAll(tasks, nrofThreads);
+		for (int i=0; i<paths.size(); i++) {
+			updateMap(paths.get(i), types[i]);
 		}
 	}
 
 	/**
-	 * Updates simulation map with coordinates in the list
-	 * @param coords The list of coordinates
+	 * Updates simulation map with the lines of coordinates
+	 * @param lines The lines
+	 * @param nodeType The type to use or -1 for no type
 	 */
-	private void updateMap(List<Coord> coords) {
-		MapNode previousNode = null;
-		for (Coord c : coords) {
-			previousNode = createOrUpdateNode(c, previousNode);
+	private void updateMap(LineBuffer lines, int nodeType) {
+		this.nodeType = nodeType;
+		for (int i=0, n=lines.getNrofLines(); i<n; i++) {
+			MapNode previousNode = null;
+			for (int j=lines.getStart(i), end=lines.getEnd(i); j<end; j++) {
+				previousNode = createOrUpdateNode(lines.getX(j),
+						lines.getY(j), previousNode);
+			}
 		}
 	}
 
 	/**
-	 * Creates or updates a node that is in location c and next to
+	 * Creates or updates a node that is in location (x,y) and next to
 	 * node previous
-	 * @param c The location coordinates of the node
+	 * @param x The x coordinate of the node
+	 * @param y The y coordinate of the node
 	 * @param previous Previous node whose neighbor node at c is
 	 * @return The created/updated node
 	 */
-	private MapNode createOrUpdateNode(Coord c, MapNode previous) {
+	private MapNode createOrUpdateNode(double x, double y, MapNode previous) {
 		MapNode n = null;
 
-		n = nodes.get(c);	// try to get the node at that location
+		lookupKey.setLocation(x, y);
+		n = nodes.get(lookupKey);	// try to get the node at that location
 
 		if (n == null) { 	// no node in that location -> create new
+			Coord c = new Coord(x, y);
 			n = new MapNode(c);
 			nodes.put(c, n);
 		}
@@ -4,23 +4,37 @@
  */
 package input;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Reader;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import core.Coord;
+import core.Settings;
+import core.SettingsError;
+import core.SimError;
+import core.World;
 
 /**
  * Class for reading "Well-known text syntax" files. See e.g.
  * <A HREF="http://en.wikipedia.org/wiki/Well-known_text">Wikipedia</A> for
  * WKT syntax details. For example, <A HREF="http://openjump.org/">Open JUMP</A>
  * GIS program can save compatible data from many other formats.<BR>
+ * The data is tokenized directly from its bytes (files are memory mapped)
+ * and the coordinate values are parsed without creating intermediate
+ * strings. Several files can be read in parallel (see
+ * {@link #PARALLEL_LOADING_S}).
  */
 public class WKTReader {
 	/** known WKT type LINESTRING */
@@ -30,10 +44,51 @@ public class WKTReader {
 	/** known WKT type POINT */
 	public static final String POINT = "POINT";
 
-	/** are all lines of the file read */
-	private boolean done;
-	/** reader for the data */
-	private BufferedReader reader;
+	/**
+	 * Parallel WKT file loading -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Boolean. If true,
+	 * map and POI files are parsed in parallel, using
+	 * {@link World#PARALLEL_THREADS_S} threads. The parsed data is combined
+	 * in the same order as without this setting. Default is false.
+	 */
+	public static final String PARALLEL_LOADING_S = "parallelMapLoading";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/** powers of ten that are exactly representable as doubles */
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+		1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+		1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	/** maximum number of significant digits of a mantissa that is always
+	 * exactly representable as a double */
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	/** the data that is read */
+	private ByteBuffer data;
+	/** position of the next byte to read */
+	private int pos;
+	/** end of the data */
+	private int limit;
+
+	/**
+	 * Returns how many threads should be used for loading WKT files
+	 * @return The number of threads (1 if parallel loading is disabled)
+	 * @see #PARALLEL_LOADING_S
+	 */
+	public static int getNrofLoadingThreads() {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		if (!s.getBoolean(PARALLEL_LOADING_S, false)) {
+			return 1;
+		}
+
+		int nrofThreads = s.getInt(World.PARALLEL_THREADS_S,
+				Runtime.getRuntime().availableProcessors());
+		if (nrofThreads < 1) {
+			throw new SettingsError("Invalid value (" + nrofThreads +
+					") for " + World.OPTIMIZATION_SETTINGS_NS + "." +
+					World.PARALLEL_THREADS_S);
+		}
+		return nrofThreads;
+	}
 
 	/**
 	 * Read point data from a file
@@ -42,7 +97,8 @@ public class WKTReader {
 	 * @throws IOException if something went wrong while reading
 	 */
 	public List<Coord> readPoints(File file) throws IOException {
-		return readPoints(new FileReader(file));
+		init(file);
+		return readPoints();
 	}
 
 	/**
@@ -52,10 +108,41 @@ public class WKTReader {
 	 * @throws IOException if something went wrong while reading
 	 */
 	public List<Coord> readPoints(Reader r) throws IOException {
-		List<Coord> points = new ArrayList<Coord>();
+		init(r);
+		return readPoints();
+	}
 
+	/**
+	 * Reads point data from many files. The files are read in parallel if
+	 * more than one thread is allowed.
+	 * @param files The files to read points from
+	 * @param nrofThreads Maximum number of threads to use
+	 * @return Lists of coordinates read from the files (in the same order
+	 * as the files)
+	 * @throws IOException if something went wrong while reading some file
+	 */
+	public static List<List<Coord>> readPoints(List<File> files,
+			int nrofThreads) throws IOException {
+		List<Callable<List<Coord>>> tasks =
+			new ArrayList<Callable<List<Coord>>>(files.size());
+		for (final File f : files) {
+			tasks.add(new Callable<List<Coord>>() {
+				public List<Coord> call() throws IOException {
+					return new WKTReader().readPoints(f);
+				}
+			});
+		}
+		return runAll(tasks, nrofThreads);
+	}
+
+	/**
+	 * Reads points from the data given at init
+	 * @return A list of coordinates that were read
+	 * @throws IOException if something went wrong while reading
+	 */
+	private List<Coord> readPoints() throws IOException {
+		List<Coord> points = new ArrayList<Coord>();
 		String type;
-		init(r);
 
 		while((type = nextType()) != null) {
 			if (type.equals(POINT)) {
@@ -63,7 +150,7 @@ public class WKTReader {
 			}
 			else {
 				// known type but not interesting -> skip
-				readNestedContents();
+				skipNestedContents();
 			}
 		}
 
@@ -77,53 +164,136 @@ public class WKTReader {
 	 * @throws IOException if something went wrong while reading
 	 */
 	public List<List<Coord>> readLines(File file) throws IOException {
-		List<List<Coord>> lines = new ArrayList<List<Coord>>();
+		LineBuffer lines = new LineBuffer();
+		String type;
+		init(file);
 
+		while((type = nextType()) != null) {
+			if (type.equals(LINESTRING)) {
+				parseLineString(lines);
+			}
+			else {
+				// known type but not interesting -> skip
+				skipNestedContents();
+			}
+		}
+
+		List<List<Coord>> list = new ArrayList<List<Coord>>(
+				lines.getNrofLines());
+		for (int i=0, n=lines.getNrofLines(); i<n; i++) {
+			List<Coord> coords = new ArrayList<Coord>();
+			for (int j=lines.getStart(i), end=lines.getEnd(i); j<end; j++) {
+				coords.add(new Coord(lines.getX(j), lines.getY(j)));
+			}
+			list.add(coords);
+		}
+
+		return list;
+	}
+
+	/**
+	 * Reads all the LINESTRING and MULTILINESTRING data from the data given
+	 * at init. Other data is skipped.
+	 * @return The lines that were read
+	 * @throws IOException if something went wrong while reading
+	 */
+	protected LineBuffer readPaths() throws IOException {
+		LineBuffer lines = new LineBuffer();
 		String type;
-		init(new FileReader(file));
 
 		while((type = nextType()) != null) {
 			if (type.equals(LINESTRING)) {
-				lines.add(parseLineString(readNestedContents()));
+				parseLineString(lines);
+			}
+			else if (type.equals(MULTILINESTRING)) {
+				parseMultilinestring(lines);
 			}
 			else {
 				// known type but not interesting -> skip
-				readNestedContents();
+				skipNestedContents();
 			}
 		}
 
 		return lines;
 	}
 
-
 	/**
-	 * Initialize the reader to use a certain input reader
+	 * Initialize the reader to use a certain input reader. All the data is
+	 * read from the input.
 	 * @param input The input to use
+	 * @throws IOException if something went wrong while reading the input
 	 */
-	protected void init(Reader input) {
-		setDone(false);
-		reader = new BufferedReader(input);
+	protected void init(Reader input) throws IOException {
+		StringBuilder buf = new StringBuilder();
+		char[] chars = new char[8 * 1024];
+		int read;
+		while ((read = input.read(chars)) > 0) {
+			buf.append(chars, 0, read);
+		}
+		input.close();
+		init(ByteBuffer.wrap(buf.toString().getBytes(UTF8)));
 	}
 
 	/**
-	 * Returns the next type read from the reader given at init or null
-	 * if no more types can be read
-	 * @return the next type read from the reader given at init
-	 * @throws IOException
+	 * Initialize the reader to read a file. The file is memory mapped.
+	 * @param file The file to read
+	 * @throws IOException if the file can't be read
+	 */
+	protected void init(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File " + file + " is too big");
+			}
+			init(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Initialize the reader to read bytes of WKT data
+	 * @param data The data (from its position to its limit)
 	 */
-	protected String nextType() throws IOException {
-		String type = null;
+	protected void init(ByteBuffer data) {
+		this.data = data;
+		this.pos = data.position();
+		this.limit = data.limit();
+	}
 
-		while (!done && type == null) {
-			type = readWord(reader);
+	/**
+	 * Returns the next type read from the data given at init or null
+	 * if no more types can be read
+	 * @return the next type read from the data given at init
+	 */
+	protected String nextType() {
+		skipWhitespace();
+		if (pos >= limit) {
+			return null;
+		}
 
-			if (type.length() < 1) { // discard empty lines
-				type = null;
-				continue;
+		int start = pos;
+		while (pos < limit) {
+			int c = data.get(pos);
+			if (c == '(' || isWhitespace(c)) {
+				break;
 			}
+			pos++;
 		}
 
-		return type;
+		// avoid creating strings for the known types
+		if (matches(start, LINESTRING)) {
+			return LINESTRING;
+		}
+		else if (matches(start, MULTILINESTRING)) {
+			return MULTILINESTRING;
+		}
+		else if (matches(start, POINT)) {
+			return POINT;
+		}
+		return getString(start, pos);
 	}
 
 	/**
@@ -147,96 +317,302 @@ public class WKTReader {
 	}
 
 	/**
-	 * Reads a "word", ie whitespace delimited string of characters, from
-	 * the reader
-	 * @param r Reader to read the characters from
-	 * @return The word that was read (or empty string if nothing was read)
-	 * @throws IOException
+	 * Parses a MULTILINESTRING statement that has nested linestrings from
+	 * the data given at init
+	 * @param lines The buffer where the lines are added to
+	 * @throws IOException if couldn't parse coordinate values
 	 */
-	protected String readWord(Reader r) throws IOException {
-		StringBuffer buf = new StringBuffer();
-		char c = skipAllWhitespace(r);
-
-		// read non-whitespace part
-		while(c != (char)-1 && !Character.isWhitespace(c)) {
-			buf.append(c);
-			c = (char)r.read();
+	protected void parseMultilinestring(LineBuffer lines)
+			throws IOException {
+		if (!skipUntil('(')) {
+			return;
 		}
 
-		if (c == (char)-1) {
-			setDone(true);
+		while (true) {
+			skipWhitespace();
+			int c = peek();
+			if (c == -1) {
+				return;
+			}
+			pos++;
+			if (c == ')') {
+				return;
+			}
+			if (c == '(') {
+				parseCoords(lines);
+			}
 		}
-		return buf.toString();
 	}
 
 	/**
-	 * Parses a MULTILINESTRING statement that has nested linestrings from
-	 * the current reader
-	 * @return List of parsed Coord lists
-	 * @throws IOException
+	 * Parses a LINESTRING statement's coordinates from the data given at
+	 * init
+	 * @param lines The buffer where the line is added to
+	 * @throws IOException if couldn't parse coordinate values
 	 */
-	protected List<List<Coord>> parseMultilinestring()
-			throws IOException {
-		List<List<Coord>> list = new ArrayList<List<Coord>>();
-		String multiContents = readNestedContents(reader);
-		StringReader r2 = new StringReader(multiContents);
-		String lineString = readNestedContents(r2);
-
-		while (lineString.length() > 0) {
-			list.add(parseLineString(lineString));
-			lineString = readNestedContents(r2);
+	protected void parseLineString(LineBuffer lines) throws IOException {
+		if (skipUntil('(')) {
+			parseCoords(lines);
 		}
-
-		return list;
 	}
 
 	/**
-	 * Parses a WKT point data from the intialized reader
+	 * Parses a WKT point data from the data given at init
 	 * @return Point data as a Coordinate
 	 * @throws IOException if couldn't parse coordinate values
 	 */
 	protected Coord parsePoint() throws IOException {
-		String coords = readNestedContents(reader);
-		Scanner s = new Scanner(coords);
-		double x,y;
+		LineBuffer point = new LineBuffer();
+		parseLineString(point);
+		if (point.getNrofLines() != 1 || point.getEnd(0) < 1) {
+			throw new IOException("Bad coordinate values at " + pos);
+		}
+		return new Coord(point.getX(0), point.getY(0));
+	}
 
-		try {
-			x = s.nextDouble();
-			y = s.nextDouble();
-		} catch (RuntimeException e) {
-			throw new IOException("Bad coordinate values: '" + coords + "'");
+	/**
+	 * Parses comma separated coordinate tuples until the closing parenthesis
+	 * and adds them to a buffer as a new line. Values after the first two
+	 * values of a tuple are skipped.
+	 * @param lines The buffer where the line is added to
+	 * @throws IOException if couldn't parse coordinate values
+	 */
+	private void parseCoords(LineBuffer lines) throws IOException {
+		while (true) {
+			skipWhitespace();
+			int c = peek();
+			if (c == ')') {
+				pos++;
+				break;
+			}
+			else if (c == -1) {
+				break;
+			}
+			else if (c == ',') {
+				pos++;
+				continue;
+			}
+
+			double x = parseNumber();
+			skipWhitespace();
+			double y = parseNumber();
+			lines.add(x, y);
+
+			skipWhitespace();
+			while ((c = peek()) != ',' && c != ')' && c != -1) {
+				parseNumber();
+				skipWhitespace();
+			}
 		}
+		lines.endLine();
+	}
 
-		return new Coord(x,y);
+	/**
+	 * Parses a number from the current position. Numbers with at most
+	 * {@value #MAX_EXACT_DIGITS} significant digits and a small exponent are
+	 * computed directly from the digits (the result is exactly the same as
+	 * with {@link Double#parseDouble(String)}), others are parsed with
+	 * {@link Double#parseDouble(String)}.
+	 * @return The number
+	 * @throws IOException if there is no valid number at the position
+	 */
+	private double parseNumber() throws IOException {
+		int start = pos;
+		boolean negative = false;
+		long mantissa = 0;
+		int nrofDigits = 0;
+		int exponent = 0;
+		boolean anyDigits = false;
+		boolean exact = true;
+		int c = peek();
+
+		if (c == '-' || c == '+') {
+			negative = (c == '-');
+			c = next();
+		}
+		while (c >= '0' && c <= '9') {
+			anyDigits = true;
+			if (mantissa != 0 || c != '0') {
+				if (nrofDigits < MAX_EXACT_DIGITS) {
+					mantissa = mantissa * 10 + (c - '0');
+				}
+				else {
+					exact = false;
+				}
+				nrofDigits++;
+			}
+			c = next();
+		}
+		if (c == '.') {
+			c = next();
+			while (c >= '0' && c <= '9') {
+				anyDigits = true;
+				if (mantissa != 0 || c != '0') {
+					if (nrofDigits < MAX_EXACT_DIGITS) {
+						mantissa = mantissa * 10 + (c - '0');
+					}
+					else {
+						exact = false;
+					}
+					nrofDigits++;
+				}
+				exponent--;
+				c = next();
+			}
+		}
+		if (anyDigits && (c == 'e' || c == 'E')) {
+			c = next();
+			boolean negativeExp = false;
+			if (c == '-' || c == '+') {
+				negativeExp = (c == '-');
+				c = next();
+			}
+			int exp = 0;
+			boolean anyExpDigits = false;
+			while (c >= '0' && c <= '9') {
+				anyExpDigits = true;
+				if (exp < 10000) {
+					exp = exp * 10 + (c - '0');
+				}
+				c = next();
+			}
+			exact &= anyExpDigits;
+			exponent += (negativeExp ? -exp : exp);
+		}
+
+		if (c != -1 && c != ',' && c != '(' && c != ')' && !isWhitespace(c)) {
+			exact = false; // something unusual; let parseDouble decide
+			while ((c = peek()) != -1 && c != ',' && c != '(' && c != ')' &&
+					!isWhitespace(c)) {
+				pos++;
+			}
+		}
+
+		if (exact && anyDigits) {
+			if (mantissa == 0) {
+				return (negative ? -0.0 : 0.0);
+			}
+			if (exponent >= -22 && exponent <= 22) {
+				double value = mantissa;
+				if (exponent < 0) {
+					value /= POWERS_OF_TEN[-exponent];
+				}
+				else {
+					value *= POWERS_OF_TEN[exponent];
+				}
+				return (negative ? -value : value);
+			}
+		}
+
+		String token = getString(start, pos);
+		try {
+			return Double.parseDouble(token);
+		} catch (NumberFormatException e) {
+			throw new IOException("Bad coordinate value: '" + token + "'");
+		}
 	}
 
 	/**
-	 * Reads and skips all characters until character "until" is read or
-	 * end of stream is reached. Also the expected character is discarded.
-	 * @param r Reader to read characters from
+	 * Reads and skips all bytes until character "until" is read or
+	 * end of data is reached. Also the expected character is discarded.
 	 * @param until What character to expect
-	 * @throws IOException
+	 * @return true if the character was found, false if the end of data was
+	 * reached
 	 */
-	protected void skipUntil(Reader r, char until) throws IOException {
-		char c;
-		do {
-			c = (char)r.read();
-		} while (c != until && c != (char)-1);
+	private boolean skipUntil(char until) {
+		while (pos < limit) {
+			if (data.get(pos++) == until) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
-	 * Skips all consecutive whitespace characters from reader
-	 * @param r Reader where the whitespace is skipped
-	 * @return First non-whitespace character read from the reader
-	 * @throws IOException
+	 * Skips everything from the first opening parenthesis until the
+	 * matching closing parenthesis
 	 */
-	protected char skipAllWhitespace(Reader r) throws IOException {
-		char c;
-		do {
-			c = (char)r.read();
-		} while (Character.isWhitespace(c) && c != (char)-1);
+	protected void skipNestedContents() {
+		int end = findNestedEnd();
+		pos = Math.min(end + 1, limit);
+	}
 
-		return c;
+	/**
+	 * Skips the data until the first opening parenthesis and returns the
+	 * position of the matching closing parenthesis (or the end of data)
+	 * @return the position of the closing parenthesis
+	 */
+	private int findNestedEnd() {
+		int parOpen = 1; // nrof open parentheses
+		skipUntil('(');
+
+		int p = pos;
+		while (p < limit) {
+			int c = data.get(p);
+			if (c == '(') {
+				parOpen++;
+			}
+			else if (c == ')') {
+				parOpen--;
+				if (parOpen == 0) {
+					break;
+				}
+			}
+			p++;
+		}
+		return p;
+	}
+
+	private void skipWhitespace() {
+		while (pos < limit && isWhitespace(data.get(pos))) {
+			pos++;
+		}
+	}
+
+	/**
+	 * Returns the byte at the current position or -1 at the end of data
+	 */
+	private int peek() {
+		return (pos < limit ? data.get(pos) : -1);
+	}
+
+	/**
+	 * Moves to the next byte and returns it (or -1 at the end of data)
+	 */
+	private int next() {
+		pos++;
+		return peek();
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c >= 0 && Character.isWhitespace((char)c);
+	}
+
+	/**
+	 * Returns true if the data from the given position to the current
+	 * position is the given ASCII string
+	 */
+	private boolean matches(int start, String s) {
+		if (pos - start != s.length()) {
+			return false;
+		}
+		for (int i=0; i<s.length(); i++) {
+			if (data.get(start + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the data between two positions as a string
+	 */
+	private String getString(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i=0; i<bytes.length; i++) {
+			bytes[i] = data.get(start + i);
+		}
+		return new String(bytes, UTF8);
 	}
 
 	/**
@@ -272,56 +648,183 @@ public class WKTReader {
 	}
 
 	/**
-	 * Returns nested contents from the reader given at init
-	 * @return nested contents from the reader given at init
+	 * Reads and skips all characters until character "until" is read or
+	 * end of stream is reached. Also the expected character is discarded.
+	 * @param r Reader to read characters from
+	 * @param until What character to expect
 	 * @throws IOException
-	 * @see #readNestedContents(Reader)
 	 */
-	public String readNestedContents() throws IOException {
-		return readNestedContents(reader);
+	protected void skipUntil(Reader r, char until) throws IOException {
+		char c;
+		do {
+			c = (char)r.read();
+		} while (c != until && c != (char)-1);
 	}
 
 	/**
-	 * Parses coordinate tuples from "LINESTRING" lines
-	 * @param line String that contains the whole "LINESTRING"'s content
-	 * @return List of coordinates parsed from the linestring
+	 * Returns nested contents from the data given at init
+	 * @return nested contents from the data given at init
+	 * @see #readNestedContents(Reader)
 	 */
-	protected List<Coord> parseLineString(String line) {
-		List<Coord> coords = new ArrayList<Coord>();
-		Scanner lineScan;
-		Scanner tupleScan;
-		double x,y;
-		Coord c;
-
-		lineScan = new Scanner(line);
-		lineScan.useDelimiter(",");
-
-		while (lineScan.hasNext()) {
-			tupleScan = new Scanner(lineScan.next());
-			x = Double.parseDouble(tupleScan.next());
-			y = Double.parseDouble(tupleScan.next());
-			c = new Coord(x,y);
+	public String readNestedContents() {
+		int end = findNestedEnd();
+		String contents = getString(pos, end);
+		pos = Math.min(end + 1, limit);
+
+		StringBuilder buf = new StringBuilder(contents);
+		for (int i=0; i<buf.length(); i++) {
+			if (Character.isWhitespace(buf.charAt(i))) {
+				buf.setCharAt(i, ' '); // convert all whitespace to basic space
+			}
+		}
+		return buf.toString();
+	}
 
-			coords.add(c);
+	/**
+	 * Runs tasks that read data, in parallel if more than one thread is
+	 * allowed, and returns their results
+	 * @param tasks The tasks to run
+	 * @param nrofThreads Maximum number of threads to use
+	 * @return The results of the tasks (in the same order as the tasks)
+	 * @throws IOException if some task threw an IOException
+	 */
+	protected static <T> List<T> runAll(List<Callable<T>> tasks,
+			int nrofThreads) throws IOException {
+		List<T> results = new ArrayList<T>(tasks.size());
+
+		if (nrofThreads <= 1 || tasks.size() <= 1) {
+			for (Callable<T> task : tasks) {
+				try {
+					results.add(task.call());
+				} catch (Exception e) {
+					throw rethrow(e);
+				}
+			}
+			return results;
 		}
 
-		return coords;
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Math.min(nrofThreads, tasks.size()));
+		try {
+			for (Future<T> f : pool.invokeAll(tasks)) {
+				results.add(f.get());
+			}
+		} catch (InterruptedException e) {
+			throw new SimError(e);
+		} catch (ExecutionException e) {
+			throw rethrow(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return results;
 	}
 
 	/**
-	 * Returns true if the whole file has been read
-	 * @return true if the whole file has been read
+	 * Rethrows the exception of a task as it is (IOExceptions, runtime
+	 * exceptions and errors) or wrapped in a SimError
 	 */
-	protected boolean isDone() {
-		return this.done;
+	private static IOException rethrow(Throwable t) {
+		if (t instanceof IOException) {
+			return (IOException)t;
+		}
+		else if (t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		}
+		else if (t instanceof Error) {
+			throw (Error)t;
+		}
+		throw new SimError(t.toString());
 	}
 
 	/**
-	 * Sets the "is file read" state
-	 * @param done If true, reading is done
+	 * Lines of coordinates stored in primitive arrays. The coordinates of
+	 * all the lines are stored one after another.
 	 */
-	protected void setDone(boolean done) {
-		this.done = done;
-	}
+	protected static class LineBuffer {
+		private double[] xs;
+		private double[] ys;
+		private int nrofCoords;
+		/** the index after the last coordinate of each line */
+		private int[] lineEnds;
+		private int nrofLines;
+
+		/**
+		 * Constructor. Creates an empty buffer.
+		 */
+		public LineBuffer() {
+			this.xs = new double[16];
+			this.ys = new double[16];
+			this.lineEnds = new int[4];
+		}
+
+		/**
+		 * Adds a coordinate to the current line
+		 * @param x The x coordinate
+		 * @param y The y coordinate
+		 */
+		public void add(double x, double y) {
+			if (nrofCoords == xs.length) {
+				xs = Arrays.copyOf(xs, 2 * nrofCoords);
+				ys = Arrays.copyOf(ys, 2 * nrofCoords);
+			}
+			xs[nrofCoords] = x;
+			ys[nrofCoords] = y;
+			nrofCoords++;
+		}
 
+		/**
+		 * Ends the current line. The next coordinates are added to a new
+		 * line.
+		 */
+		public void endLine() {
+			if (nrofLines == lineEnds.length) {
+				lineEnds = Arrays.copyOf(lineEnds, 2 * nrofLines);
+			}
+			lineEnds[nrofLines++] = nrofCoords;
+		}
+
+		/**
+		 * Returns the number of lines
+		 * @return the number of lines
+		 */
+		public int getNrofLines() {
+			return nrofLines;
+		}
+
+		/**
+		 * Returns the index of the first coordinate of a line
+		 * @param line Index of the line
+		 * @return the index of the first coordinate of the line
+		 */
+		public int getStart(int line) {
+			return (line == 0 ? 0 : lineEnds[line - 1]);
+		}
+
+		/**
+		 * Returns the index after the last coordinate of a line
+		 * @param line Index of the line
+		 * @return the index after the last coordinate of the line
+		 */
+		public int getEnd(int line) {
+			return lineEnds[line];
+		}
+
+		/**
+		 * Returns the x coordinate at an index
+		 * @param i The index
+		 * @return the x coordinate
+		 */
+		public double getX(int i) {
+			return xs[i];
+		}
+
+		/**
+		 * Returns the y coordinate at an index
+		 * @param i The index
+		 * @return the y coordinate
+		 */
+		public double getY(int i) {
+			return ys[i];
+		}
+	}
 }
@@ -251,6 +251,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 
+	/**
+	 * Returns the size of the cells; interfaces farther away are never in the
+	 * neighboring cells
+	 * @return The cell size
+	 */
+	@Override
+	public double getNearDistance() {
+		return this.cellSize;
+	}
+
 	/**
 	 * Returns a string representation of the ConnectivityCells object
 	 * @return a string representation of the ConnectivityCells object
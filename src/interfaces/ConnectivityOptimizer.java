@@ -45,4 +45,15 @@ abstract public class ConnectivityOptimizer {
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Returns the distance within which all interfaces near to an interface
+	 * are, i.e., all interfaces that are not returned by
+	 * {@link #getNearInterfaces(NetworkInterface)} are at least this far from
+	 * the interface. The default implementation returns zero (no guarantee).
+	 * @return The distance
+	 */
+	public double getNearDistance() {
+		return 0;
+	}
 }
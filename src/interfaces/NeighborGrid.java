@@ -0,0 +1,721 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import movement.MovementModel;
+import core.Coord;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.World;
+
+/**
+ * <P>
+ * Uniform grid based connectivity optimizer that keeps track of which
+ * interfaces are within the range of each other. Unlike
+ * {@link ConnectivityGrid}, which returns all interfaces of the neighboring
+ * cells every time it is asked, this optimizer maintains for every interface
+ * a set of neighbors (interfaces within the maximum radio range) and
+ * updates the sets incrementally.
+ * </P>
+ * <P>
+ * Interfaces are given dense index numbers and all per-interface data
+ * (positions, cells, cell members and neighbor sets) is stored in primitive
+ * arrays, so updating the grid doesn't allocate any objects (except when the
+ * arrays need to grow). The grid is updated at most once per change of
+ * locations: the first request for near interfaces after some interface has
+ * moved checks all interfaces' locations and re-checks only the pairs where
+ * at least one of the interfaces moved. When most of the interfaces have
+ * moved, the whole grid is swept using the half-neighborhood scheme where
+ * each cell is compared only with itself and four of its eight neighbors,
+ * so every pair is checked once.
+ * </P>
+ * <P>
+ * The optimizer is taken into use with the {@link #NEIGHBOR_GRID_S} setting.
+ * Same as with {@link ConnectivityGrid}, negative coordinates are not
+ * supported.
+ * </P>
+ */
+public class NeighborGrid extends ConnectivityOptimizer {
+
+	/**
+	 * Use neighbor grid instead of connectivity grid -setting id ({@value}).
+	 * Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space. Boolean.
+	 * Default is false. The size of the cells is affected by
+	 * {@link ConnectivityGrid#CELL_SIZE_MULT_S} the same way as with
+	 * the connectivity grid.
+	 */
+	public static final String NEIGHBOR_GRID_S = "neighborGrid";
+
+	/** initial size of the per-interface arrays */
+	private static final int INITIAL_CAPACITY = 64;
+	/** initial size of a neighbor set */
+	private static final int INITIAL_NEIGHBOR_CAPACITY = 4;
+	/** value for "no interface" in the cell lists */
+	private static final int NONE = -1;
+
+	private static boolean enabled;
+	private static int worldSizeX;
+	private static int worldSizeY;
+	private static int cellSizeMultiplier;
+
+	static HashMap<Integer,NeighborGrid> gridobjects;
+
+	/** interfaces by their index */
+	private NetworkInterface[] interfaces;
+	/** index numbers of the interfaces */
+	private HashMap<NetworkInterface, Integer> indexes;
+	/** number of interfaces in the grid */
+	private int nrofInterfaces;
+
+	/** last known x-coordinates of the interfaces */
+	private double[] xs;
+	/** last known y-coordinates of the interfaces */
+	private double[] ys;
+	/** cell index of each interface */
+	private int[] cellOf;
+	/** next interface in the same cell (or NONE) */
+	private int[] nextInCell;
+	/** previous interface in the same cell (or NONE) */
+	private int[] prevInCell;
+	/** has the interface moved since the previous update */
+	private boolean[] moved;
+	/** indexes of the interfaces that have moved */
+	private int[] movedList;
+	/** number of interfaces in the moved list */
+	private int nrofMoved;
+	/** neighbor sets of the interfaces */
+	private int[][] neighbors;
+	/** sizes of the neighbor sets */
+	private int[] nrofNeighbors;
+	/** views to the neighbor sets */
+	private NeighborView[] views;
+
+	/** first interface in each cell (or NONE) */
+	private int[] cellHead;
+	private double cellSize;
+	private int rows;
+	private int cols;
+	/** width of a row in the cell array (with the border cells) */
+	private int rowWidth;
+
+	/** neighbor distance (the largest transmit range seen) */
+	private double range;
+	/** does some interface's location need checking */
+	private boolean stale;
+
+	static {
+		DTNSim.registerForReset(NeighborGrid.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		gridobjects = new HashMap<Integer, NeighborGrid>();
+
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		enabled = s.getBoolean(NEIGHBOR_GRID_S, false);
+		if (!enabled) {
+			return;
+		}
+
+		cellSizeMultiplier = s.getInt(ConnectivityGrid.CELL_SIZE_MULT_S,
+				ConnectivityGrid.DEF_CON_CELL_SIZE_MULT);
+		if (cellSizeMultiplier < 1) {
+			throw new SettingsError("Too small value (" + cellSizeMultiplier +
+					") for " + World.OPTIMIZATION_SETTINGS_NS +
+					"." + ConnectivityGrid.CELL_SIZE_MULT_S);
+		}
+
+		s.setNameSpace(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		worldSizeX = worldSize[0];
+		worldSizeY = worldSize[1];
+	}
+
+	/**
+	 * Returns true if neighbor grid should be used instead of the
+	 * connectivity grid
+	 * @return true if neighbor grid is enabled in the settings
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Creates a new neighbor grid
+	 * @param range Initial neighbor distance
+	 */
+	private NeighborGrid(double range) {
+		this.range = range;
+		this.indexes = new HashMap<NetworkInterface, Integer>();
+		this.nrofInterfaces = 0;
+		allocateInterfaceArrays(INITIAL_CAPACITY);
+		createCells();
+	}
+
+	/**
+	 * Returns a neighbor grid object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param maxRange Maximum range used by the radio technology using this
+	 *  neighbor grid.
+	 * @return The neighbor grid object for a specific interface
+	 */
+	public static NeighborGrid NeighborGridFactory(int key, double maxRange) {
+		NeighborGrid grid = gridobjects.get(key);
+		if (grid == null) {
+			grid = new NeighborGrid(maxRange);
+			gridobjects.put(key, grid);
+		}
+		return grid;
+	}
+
+	/**
+	 * (Re)creates the cells using the current neighbor distance and puts
+	 * all interfaces in their cells
+	 */
+	private void createCells() {
+		this.cellSize = Math.ceil(range * cellSizeMultiplier);
+		if (cellSize <= 0) {
+			cellSize = 1;
+		}
+		this.rows = (int)(worldSizeY / cellSize) + 1;
+		this.cols = (int)(worldSizeX / cellSize) + 1;
+		/* empty cells on both sides to make neighbor search easier */
+		this.rowWidth = cols + 2;
+		this.cellHead = new int[(rows + 2) * rowWidth];
+		Arrays.fill(cellHead, NONE);
+
+		for (int i=0; i<nrofInterfaces; i++) {
+			cellOf[i] = cellIndex(xs[i], ys[i]);
+			linkToCell(i);
+		}
+	}
+
+	/**
+	 * Creates (or grows) the per-interface arrays
+	 * @param capacity New size of the arrays
+	 */
+	private void allocateInterfaceArrays(int capacity) {
+		int n = this.nrofInterfaces;
+		interfaces = copyOf(interfaces, new NetworkInterface[capacity], n);
+		views = copyOf(views, new NeighborView[capacity], n);
+		neighbors = copyOf(neighbors, new int[capacity][], n);
+		xs = copyOf(xs, new double[capacity], n);
+		ys = copyOf(ys, new double[capacity], n);
+		cellOf = copyOf(cellOf, new int[capacity], n);
+		nextInCell = copyOf(nextInCell, new int[capacity], n);
+		prevInCell = copyOf(prevInCell, new int[capacity], n);
+		moved = copyOf(moved, new boolean[capacity], n);
+		movedList = copyOf(movedList, new int[capacity], n);
+		nrofNeighbors = copyOf(nrofNeighbors, new int[capacity], n);
+	}
+
+	/**
+	 * Copies the first n elements from one array to another
+	 * @param from The array to copy from (or null)
+	 * @param to The array to copy to
+	 * @param n How many elements to copy
+	 * @return The array where the elements were copied to
+	 */
+	private static <T> T copyOf(Object from, T to, int n) {
+		if (from != null) {
+			System.arraycopy(from, 0, to, 0, n);
+		}
+		return to;
+	}
+
+	/**
+	 * Adds a network interface to the grid
+	 * @param ni The new network interface
+	 */
+	public synchronized void addInterface(NetworkInterface ni) {
+		if (indexes.containsKey(ni)) {
+			return;
+		}
+		if (nrofInterfaces == interfaces.length) {
+			allocateInterfaceArrays(interfaces.length * 2);
+		}
+
+		int i = nrofInterfaces++;
+		Coord loc = ni.getLocation();
+		interfaces[i] = ni;
+		indexes.put(ni, i);
+		views[i] = new NeighborView(i);
+		neighbors[i] = new int[INITIAL_NEIGHBOR_CAPACITY];
+		nrofNeighbors[i] = 0;
+		xs[i] = loc.getX();
+		ys[i] = loc.getY();
+		cellOf[i] = cellIndex(xs[i], ys[i]);
+		linkToCell(i);
+
+		/* new interface is checked against everyone near on next update */
+		moved[i] = true;
+		movedList[nrofMoved++] = i;
+		stale = true;
+	}
+
+	/**
+	 * Adds interfaces to the grid
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Removes a network interface from the grid
+	 * @param ni The interface to be removed
+	 */
+	public synchronized void removeInterface(NetworkInterface ni) {
+		Integer index = indexes.remove(ni);
+		if (index == null) {
+			return;
+		}
+
+		int i = index;
+		while (nrofNeighbors[i] > 0) {
+			removeNeighbors(i, neighbors[i][0]);
+		}
+		unlinkFromCell(i);
+		removeFromMovedList(i);
+
+		/* move the last interface to the freed index */
+		int last = --nrofInterfaces;
+		if (i != last) {
+			unlinkFromCell(last);
+			boolean lastMoved = moved[last];
+			removeFromMovedList(last);
+			interfaces[i] = interfaces[last];
+			views[i] = views[last];
+			views[i].index = i;
+			neighbors[i] = neighbors[last];
+			nrofNeighbors[i] = nrofNeighbors[last];
+			xs[i] = xs[last];
+			ys[i] = ys[last];
+			cellOf[i] = cellOf[last];
+			linkToCell(i);
+			indexes.put(interfaces[i], i);
+			if (lastMoved) {
+				moved[i] = true;
+				movedList[nrofMoved++] = i;
+			}
+			/* rename the index in the neighbor sets of the neighbors */
+			for (int k=0; k<nrofNeighbors[i]; k++) {
+				int n = neighbors[i][k];
+				int pos = neighborPosition(n, last);
+				neighbors[n][pos] = i;
+			}
+		}
+		interfaces[last] = null;
+		views[last] = null;
+		neighbors[last] = null;
+		moved[last] = false;
+	}
+
+	/**
+	 * Marks the grid to be updated if the interface has moved. The actual
+	 * update is done when near interfaces are requested the next time.
+	 * @param ni The interface whose location should be checked
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		Integer index = indexes.get(ni);
+		if (index == null) {
+			return;
+		}
+		Coord loc = ni.getLocation();
+		if (loc.getX() != xs[index] || loc.getY() != ys[index]) {
+			stale = true;
+		}
+	}
+
+	/**
+	 * Returns the interfaces that are within the maximum range of the given
+	 * interface. The returned collection also contains the interface itself
+	 * (as the collection returned by {@link ConnectivityGrid} does). The
+	 * collection is a view to the neighbor set that is valid until the
+	 * interfaces move again and it can be iterated by one thread at a time.
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @return Collection of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		update();
+		Integer index = indexes.get(ni);
+		if (index == null) {
+			return Collections.emptyList();
+		}
+		return views[index];
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		List<NetworkInterface> all = new ArrayList<NetworkInterface>();
+		for (int i=0; i<nrofInterfaces; i++) {
+			all.add(interfaces[i]);
+		}
+		return all;
+	}
+
+	/**
+	 * Returns the neighbor distance (interfaces farther away are not
+	 * returned as near interfaces)
+	 * @return The neighbor distance
+	 */
+	@Override
+	public double getNearDistance() {
+		return this.range;
+	}
+
+	/**
+	 * Updates the cells and the neighbor sets of all interfaces that have
+	 * moved since the previous update.
+	 */
+	private synchronized void update() {
+		if (!stale) {
+			return;
+		}
+		stale = false;
+
+		double maxRange = this.range;
+		for (int i=0; i<nrofInterfaces; i++) {
+			NetworkInterface ni = interfaces[i];
+			Coord loc = ni.getLocation();
+			double x = loc.getX();
+			double y = loc.getY();
+
+			if (ni.getTransmitRange() > maxRange) {
+				maxRange = ni.getTransmitRange();
+			}
+			if (x == xs[i] && y == ys[i]) {
+				continue;
+			}
+
+			xs[i] = x;
+			ys[i] = y;
+			int cell = cellIndex(x, y);
+			if (cell != cellOf[i]) {
+				unlinkFromCell(i);
+				cellOf[i] = cell;
+				linkToCell(i);
+			}
+			if (!moved[i]) {
+				moved[i] = true;
+				movedList[nrofMoved++] = i;
+			}
+		}
+
+		if (maxRange > this.range) {
+			/* ranges have grown -> all pairs need to be checked again */
+			this.range = maxRange;
+			if (range * cellSizeMultiplier > cellSize) {
+				createCells();
+			}
+			for (int i=0; i<nrofInterfaces; i++) {
+				if (!moved[i]) {
+					moved[i] = true;
+					movedList[nrofMoved++] = i;
+				}
+			}
+		}
+
+		if (nrofMoved == 0) {
+			return;
+		}
+
+		/* first drop the neighbors that are no longer in range */
+		for (int k=0; k<nrofMoved; k++) {
+			int i = movedList[k];
+			for (int n=0; n<nrofNeighbors[i]; ) {
+				int j = neighbors[i][n];
+				if (!isInRange(i, j)) {
+					removeNeighbors(i, j);
+				} else {
+					n++;
+				}
+			}
+		}
+
+		if (nrofMoved * 2 > nrofInterfaces) {
+			sweepAll();
+		} else {
+			sweepMoved();
+		}
+
+		for (int k=0; k<nrofMoved; k++) {
+			moved[movedList[k]] = false;
+		}
+		nrofMoved = 0;
+	}
+
+	/**
+	 * Checks all pairs of cells with the half-neighborhood scheme: every
+	 * cell is compared with itself and with the east, south-west, south and
+	 * south-east neighbor cells. Only the pairs where either interface has
+	 * moved are checked.
+	 */
+	private void sweepAll() {
+		int[] forward = {1, rowWidth - 1, rowWidth, rowWidth + 1};
+
+		for (int row=1; row<=rows; row++) {
+			for (int c=row*rowWidth + 1, end = c + cols; c<end; c++) {
+				for (int i=cellHead[c]; i != NONE; i = nextInCell[i]) {
+					for (int j=nextInCell[i]; j != NONE; j = nextInCell[j]) {
+						checkPair(i, j);
+					}
+					for (int f=0; f<forward.length; f++) {
+						for (int j=cellHead[c + forward[f]]; j != NONE;
+								j = nextInCell[j]) {
+							checkPair(i, j);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the moved interfaces against all interfaces in their own and
+	 * neighboring cells. A pair of two moved interfaces is checked only from
+	 * the side of the smaller index.
+	 */
+	private void sweepMoved() {
+		for (int k=0; k<nrofMoved; k++) {
+			int i = movedList[k];
+			int center = cellOf[i];
+			for (int dr=-rowWidth; dr<=rowWidth; dr += rowWidth) {
+				for (int c=center + dr - 1; c<=center + dr + 1; c++) {
+					for (int j=cellHead[c]; j != NONE; j = nextInCell[j]) {
+						if (j == i || (moved[j] && j < i)) {
+							continue;
+						}
+						checkPair(i, j);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if two interfaces are within range and updates their neighbor
+	 * sets accordingly. Pairs where neither interface has moved are skipped.
+	 * @param i Index of the first interface
+	 * @param j Index of the second interface
+	 */
+	private void checkPair(int i, int j) {
+		if (!moved[i] && !moved[j]) {
+			return;
+		}
+		boolean inRange = isInRange(i, j);
+		boolean wasInRange = neighborPosition(i, j) != NONE;
+
+		if (inRange && !wasInRange) {
+			addNeighbor(i, j);
+			addNeighbor(j, i);
+		}
+		else if (!inRange && wasInRange) {
+			removeNeighbors(i, j);
+		}
+	}
+
+	/**
+	 * Returns true if two interfaces are within the neighbor distance
+	 * @param i Index of the first interface
+	 * @param j Index of the second interface
+	 * @return true if the interfaces are within the distance
+	 */
+	private boolean isInRange(int i, int j) {
+		double dx = xs[i] - xs[j];
+		double dy = ys[i] - ys[j];
+		return dx*dx + dy*dy <= range*range;
+	}
+
+	/**
+	 * Adds an interface to another interface's neighbor set
+	 * @param i Index of the interface whose set is modified
+	 * @param j Index of the interface to add
+	 */
+	private void addNeighbor(int i, int j) {
+		int n = nrofNeighbors[i];
+		if (n == neighbors[i].length) {
+			neighbors[i] = copyOf(neighbors[i], new int[n * 2], n);
+		}
+		neighbors[i][n] = j;
+		nrofNeighbors[i] = n + 1;
+	}
+
+	/**
+	 * Removes two interfaces from each other's neighbor sets
+	 * @param i Index of the first interface
+	 * @param j Index of the second interface
+	 */
+	private void removeNeighbors(int i, int j) {
+		removeNeighbor(i, neighborPosition(i, j));
+		removeNeighbor(j, neighborPosition(j, i));
+	}
+
+	/**
+	 * Removes a neighbor from a neighbor set by its position in the set
+	 * @param i Index of the interface whose set is modified
+	 * @param pos Position of the neighbor in the set
+	 */
+	private void removeNeighbor(int i, int pos) {
+		int last = --nrofNeighbors[i];
+		neighbors[i][pos] = neighbors[i][last];
+	}
+
+	/**
+	 * Returns the position of an interface in another interface's neighbor
+	 * set
+	 * @param i Index of the interface whose set is searched
+	 * @param j Index of the interface to look for
+	 * @return The position or {@link #NONE} if the interface is not in the set
+	 */
+	private int neighborPosition(int i, int j) {
+		int[] set = neighbors[i];
+		for (int k=0, n=nrofNeighbors[i]; k<n; k++) {
+			if (set[k] == j) {
+				return k;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Removes an interface from the moved list (if it is there)
+	 * @param i Index of the interface
+	 */
+	private void removeFromMovedList(int i) {
+		if (!moved[i]) {
+			return;
+		}
+		for (int k=0; k<nrofMoved; k++) {
+			if (movedList[k] == i) {
+				movedList[k] = movedList[--nrofMoved];
+				break;
+			}
+		}
+		moved[i] = false;
+	}
+
+	/**
+	 * Returns the cell index of a location
+	 * @param x The x-coordinate
+	 * @param y The y-coordinate
+	 * @return The index of the cell
+	 */
+	private int cellIndex(double x, double y) {
+		// +1 due empty cells on both sides of the grid
+		int row = (int)(y / cellSize) + 1;
+		int col = (int)(x / cellSize) + 1;
+
+		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " +
+			x + "," + y + " is out of world's bounds";
+
+		return row * rowWidth + col;
+	}
+
+	/**
+	 * Adds an interface to the cell given by {@link #cellOf}
+	 * @param i Index of the interface
+	 */
+	private void linkToCell(int i) {
+		int c = cellOf[i];
+		int head = cellHead[c];
+		prevInCell[i] = NONE;
+		nextInCell[i] = head;
+		if (head != NONE) {
+			prevInCell[head] = i;
+		}
+		cellHead[c] = i;
+	}
+
+	/**
+	 * Removes an interface from the cell given by {@link #cellOf}
+	 * @param i Index of the interface
+	 */
+	private void unlinkFromCell(int i) {
+		int prev = prevInCell[i];
+		int next = nextInCell[i];
+		if (prev != NONE) {
+			nextInCell[prev] = next;
+		} else {
+			cellHead[cellOf[i]] = next;
+		}
+		if (next != NONE) {
+			prevInCell[next] = prev;
+		}
+	}
+
+	/**
+	 * Returns a string representation of the grid
+	 * @return a string representation of the grid
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " +
+			this.cols + "x" + this.rows + ", cell size=" + this.cellSize +
+			", interfaces=" + this.nrofInterfaces;
+	}
+
+	/**
+	 * Read-only view to an interface's neighbor set. The view is also its
+	 * own iterator, so iterating it doesn't create new objects, but only one
+	 * iteration can be in progress at a time.
+	 */
+	private class NeighborView extends AbstractCollection<NetworkInterface>
+			implements Iterator<NetworkInterface> {
+		private int index;
+		/** position of the iteration; -1 for the interface itself */
+		private int pos;
+
+		private NeighborView(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public Iterator<NetworkInterface> iterator() {
+			this.pos = -1;
+			return this;
+		}
+
+		@Override
+		public int size() {
+			return nrofNeighbors[index] + 1;
+		}
+
+		public boolean hasNext() {
+			return pos < nrofNeighbors[index];
+		}
+
+		public NetworkInterface next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			NetworkInterface ni = (pos == -1 ? interfaces[index] :
+				interfaces[neighbors[index][pos]]);
+			pos++;
+			return ni;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
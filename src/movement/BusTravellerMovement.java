@@ -122,8 +122,8 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			return null;
 		} else if (state == STATE_DECIDED_TO_ENTER_A_BUS) {
 			state = STATE_TRAVELLING_ON_BUS;
-			List<Coord> coords = nextPath.getCoords();
-			location = (coords.get(coords.size() - 1)).clone();
+			int last = nextPath.getNrofWaypoints() - 1;
+			location = new Coord(nextPath.getX(last), nextPath.getY(last));
 			return nextPath;
 		} else if (state == STATE_WALKING_ELSEWHERE) {
 			// Try to find back to the bus stop
@@ -29,6 +29,9 @@ public class ExternalMovement extends MovementModel {
 	public static final String MOVEMENT_FILE_S = "file";
 	/** number of preloaded intervals per preload run -setting id ({@value})*/
 	public static final String NROF_PRELOAD_S = "nrofPreload";
+	/** number of time intervals that are read ahead in a background thread
+	 * -setting id ({@value}). Default is 0 (no background reading) */
+	public static final String NROF_PREFETCH_S = "nrofPrefetch";
 
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
@@ -96,6 +99,11 @@ public class ExternalMovement extends MovementModel {
 					nrofPreload = 1;
 				}
 			}
+
+			int nrofPrefetch = s.getInt(NROF_PREFETCH_S, 0);
+			if (nrofPrefetch > 0) {
+				reader.startPrefetching(nrofPrefetch);
+			}
 		}
 	}
 
@@ -272,6 +280,10 @@ public class ExternalMovement extends MovementModel {
 	 */
 	public static void reset() {
 		idMapping = null;
+		if (reader != null) {
+			reader.stopPrefetching();
+			reader = null;
+		}
 	}
 
 }
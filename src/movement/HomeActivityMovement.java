@@ -195,7 +195,7 @@ public class HomeActivityMovement extends MapBasedMovement
 			return path;
 		} else {
 			Path path =  new Path(1);
-			path.addWaypoint(lastWaypoint.clone());
+			path.addWaypoint(lastWaypoint);
 			mode = READY_MODE;
 			return path;
 		}
@@ -4,7 +4,9 @@
  */
 package movement;
 
+import input.CompactMapFile;
 import input.WKTMapReader;
+import input.WKTReader;
 
 import java.io.File;
 import java.io.IOException;
@@ -16,12 +18,14 @@ import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
 import core.SettingsError;
+import core.SharedRunData;
 import core.SimError;
 
 /**
@@ -55,6 +59,15 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 */
 	public static final String MAP_SELECT_S = "okMaps";
 
+	/**
+	 * Map cache directory -setting id ({@value}). Path to a directory where
+	 * the processed maps are stored as compact binary files (see
+	 * {@link CompactMapFile}) and loaded from in later runs, which skips the
+	 * parsing and checking of the map files. If not defined, the map files
+	 * are always read.
+	 */
+	public static final String MAP_CACHE_DIR_S = "mapCacheDir";
+
 	/** the indexes of the OK map files or null if all maps are OK */
 	private int [] okMapNodeTypes;
 
@@ -265,7 +278,6 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	private SimMap readMap() {
 		SimMap simMap;
 		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
-		WKTMapReader r = new WKTMapReader(true);
 
 		if (cachedMap == null) {
 			cachedMapFiles = new ArrayList<String>(); // no cache present
@@ -283,29 +295,82 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			}
 		}
 
-		try {
-			int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		for (int i = 1; i <= nrofMapFiles; i++ ) {
+			cachedMapFiles.add(settings.getSetting(FILE_S + i));
+		}
+		nrofMapFilesRead = nrofMapFiles;
 
-			for (int i = 1; i <= nrofMapFiles; i++ ) {
-				String pathFile = settings.getSetting(FILE_S + i);
-				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+		try {
+			if (SharedRunData.isInUse()) {
+				/* concurrent batch runs: only one of them loads the map */
+				final Settings s = settings;
+				final int n = nrofMapFiles;
+				byte[] data = SharedRunData.get("map:" + cachedMapFiles,
+						new Callable<byte[]>() {
+					public byte[] call() throws IOException {
+						return CompactMapFile.toBytes(loadMap(s, n), n);
+					}
+				});
+				simMap = new CompactMapFile(data).getMap();
 			}
-
-			nrofMapFilesRead = nrofMapFiles;
-		} catch (IOException e) {
+			else {
+				simMap = loadMap(settings, nrofMapFiles);
+			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
 			throw new SimError(e.toString(),e);
 		}
 
+		checkCoordValidity(simMap.getNodes());
+
+		cachedMap = simMap;
+		return simMap;
+	}
+
+	/**
+	 * Loads the map from the map files (or from the map cache directory, if
+	 * the map is found there), mirrors the map and moves its upper left
+	 * corner to origo.
+	 * @param settings The settings of the map
+	 * @param nrofMapFiles Number of map files to read
+	 * @return The loaded map
+	 * @throws IOException if the map files can't be read
+	 */
+	private SimMap loadMap(Settings settings, int nrofMapFiles)
+			throws IOException {
+		SimMap simMap;
+		File cacheFile = null;
+		if (settings.contains(MAP_CACHE_DIR_S)) {
+			cacheFile = CompactMapFile.getCacheFile(
+					new File(settings.getSetting(MAP_CACHE_DIR_S)),
+					cachedMapFiles);
+		}
+
+		if (cacheFile != null && cacheFile.exists()) {
+			return new CompactMapFile(cacheFile).getMap();
+		}
+
+		WKTMapReader r = new WKTMapReader(true);
+		List<File> files = new ArrayList<File>(nrofMapFiles);
+		int[] types = new int[nrofMapFiles];
+		for (int i = 1; i <= nrofMapFiles; i++ ) {
+			files.add(new File(cachedMapFiles.get(i-1)));
+			types[i-1] = i;
+		}
+		r.addPaths(files, types, WKTReader.getNrofLoadingThreads());
+
 		simMap = r.getMap();
 		checkMapConnectedness(simMap.getNodes());
 		// mirrors the map (y' = -y) and moves its upper left corner to origo
 		simMap.mirror();
 		Coord offset = simMap.getMinBound().clone();
 		simMap.translate(-offset.getX(), -offset.getY());
-		checkCoordValidity(simMap.getNodes());
 
-		cachedMap = simMap;
+		if (cacheFile != null) {
+			CompactMapFile.store(cacheFile, simMap, nrofMapFiles);
+		}
 		return simMap;
 	}
 
@@ -326,13 +391,14 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 
 		firstNode = nodes.get(0);
 
+		/* nodes are marked visited when they are found, so the queue never
+		 * contains the same node twice */
 		visited.add(firstNode);
-		unvisited.addAll(firstNode.getNeighbors());
+		unvisited.add(firstNode);
 
 		while ((next = unvisited.poll()) != null) {
-			visited.add(next);
 			for (MapNode n: next.getNeighbors()) {
-				if (!visited.contains(n) && ! unvisited.contains(n)) {
+				if (visited.add(n)) {
 					unvisited.add(n);
 				}
 			}
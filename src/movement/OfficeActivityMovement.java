@@ -217,7 +217,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		}
 		if (SimClock.getIntTime() - startedWorkingTime >= workDayLength) {
 			Path path =  new Path(1);
-			path.addWaypoint(lastWaypoint.clone());
+			path.addWaypoint(lastWaypoint);
 			ready = true;
 			return path;
 		}
@@ -5,18 +5,30 @@
 package movement;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import core.Coord;
 
 /**
- * A Path between multiple Coordinates.
+ * A Path between multiple Coordinates. The coordinates and speeds of the
+ * waypoints are stored in primitive arrays; the added coordinates are copied
+ * and the path is traveled with a cursor (see {@link #moveToNextWaypoint()})
+ * so following a path doesn't require any objects per waypoint.
  */
 public class Path  {
-	/** coordinates of the path */
-	private List<Coord> coords;
-	/** speeds in the path legs */
-	private List<Double> speeds;
+	/** initial capacity of the waypoint arrays */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** x and y coordinates of the path */
+	private double[] xs;
+	private double[] ys;
+	/** number of waypoints in the path */
+	private int nrofWaypoints;
+	/** speeds in the path legs (or one constant speed) */
+	private double[] speeds;
+	/** number of speeds set */
+	private int nrofSpeeds;
 	private int nextWpIndex;
 
 	/**
@@ -24,19 +36,25 @@ public class Path  {
 	 */
 	public Path() {
 		this.nextWpIndex = 0;
-		this.coords = new ArrayList<Coord>();
-		this.speeds = new ArrayList<Double>(1);
+		this.xs = new double[INITIAL_CAPACITY];
+		this.ys = new double[INITIAL_CAPACITY];
+		this.speeds = new double[1];
+		this.nrofWaypoints = 0;
+		this.nrofSpeeds = 0;
 	}
 
 	/**
-	 * Copy constructor. Creates a copy of this path with a shallow copy of
+	 * Copy constructor. Creates a copy of this path with a copy of
 	 * the coordinates and speeds.
 	 * @param path The path to create the copy from
 	 */
 	public Path(Path path) {
 		this.nextWpIndex = path.nextWpIndex;
-		this.coords = new ArrayList<Coord>((ArrayList<Coord>)path.coords);
-		this.speeds = new ArrayList<Double>((ArrayList<Double>)path.speeds);
+		this.xs = Arrays.copyOf(path.xs, Math.max(path.nrofWaypoints, 1));
+		this.ys = Arrays.copyOf(path.ys, Math.max(path.nrofWaypoints, 1));
+		this.speeds = Arrays.copyOf(path.speeds, Math.max(path.nrofSpeeds, 1));
+		this.nrofWaypoints = path.nrofWaypoints;
+		this.nrofSpeeds = path.nrofSpeeds;
 	}
 
 	/**
@@ -53,16 +71,21 @@ public class Path  {
 	 * is discarded.
 	 */
 	public void setSpeed(double speed) {
-		this.speeds = new ArrayList<Double>(1);
-		speeds.add(speed);
+		this.speeds[0] = speed;
+		this.nrofSpeeds = 1;
 	}
 
 	/**
-	 * Returns a reference to the coordinates of this path
+	 * Returns the coordinates of this path. The coordinates are copies;
+	 * changing them doesn't change the path.
 	 * @return coordinates of the path
 	 */
 	public List<Coord> getCoords() {
-		return this.coords;
+		List<Coord> coords = new ArrayList<Coord>(this.nrofWaypoints);
+		for (int i=0; i<this.nrofWaypoints; i++) {
+			coords.add(new Coord(xs[i], ys[i]));
+		}
+		return coords;
 	}
 
 	/**
@@ -70,9 +93,18 @@ public class Path  {
 	 * @param wp The waypoint to add
 	 */
 	public void addWaypoint(Coord wp) {
-		assert this.speeds.size() <= 1 : "This method should be used only for" +
+		addWaypoint(wp.getX(), wp.getY());
+	}
+
+	/**
+	 * Adds a new waypoint to the end of the path.
+	 * @param x The x coordinate of the waypoint
+	 * @param y The y coordinate of the waypoint
+	 */
+	public void addWaypoint(double x, double y) {
+		assert this.nrofSpeeds <= 1 : "This method should be used only for" +
 			" paths with constant speed";
-		this.coords.add(wp);
+		add(x, y);
 	}
 
 	/**
@@ -81,17 +113,69 @@ public class Path  {
 	 * @param speed The speed towards that waypoint
 	 */
 	public void addWaypoint(Coord wp, double speed) {
-		this.coords.add(wp);
-		this.speeds.add(speed);
+		addWaypoint(wp.getX(), wp.getY(), speed);
+	}
+
+	/**
+	 * Adds a new waypoint with a speed towards that waypoint
+	 * @param x The x coordinate of the waypoint
+	 * @param y The y coordinate of the waypoint
+	 * @param speed The speed towards that waypoint
+	 */
+	public void addWaypoint(double x, double y, double speed) {
+		add(x, y);
+		if (this.nrofSpeeds == this.speeds.length) {
+			this.speeds = Arrays.copyOf(this.speeds, 2 * this.nrofSpeeds);
+		}
+		this.speeds[this.nrofSpeeds++] = speed;
+	}
+
+	private void add(double x, double y) {
+		if (this.nrofWaypoints == this.xs.length) {
+			this.xs = Arrays.copyOf(this.xs, 2 * this.nrofWaypoints);
+			this.ys = Arrays.copyOf(this.ys, 2 * this.nrofWaypoints);
+		}
+		this.xs[this.nrofWaypoints] = x;
+		this.ys[this.nrofWaypoints] = y;
+		this.nrofWaypoints++;
 	}
 
 	/**
 	 * Returns the next waypoint on this path
-	 * @return the next waypoint
+	 * @return the next waypoint (a new Coord)
+	 * @see #moveToNextWaypoint()
 	 */
 	public Coord getNextWaypoint() {
+		moveToNextWaypoint();
+		return new Coord(getCurrentX(), getCurrentY());
+	}
+
+	/**
+	 * Moves to the next waypoint on this path. The coordinates of the
+	 * waypoint are returned by {@link #getCurrentX()} and
+	 * {@link #getCurrentY()} and the speed towards it by {@link #getSpeed()}.
+	 */
+	public void moveToNextWaypoint() {
 		assert hasNext() : "Path didn't have " + (nextWpIndex+1) + ". waypoint";
-		return coords.get(nextWpIndex++);
+		nextWpIndex++;
+	}
+
+	/**
+	 * Returns the x coordinate of the waypoint that was moved to last
+	 * @return the x coordinate of the current waypoint
+	 */
+	public double getCurrentX() {
+		assert nextWpIndex != 0 : "No waypoint asked";
+		return xs[nextWpIndex-1];
+	}
+
+	/**
+	 * Returns the y coordinate of the waypoint that was moved to last
+	 * @return the y coordinate of the current waypoint
+	 */
+	public double getCurrentY() {
+		assert nextWpIndex != 0 : "No waypoint asked";
+		return ys[nextWpIndex-1];
 	}
 
 	/**
@@ -99,7 +183,33 @@ public class Path  {
 	 * @return true if the path has more waypoints, false if not
 	 */
 	public boolean hasNext() {
-		return nextWpIndex < this.coords.size();
+		return nextWpIndex < this.nrofWaypoints;
+	}
+
+	/**
+	 * Returns the number of waypoints in this path
+	 * @return the number of waypoints in this path
+	 */
+	public int getNrofWaypoints() {
+		return this.nrofWaypoints;
+	}
+
+	/**
+	 * Returns the x coordinate of a waypoint
+	 * @param index Index of the waypoint
+	 * @return the x coordinate of the waypoint
+	 */
+	public double getX(int index) {
+		return this.xs[index];
+	}
+
+	/**
+	 * Returns the y coordinate of a waypoint
+	 * @param index Index of the waypoint
+	 * @return the y coordinate of the waypoint
+	 */
+	public double getY(int index) {
+		return this.ys[index];
 	}
 
 	/**
@@ -108,14 +218,14 @@ public class Path  {
 	 * @return the speed towards the next waypoint
 	 */
 	public double getSpeed() {
-		assert speeds.size() != 0 : "No speed set";
+		assert nrofSpeeds != 0 : "No speed set";
 		assert nextWpIndex != 0 : "No waypoint asked";
 
-		if (speeds.size() == 1) {
-			return speeds.get(0);
+		if (nrofSpeeds == 1) {
+			return speeds[0];
 		}
 		else {
-			return speeds.get(nextWpIndex-1);
+			return speeds[nextWpIndex-1];
 		}
 	}
 
@@ -125,17 +235,25 @@ public class Path  {
 	 */
 	public String toString() {
 		String s ="";
-		for (int i=0, n=coords.size(); i<n; i++) {
-			Coord c = coords.get(i);
+		for (int i=0, n=nrofWaypoints; i<n; i++) {
+			Coord c = new Coord(xs[i], ys[i]);
 			s+= "->" + c;
-			if (speeds.size() > 1) {
-				s += String.format("@%.2f ",speeds.get(i));
+			if (nrofSpeeds > 1) {
+				s += String.format("@%.2f ",speeds[i]);
 			}
 		}
 		return s;
 	}
 
+	/**
+	 * Returns the speeds of the path legs (or one constant speed)
+	 * @return the speeds in a new list
+	 */
 	public List<Double> getSpeeds() {
-		return this.speeds;
+		List<Double> list = new ArrayList<Double>(this.nrofSpeeds);
+		for (int i=0; i<this.nrofSpeeds; i++) {
+			list.add(this.speeds[i]);
+		}
+		return list;
 	}
 }
@@ -38,7 +38,7 @@ extends MovementModel {
     public Path getPath() {
         Path p;
         p = new Path( super.generateSpeed() );
-        p.addWaypoint( this.lastWaypoint.clone() );
+        p.addWaypoint( this.lastWaypoint );
         Coord next = this.getRandomWaypoint( this.lastWaypoint.getX(),
                                              this.lastWaypoint.getY() );
         p.addWaypoint( next );
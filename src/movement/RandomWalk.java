@@ -49,7 +49,7 @@ public class RandomWalk extends MovementModel implements SwitchableMovement {
 	public Path getPath() {
 		Path p;
 		p = new Path(generateSpeed());
-		p.addWaypoint(lastWaypoint.clone());
+		p.addWaypoint(lastWaypoint);
 		double maxX = getMaxX();
 		double maxY = getMaxY();
 
@@ -41,7 +41,7 @@ public class RandomWaypoint extends MovementModel {
 	public Path getPath() {
 		Path p;
 		p = new Path(generateSpeed());
-		p.addWaypoint(lastWaypoint.clone());
+		p.addWaypoint(lastWaypoint);
 		Coord c = lastWaypoint;
 
 		for (int i=0; i<PATH_LENGTH; i++) {
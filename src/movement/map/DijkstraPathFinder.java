@@ -4,35 +4,79 @@
  */
 package movement.map;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
+
+import core.DTNSim;
+import core.Settings;
+import core.World;
 
 /**
- * Implementation of the Dijkstra's shortest path algorithm.
+ * Implementation of the Dijkstra's shortest path algorithm. The search runs
+ * on the compiled {@link MapGraph} of the map nodes and keeps its state in
+ * primitive arrays that are reused between the searches, so a search
+ * doesn't create any objects except the returned path. Optionally, the
+ * search can be an A* search that uses the euclidean distance to the
+ * destination as the heuristic (see {@link #A_STAR_PATHS_S}), and the found
+ * paths can be cached (see {@link RouteCache}).
  */
 public class DijkstraPathFinder {
+	/**
+	 * A* path finding -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Boolean. If true,
+	 * shortest paths are searched with A* (euclidean distance to the
+	 * destination as the heuristic), which visits less nodes than Dijkstra's
+	 * algorithm. The paths are equally short, but if there are many shortest
+	 * paths, a different one may be selected. Default is false.
+	 */
+	public static final String A_STAR_PATHS_S = "aStarPaths";
+
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distances;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<MapNode> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<MapNode> unvisited;
-	/** Map of previous nodes on the shortest path(s) */
-	private Map<MapNode, MapNode> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
 
+	/** is A* used instead of Dijkstra */
+	private static boolean aStar;
+
+	/** The map node types that are OK for paths or null if all are OK */
 	private int [] okMapNodes;
+	/** bit mask of the OK map node types */
+	private int okTypeMask;
+
+	/** the graph the search state arrays are for */
+	private MapGraph graph;
+	/** distances of the nodes from the source node */
+	private double[] distances;
+	/** keys of the nodes in the queue (distance + heuristic) */
+	private double[] keys;
+	/** previous nodes on the shortest path(s) */
+	private int[] prevNodes;
+	/** search number when the node was last reached (other values mean
+	 * that the node hasn't been reached in the current search) */
+	private int[] reached;
+	/** search number when the node was last visited */
+	private int[] visited;
+	/** number of the current search */
+	private int searchNr;
+	/** binary heap of unvisited nodes discovered so far */
+	private int[] unvisited;
+	/** positions of the nodes in the heap */
+	private int[] heapPos;
+	/** number of nodes in the heap */
+	private int heapSize;
+
+	static {
+		DTNSim.registerForReset(DijkstraPathFinder.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Resets the static fields of the class
+	 */
+	public static void reset() {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		aStar = s.getBoolean(A_STAR_PATHS_S, false);
+	}
 
 	/**
 	 * Constructor.
@@ -42,25 +86,46 @@ public class DijkstraPathFinder {
 	public DijkstraPathFinder(int [] okMapNodes) {
 		super();
 		this.okMapNodes = okMapNodes;
+		this.okTypeMask = 0;
+		if (okMapNodes != null) {
+			for (int type : okMapNodes) {
+				this.okTypeMask |= 1 << type;
+			}
+		}
 	}
 
 	/**
 	 * Initializes a new search with a source node
-	 * @param node The path's source node
+	 * @param g The graph to search
+	 * @param source ID of the path's source node
 	 */
-	private void initWith(MapNode node) {
-		assert (okMapNodes != null ? node.isType(okMapNodes) : true);
+	private void initWith(MapGraph g, int source) {
+		assert (okMapNodes != null ? g.getNode(source).isType(okMapNodes) :
+			true);
+
+		if (g != this.graph) {
+			int size = g.size();
+			this.graph = g;
+			this.distances = new double[size];
+			this.keys = new double[size];
+			this.prevNodes = new int[size];
+			this.reached = new int[size];
+			this.visited = new int[size];
+			this.unvisited = new int[size];
+			this.heapPos = new int[size];
+			this.searchNr = 0;
+		}
 
-		// create needed data structures
-		this.unvisited = new PriorityQueue<MapNode>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<MapNode>();
-		this.prevNodes = new HashMap<MapNode, MapNode>();
-		this.distances = new DistanceMap();
+		this.searchNr++;
+		if (this.searchNr == Integer.MAX_VALUE) { // start the numbers over
+			Arrays.fill(this.reached, 0);
+			Arrays.fill(this.visited, 0);
+			this.searchNr = 1;
+		}
+		this.heapSize = 0;
 
 		// set distance to source 0 and initialize unvisited queue
-		this.distances.put(node, 0);
-		this.unvisited.add(node);
+		setDistance(source, 0, 0);
 	}
 
 	/**
@@ -71,158 +136,202 @@ public class DijkstraPathFinder {
 	 * a list of MapNodes or an empty list if such path is not available
 	 */
 	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
-		List<MapNode> path = new LinkedList<MapNode>();
-
 		if (from.compareTo(to) == 0) { // source and destination are the same
+			List<MapNode> path = new ArrayList<MapNode>(1);
 			path.add(from); // return a list containing only source node
 			return path;
 		}
 
-		initWith(from);
-		MapNode node = null;
+		MapGraph g = MapGraph.getGraph(from);
+		int source = g.indexOf(from);
+		int dest = g.indexOf(to);
+		if (dest == -1) {
+			return new ArrayList<MapNode>(0); // not reachable from source
+		}
 
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (node == to) {
-				break; // we found the destination -> no need to search further
+		RouteCache cache = g.getRouteCache(okMapNodes != null ?
+				okTypeMask : -1);
+		int[] ids = (cache != null ? cache.get(source, dest) : null);
+		if (ids == null) {
+			ids = search(g, source, dest);
+			if (cache != null) {
+				cache.put(source, dest, ids);
 			}
+		}
 
-			visited.add(node); // mark the node as visited
-			relax(node); // add/update neighbor nodes' distances
+		List<MapNode> path = new ArrayList<MapNode>(ids.length);
+		for (int id : ids) {
+			path.add(g.getNode(id));
 		}
+		return path;
+	}
+
+	/**
+	 * Searches a shortest path between two nodes of a graph
+	 * @param g The graph
+	 * @param source ID of the source node
+	 * @param dest ID of the destination node
+	 * @return IDs of the nodes on the path or an empty array if such path is
+	 * not available
+	 */
+	private int[] search(MapGraph g, int source, int dest) {
+		initWith(g, source);
 
-		// now we either have the path or such path wasn't available
-		if (node == to) { // found a path
-			path.add(0,to);
-			MapNode prev = prevNodes.get(to);
-			while (prev != from) {
-				path.add(0, prev);	// always put previous node to beginning
-				prev = prevNodes.get(prev);
+		int node = -1;
+		// always take the node with shortest distance
+		while (heapSize > 0) {
+			node = poll();
+			if (node == dest) {
+				break; // we found the destination -> no need to search further
 			}
 
-			path.add(0, from); // finally put the source node to first node
+			visited[node] = searchNr; // mark the node as visited
+			relax(node, dest); // add/update neighbor nodes' distances
 		}
 
-		return path;
+		if (node != dest) {
+			return new int[0]; // such path wasn't available
+		}
+
+		int nrofNodes = 1;
+		for (int n = dest; n != source; n = prevNodes[n]) {
+			nrofNodes++;
+		}
+		int[] ids = new int[nrofNodes];
+		for (int i = nrofNodes - 1, n = dest; i >= 0; i--) {
+			ids[i] = n;
+			n = prevNodes[n];
+		}
+		return ids;
 	}
 
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
+	 * @param dest The destination node of the search (for the heuristic)
 	 */
-	private void relax(MapNode node) {
-		double nodeDist = distances.get(node);
-		for (MapNode n : node.getNeighbors()) {
-			if (visited.contains(n)) {
+	private void relax(int node, int dest) {
+		MapGraph g = this.graph;
+		double nodeDist = distances[node];
+		for (int e = g.edgeStart[node], end = g.edgeStart[node + 1];
+				e < end; e++) {
+			int n = g.edgeTo[e];
+			if (visited[n] == searchNr) {
 				continue; // skip visited nodes
 			}
 
-			if (okMapNodes != null && !n.isType(okMapNodes)) {
+			if (okMapNodes != null && (g.types[n] & okTypeMask) == 0) {
 				continue; // skip nodes that are not OK
 			}
 
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
+			double nDist = nodeDist + g.edgeLength[e];
 
-			if (distances.get(n) > nDist) { // stored distance > found dist?
-				prevNodes.put(n, node);
-				setDistance(n, nDist);
+			if (getDistance(n) > nDist) { // stored distance > found dist?
+				prevNodes[n] = node;
+				setDistance(n, nDist, (aStar ? estimate(n, dest) : 0));
 			}
 		}
 	}
 
 	/**
-	 * Sets the distance from source node to a node
+	 * Returns the distance of a node from the source node
+	 * @param n The node
+	 * @return The distance or {@link #INFINITY} if the node hasn't been
+	 * reached yet
+	 */
+	private double getDistance(int n) {
+		return (reached[n] == searchNr ? distances[n] : INFINITY);
+	}
+
+	/**
+	 * Sets the distance from source node to a node and adds the node to the
+	 * queue, or moves it to its new place in the queue
 	 * @param n The node whose distance is set
 	 * @param distance The distance of the node from the source node
+	 * @param estimate The estimated distance from the node to the
+	 * destination
 	 */
-	private void setDistance(MapNode n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distances.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private void setDistance(int n, double distance, double estimate) {
+		distances[n] = distance;
+		keys[n] = distance + estimate;
+		if (reached[n] != searchNr) {
+			reached[n] = searchNr;
+			heapPos[n] = heapSize;
+			unvisited[heapSize++] = n;
+		}
+		siftUp(heapPos[n]); // the key can only decrease
 	}
 
 	/**
-	 * Returns the (euclidean) distance between the two map nodes
-	 * @param from The first node
-	 * @param to The second node
-	 * @return Euclidean distance between the two map nodes
+	 * Returns the euclidean distance between two nodes (the A* heuristic)
 	 */
-	private double getDistance(MapNode from, MapNode to) {
-		return from.getLocation().distance(to.getLocation());
+	private double estimate(int n, int dest) {
+		double dx = graph.xs[n] - graph.xs[dest];
+		double dy = graph.ys[n] - graph.ys[dest];
+		return Math.sqrt(dx*dx + dy*dy);
 	}
 
 	/**
-	 * Comparator that compares two map nodes by their distance from
-	 * the source node.
+	 * Removes and returns the node with the smallest key from the queue
 	 */
-	private class DistanceComparator implements Comparator<MapNode> {
-
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(MapNode node1, MapNode node2) {
-			double dist1 = distances.get(node1);
-			double dist2 = distances.get(node2);
-
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
-			}
+	private int poll() {
+		int first = unvisited[0];
+		heapSize--;
+		if (heapSize > 0) {
+			unvisited[0] = unvisited[heapSize];
+			heapPos[unvisited[0]] = 0;
+			siftDown(0);
 		}
+		return first;
 	}
 
 	/**
-	 * Simple Map implementation for storing distances.
+	 * Returns true if node n1 should be taken from the queue before n2: the
+	 * one with the smaller key, or with equal keys, the one that is first in
+	 * the coordinate order
 	 */
-	private class DistanceMap {
-		private HashMap<MapNode, Double> map;
-
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<MapNode, Double>();
-		}
-
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link DijkstraPathFinder#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(MapNode node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
-			}
+	private boolean isBefore(int n1, int n2) {
+		if (keys[n1] != keys[n2]) {
+			return keys[n1] < keys[n2];
 		}
+		return graph.ranks[n1] < graph.ranks[n2];
+	}
 
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(MapNode node, double distance) {
-			map.put(node, distance);
+	private void siftUp(int pos) {
+		int n = unvisited[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!isBefore(n, unvisited[parent])) {
+				break;
+			}
+			unvisited[pos] = unvisited[parent];
+			heapPos[unvisited[pos]] = pos;
+			pos = parent;
 		}
+		unvisited[pos] = n;
+		heapPos[n] = pos;
+	}
 
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
+	private void siftDown(int pos) {
+		int n = unvisited[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize &&
+					isBefore(unvisited[child + 1], unvisited[child])) {
+				child++;
+			}
+			if (!isBefore(unvisited[child], n)) {
+				break;
+			}
+			unvisited[pos] = unvisited[child];
+			heapPos[unvisited[pos]] = pos;
+			pos = child;
 		}
+		unvisited[pos] = n;
+		heapPos[n] = pos;
 	}
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact representation of the graph formed by map nodes and their
+ * neighbors. The nodes are identified by integer IDs (0 ... size()-1) and
+ * the neighbors of every node are stored in compressed sparse row form
+ * (the neighbors of node i are <CODE>edgeTo[edgeStart[i] ...
+ * edgeStart[i+1]-1]</CODE>, in the same order as in the map node's neighbor
+ * list), together with the lengths of the edges. Path finders use the arrays
+ * directly, so searches don't need any per-node objects.
+ * <P>
+ * A graph is compiled on demand from the map nodes reachable from a node
+ * (see {@link #getGraph(MapNode)}) and it is reused until the nodes
+ * change: adding a neighbor to a node, or translating or mirroring a
+ * {@link SimMap}, invalidates the graph and a new one is compiled when it is
+ * needed the next time.
+ * </P>
+ */
+public class MapGraph {
+	/** the map nodes, indexed by node ID */
+	private MapNode[] nodes;
+	/** x and y coordinates of the nodes */
+	final double[] xs;
+	final double[] ys;
+	/** type bit masks of the nodes (see {@link MapNode#getTypeMask()}) */
+	final int[] types;
+	/** ranks of the nodes in the coordinate order (see
+	 * {@link core.Coord#compareTo(core.Coord)}) */
+	final int[] ranks;
+	/** index of the first edge of each node (and the number of edges as the
+	 * last element) */
+	final int[] edgeStart;
+	/** destination node IDs of the edges */
+	final int[] edgeTo;
+	/** lengths of the edges */
+	final double[] edgeLength;
+	/** is the graph still up to date with the map nodes */
+	private boolean valid;
+	/** caches of the shortest paths, keyed by the OK map node types */
+	private Map<Integer, RouteCache> routeCaches;
+
+	/**
+	 * Returns the graph that contains the given node and all the nodes that
+	 * are reachable from it. If there is no up to date graph for the node, a
+	 * new one is compiled.
+	 * @param node The node
+	 * @return The graph of the node
+	 */
+	public static MapGraph getGraph(MapNode node) {
+		MapGraph graph = node.getGraph();
+		if (graph == null || !graph.valid) {
+			graph = new MapGraph(node);
+		}
+		return graph;
+	}
+
+	/**
+	 * Compiles a graph from all the nodes reachable from a node. Any other
+	 * up to date graphs that the reachable nodes belong to are merged to the
+	 * new graph (and invalidated), so every node belongs to one graph only.
+	 * @param seed The node where to start
+	 */
+	private MapGraph(MapNode seed) {
+		this.valid = true;
+		this.routeCaches = new HashMap<Integer, RouteCache>();
+		List<MapNode> list = new ArrayList<MapNode>();
+		add(seed, list);
+
+		for (int i=0; i<list.size(); i++) {
+			for (MapNode n : list.get(i).getNeighbors()) {
+				if (n.getGraph() == this) {
+					continue; // already added
+				}
+				MapGraph other = n.getGraph();
+				if (other != null && other.valid) {
+					/* the old graph is closed under neighbors; take it all */
+					for (MapNode m : other.nodes) {
+						add(m, list);
+					}
+					other.invalidate();
+				}
+				else {
+					add(n, list);
+				}
+			}
+		}
+
+		int size = list.size();
+		this.nodes = list.toArray(new MapNode[size]);
+		this.xs = new double[size];
+		this.ys = new double[size];
+		this.types = new int[size];
+		this.edgeStart = new int[size + 1];
+
+		int nrofEdges = 0;
+		for (int i=0; i<size; i++) {
+			MapNode n = nodes[i];
+			xs[i] = n.getLocation().getX();
+			ys[i] = n.getLocation().getY();
+			types[i] = n.getTypeMask();
+			edgeStart[i] = nrofEdges;
+			nrofEdges += n.getNeighbors().size();
+		}
+		edgeStart[size] = nrofEdges;
+
+		this.edgeTo = new int[nrofEdges];
+		this.edgeLength = new double[nrofEdges];
+		for (int i=0, e=0; i<size; i++) {
+			MapNode n = nodes[i];
+			for (MapNode neighbor : n.getNeighbors()) {
+				edgeTo[e] = neighbor.getGraphIndex();
+				edgeLength[e] = n.getLocation().distance(neighbor.getLocation());
+				e++;
+			}
+		}
+
+		Integer[] order = new Integer[size];
+		for (int i=0; i<size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return nodes[i1].compareTo(nodes[i2]);
+			}
+		});
+		this.ranks = new int[size];
+		for (int i=0; i<size; i++) {
+			ranks[order[i]] = i;
+		}
+	}
+
+	/**
+	 * Adds a node to the graph under construction unless it is already there
+	 * @param n The node to add
+	 * @param list The nodes added so far
+	 */
+	private void add(MapNode n, List<MapNode> list) {
+		if (n.getGraph() != this) {
+			n.setGraph(this, list.size());
+			list.add(n);
+		}
+	}
+
+	/**
+	 * Returns the number of nodes in the graph
+	 * @return the number of nodes in the graph
+	 */
+	public int size() {
+		return this.nodes.length;
+	}
+
+	/**
+	 * Returns the map node with the given ID
+	 * @param id The ID of the node
+	 * @return The map node
+	 */
+	public MapNode getNode(int id) {
+		return this.nodes[id];
+	}
+
+	/**
+	 * Returns the ID of a map node in this graph
+	 * @param node The map node
+	 * @return The ID of the node or -1 if the node is not in this graph
+	 */
+	public int indexOf(MapNode node) {
+		return (node.getGraph() == this ? node.getGraphIndex() : -1);
+	}
+
+	/**
+	 * Returns the cache of shortest paths that go through nodes of the given
+	 * types
+	 * @param typeMask Bit mask of the OK map node types, or -1 if all nodes
+	 * are OK
+	 * @return The route cache or null if route caching is disabled
+	 * @see RouteCache#ROUTE_CACHE_SIZE_S
+	 */
+	public synchronized RouteCache getRouteCache(int typeMask) {
+		if (!RouteCache.isEnabled()) {
+			return null;
+		}
+
+		RouteCache cache = this.routeCaches.get(typeMask);
+		if (cache == null) {
+			cache = new RouteCache();
+			this.routeCaches.put(typeMask, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns true if the graph is up to date with the map nodes
+	 * @return true if the graph is up to date with the map nodes
+	 */
+	public boolean isValid() {
+		return this.valid;
+	}
+
+	/**
+	 * Marks the graph outdated (e.g., after the map nodes have changed)
+	 */
+	void invalidate() {
+		this.valid = false;
+	}
+}
@@ -4,8 +4,8 @@
  */
 package movement.map;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
 
 import core.Coord;
 import core.SettingsError;
@@ -22,9 +22,13 @@ public class MapNode implements Comparable<MapNode> {
 
 
 	private Coord location;
-	private Vector<MapNode> neighbors;
+	private List<MapNode> neighbors;
 	// bit mask of map node's types or 0 if no type's are defined
 	private int type;
+	/** the compiled graph this node belongs to (or null) */
+	private MapGraph graph;
+	/** ID of this node in the graph */
+	private int graphIndex;
 
 	/**
 	 * Constructor. Creates a map node to a location.
@@ -32,7 +36,7 @@ public class MapNode implements Comparable<MapNode> {
 	 */
 	public MapNode(Coord location) {
 		this.location = location;
-		this.neighbors = new Vector<MapNode>();
+		this.neighbors = new ArrayList<MapNode>();
 		type = 0;
 	}
 
@@ -77,6 +81,15 @@ public class MapNode implements Comparable<MapNode> {
 		return false;
 	}
 
+	/**
+	 * Returns the bit mask of this node's types (bit n is set if this node is
+	 * of type n) or 0 if the node doesn't have a type
+	 * @return the bit mask of this node's types
+	 */
+	int getTypeMask() {
+		return this.type;
+	}
+
 	/**
 	 * Converts type integer to a bit mask for setting & checking type
 	 * @param type The type to convert
@@ -108,6 +121,43 @@ public class MapNode implements Comparable<MapNode> {
 	private void addToList(MapNode node) {
 		if (!this.neighbors.contains(node) && node != this) {
 			this.neighbors.add(node);
+			invalidateGraph();
+		}
+	}
+
+	/**
+	 * Returns the compiled graph this node belongs to
+	 * @return the graph or null if the node isn't in any graph
+	 * @see MapGraph#getGraph(MapNode)
+	 */
+	MapGraph getGraph() {
+		return this.graph;
+	}
+
+	/**
+	 * Returns the ID of this node in its graph
+	 * @return the ID of this node in its graph
+	 */
+	int getGraphIndex() {
+		return this.graphIndex;
+	}
+
+	/**
+	 * Sets the compiled graph this node belongs to
+	 * @param graph The graph
+	 * @param index ID of this node in the graph
+	 */
+	void setGraph(MapGraph graph, int index) {
+		this.graph = graph;
+		this.graphIndex = index;
+	}
+
+	/**
+	 * Marks the graph of this node outdated (if the node is in a graph)
+	 */
+	void invalidateGraph() {
+		if (this.graph != null) {
+			this.graph.invalidate();
 		}
 	}
 
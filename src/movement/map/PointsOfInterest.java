@@ -9,8 +9,10 @@ import input.WKTReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import util.Tuple;
@@ -123,6 +125,8 @@ public class PointsOfInterest {
 					"divisable by 2 in " + fqSetting);
 		}
 
+		Map<Integer, List<Coord>> prefetched = prefetchPois(groupPois);
+
 		// read POIs from the requested indexes and assign defined probabilites
 		for (int i=0; i<groupPois.length-1; i+=2) {
 			int index = (int)groupPois[i];
@@ -139,7 +143,8 @@ public class PointsOfInterest {
 						index + " in " + fqSetting);
 			}
 
-			List<MapNode> nodes = readPoisOf(index, offset);
+			List<MapNode> nodes = readPoisOf(index, offset,
+					prefetched.get(index));
 			if (poiLists.size() <= index) {
 				// list too small -> fill with nulls up to index
 				for (int j = poiLists.size(); j <= index; j++) {
@@ -163,25 +168,71 @@ public class PointsOfInterest {
 
 	}
 
+	/**
+	 * Reads the POI files of the selected POI groups in parallel if parallel
+	 * loading is enabled (see {@link WKTReader#PARALLEL_LOADING_S})
+	 * @param groupPois The POI group indexes and probabilities
+	 * @return The coordinates read from the POI files, by the POI group
+	 * index (empty if the files weren't read in parallel)
+	 */
+	private Map<Integer, List<Coord>> prefetchPois(double[] groupPois) {
+		Map<Integer, List<Coord>> prefetched =
+			new HashMap<Integer, List<Coord>>();
+		int nrofThreads = WKTReader.getNrofLoadingThreads();
+		if (nrofThreads <= 1 || groupPois.length < 4) {
+			return prefetched;
+		}
+
+		Settings fileSettings = new Settings(POI_NS);
+		List<Integer> indexes = new ArrayList<Integer>();
+		List<File> files = new ArrayList<File>();
+		for (int i=0; i<groupPois.length-1; i+=2) {
+			int index = (int)groupPois[i];
+			if (fileSettings.contains(POI_FILE_S + index)) {
+				indexes.add(index);
+				files.add(new File(fileSettings.getSetting(POI_FILE_S +
+						index)));
+			}
+		}
+
+		try {
+			List<List<Coord>> coords = WKTReader.readPoints(files,
+					nrofThreads);
+			for (int i=0; i<indexes.size(); i++) {
+				prefetched.put(indexes.get(i), coords.get(i));
+			}
+		} catch (IOException ioe) {
+			/* the files are read again one by one, which reports the error
+			 * for the right file */
+			prefetched.clear();
+		}
+		return prefetched;
+	}
+
 	/**
 	 * Reads POIs from a file <CODE>{@value POI_FILE_S} + index</CODE> defined
 	 * in Settings' namespace {@value POI_NS}.
 	 * @param index The index of the POI file
 	 * @param offset Offset of map data
+	 * @param prefetched Coordinates already read from the file or null if
+	 * the file should be read
 	 * @return A list of MapNodes read from the POI file
 	 * @throws Settings error if there was an error while reading the file
 	 * or some coordinate in POI-file didn't match any MapNode in the SimMap
 	 */
-	private List<MapNode> readPoisOf(int index, Coord offset) {
+	private List<MapNode> readPoisOf(int index, Coord offset,
+			List<Coord> prefetched) {
 		List<MapNode> nodes = new ArrayList<MapNode>();
 		Settings fileSettings = new Settings(POI_NS);
 		WKTReader reader = new WKTReader();
 
 		File poiFile = null;
-		List<Coord> coords = null;
+		List<Coord> coords = prefetched;
 		try {
 			poiFile = new File(fileSettings.getSetting(POI_FILE_S + index));
-			coords = reader.readPoints(poiFile);
+			if (coords == null) {
+				coords = reader.readPoints(poiFile);
+			}
 		}
 		catch (IOException ioe){
 			throw new SettingsError("Couldn't read POI-data from file '" +
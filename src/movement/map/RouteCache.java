@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import core.DTNSim;
+import core.Settings;
+import core.World;
+
+/**
+ * Cache of the shortest paths found in a {@link MapGraph}. The paths are
+ * stored as arrays of node IDs, keyed by the source and destination node
+ * IDs. When the cache is full, the least recently used path is removed.
+ * The caches are shared by all the path finders (i.e., all the movement
+ * models) that use the same map and the same map node types. The caches are
+ * thread safe.
+ * <P>
+ * The total numbers of cache hits and misses are counted for
+ * {@link report.RouteCacheReport}.
+ * </P>
+ */
+public class RouteCache {
+	/**
+	 * Route cache size -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Integer. How many
+	 * paths are cached for each map and set of map node types. Value 0
+	 * disables the caching. Default is 0.
+	 */
+	public static final String ROUTE_CACHE_SIZE_S = "routeCacheSize";
+
+	/** maximum number of paths in a cache */
+	private static int maxSize;
+	/** total number of cache hits */
+	private static long nrofHits;
+	/** total number of cache misses */
+	private static long nrofMisses;
+
+	/** the paths, in the least recently used first order */
+	private Map<Long, int[]> paths;
+
+	static {
+		DTNSim.registerForReset(RouteCache.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Resets the static fields of the class
+	 */
+	public static synchronized void reset() {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		maxSize = s.getInt(ROUTE_CACHE_SIZE_S, 0);
+		nrofHits = 0;
+		nrofMisses = 0;
+	}
+
+	/**
+	 * Returns true if the paths should be cached
+	 * @return true if the paths should be cached
+	 */
+	public static boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Returns the total number of cache hits
+	 * @return the total number of cache hits
+	 */
+	public static synchronized long getNrofHits() {
+		return nrofHits;
+	}
+
+	/**
+	 * Returns the total number of cache misses
+	 * @return the total number of cache misses
+	 */
+	public static synchronized long getNrofMisses() {
+		return nrofMisses;
+	}
+
+	/**
+	 * Constructor. Creates an empty cache.
+	 */
+	@SuppressWarnings("serial")
+	public RouteCache() {
+		final int size = maxSize;
+		this.paths = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, int[]> e) {
+				return size() > size;
+			}
+		};
+	}
+
+	/**
+	 * Returns a cached path and counts the hit or miss
+	 * @param from ID of the source node
+	 * @param to ID of the destination node
+	 * @return The IDs of the path's nodes (an empty array if there is no
+	 * path) or null if the path is not in the cache
+	 */
+	public int[] get(int from, int to) {
+		int[] path;
+		synchronized (this) {
+			path = this.paths.get(key(from, to));
+		}
+
+		synchronized (RouteCache.class) {
+			if (path != null) {
+				nrofHits++;
+			}
+			else {
+				nrofMisses++;
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Puts a path to the cache
+	 * @param from ID of the source node
+	 * @param to ID of the destination node
+	 * @param path The IDs of the path's nodes (an empty array if there is no
+	 * path). The array must not be modified afterwards.
+	 */
+	public synchronized void put(int from, int to, int[] path) {
+		this.paths.put(key(from, to), path);
+	}
+
+	/**
+	 * Returns the number of paths in the cache
+	 * @return the number of paths in the cache
+	 */
+	public synchronized int size() {
+		return this.paths.size();
+	}
+
+	private static Long key(int from, int to) {
+		return ((long)from << 32) | (to & 0xFFFFFFFFL);
+	}
+}
@@ -37,6 +37,23 @@ public class SimMap implements Serializable {
 		setBounds();
 	}
 
+	/**
+	 * Constructor for maps whose nodes have already been processed (e.g.,
+	 * maps read from a compact map file).
+	 * @param nodes The map nodes in their original order
+	 * @param nodesMap The same nodes hashed by their locations
+	 * @param offset Offset of the translations made to the nodes
+	 * @param isMirrored Have the nodes been mirrored after reading
+	 */
+	public SimMap(List<MapNode> nodes, Map<Coord, MapNode> nodesMap,
+			Coord offset, boolean isMirrored) {
+		this.offset = offset;
+		this.nodes = new ArrayList<MapNode>(nodes);
+		this.nodesMap = nodesMap;
+		this.isMirrored = isMirrored;
+		setBounds();
+	}
+
 	/**
 	 * Returns all the map nodes in a list
 	 * @return all the map nodes in a list
@@ -104,6 +121,7 @@ public class SimMap implements Serializable {
 	public void translate(double dx, double dy) {
 		for (MapNode n : nodes) {
 			n.getLocation().translate(dx, dy);
+			n.invalidateGraph();
 		}
 
 		minBound.translate(dx, dy);
@@ -123,6 +141,7 @@ public class SimMap implements Serializable {
 		for (MapNode n : nodes) {
 			c=n.getLocation();
 			c.setLocation(c.getX(), -c.getY());
+			n.invalidateGraph();
 		}
 		setBounds();
 		this.isMirrored = true;
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package report;
+
+import movement.map.RouteCache;
+
+/**
+ * Reports the hits and misses of the shortest path caches of the map based
+ * movement models (see {@link RouteCache}).
+ */
+public class RouteCacheReport extends Report {
+
+	@Override
+	public void done() {
+		long hits = RouteCache.getNrofHits();
+		long misses = RouteCache.getNrofMisses();
+		double hitRate = 0;
+
+		if (hits + misses > 0) {
+			hitRate = (1.0 * hits) / (hits + misses);
+		}
+
+		write("Route cache stats for scenario " + getScenarioName());
+		write("cache enabled: " + RouteCache.isEnabled());
+		write("hits: " + hits);
+		write("misses: " + misses);
+		write("hit rate: " + format(hitRate));
+		super.done();
+	}
+}
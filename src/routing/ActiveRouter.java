@@ -5,11 +5,11 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
+import routing.util.DropQueue;
 import routing.util.EnergyModel;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
@@ -21,6 +21,7 @@ import core.Message;
 import core.MessageListener;
 import core.NetworkInterface;
 import core.Settings;
+import core.SettingsError;
 import core.SimClock;
 
 /**
@@ -37,14 +38,45 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * from message buffer */
 	protected boolean deleteDelivered;
 
+	/** Drop policy -setting id ({@value}). Defines which messages are
+	 * dropped first when there's no room in the buffer. Valid values are
+	 * <UL>
+	 * <LI/> FIFO : the message that was added to the buffer first
+	 * <LI/> OLDEST : the message with the oldest receive time (default)
+	 * <LI/> TTL : the message with the smallest TTL
+	 * </UL>
+	 * @see DropQueue */
+	public static final String DROP_POLICY_S = "dropPolicy";
+
+	/** Exact TTL expiry -setting id ({@value}). Boolean valued. If set to
+	 * true, messages are dropped as soon as their TTL has expired (on the
+	 * first update when no transfers are in progress). If false, the
+	 * expired messages are dropped every {@link #TTL_CHECK_INTERVAL}
+	 * seconds, and messages with less than a minute of TTL left count as
+	 * expired. Default=false. */
+	public static final String EXACT_TTL_EXPIRY_S = "exactTtlExpiry";
+
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
 	/** how often TTL check (discarding old messages) is performed */
 	public static int TTL_CHECK_INTERVAL = 60;
+	/** how much before the next TTL check a parked router is woken up (to
+	 * allow rounding errors in the wake-up time) */
+	private static final double TTL_WAKE_MARGIN = 1e-6;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
+	/** the buffered messages in the order they should be dropped */
+	protected DropQueue dropQueue;
+	/** the drop policy */
+	private int dropPolicy;
+	/** the buffered messages in the order they expire */
+	private DropQueue expiryQueue;
+	/** are messages dropped exactly when their TTL expires */
+	private boolean exactTtlExpiry;
+	/** handles of the messages being sent (see getNextMessageToRemove) */
+	private int[] sendingHandles;
 
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
@@ -60,6 +92,22 @@ public abstract class ActiveRouter extends MessageRouter {
 		this.policy = new MessageTransferAcceptPolicy(s);
 
 		this.deleteDelivered = s.getBoolean(DELETE_DELIVERED_S, false);
+		this.exactTtlExpiry = s.getBoolean(EXACT_TTL_EXPIRY_S, false);
+
+		this.dropPolicy = DropQueue.POLICY_OLDEST;
+		if (s.contains(DROP_POLICY_S)) {
+			String policy = s.getSetting(DROP_POLICY_S).trim().toUpperCase();
+			if (policy.equals(DropQueue.STR_POLICY_FIFO)) {
+				this.dropPolicy = DropQueue.POLICY_FIFO;
+			} else if (policy.equals(DropQueue.STR_POLICY_OLDEST)) {
+				this.dropPolicy = DropQueue.POLICY_OLDEST;
+			} else if (policy.equals(DropQueue.STR_POLICY_TTL)) {
+				this.dropPolicy = DropQueue.POLICY_TTL;
+			} else {
+				throw new SettingsError("Invalid value for " +
+						s.getFullPropertyName(DROP_POLICY_S));
+			}
+		}
 
 		if (s.contains(EnergyModel.INIT_ENERGY_S)) {
 			this.energy = new EnergyModel(s);
@@ -75,6 +123,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ActiveRouter(ActiveRouter r) {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.dropPolicy = r.dropPolicy;
+		this.exactTtlExpiry = r.exactTtlExpiry;
 		this.policy = r.policy;
 		this.energy = (r.energy != null ? r.energy.replicate() : null);
 	}
@@ -84,6 +134,35 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.dropQueue = createDropQueue();
+		this.expiryQueue = new DropQueue(DropQueue.POLICY_TTL);
+		this.sendingHandles = new int[1];
+	}
+
+	/**
+	 * Creates the queue that orders the buffered messages for dropping.
+	 * Subclasses that have their own drop order can override this.
+	 * @return A new, empty, drop queue
+	 */
+	protected DropQueue createDropQueue() {
+		return new DropQueue(this.dropPolicy);
+	}
+
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		this.dropQueue.add(m);
+		this.expiryQueue.add(m);
+		super.addToMessages(m, newMessage);
+	}
+
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			this.dropQueue.remove(m.getHandle());
+			this.expiryQueue.remove(m.getHandle());
+		}
+		return m;
 	}
 
 	/**
@@ -106,15 +185,16 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		DTNHost other = con.getOtherNode(getHost());
+		if (!hasMessagesFor(other)) {
+			return false;
+		}
+
 		/* do a copy to avoid concurrent modification exceptions
 		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp =
-			new ArrayList<Message>(this.getMessageCollection());
+		ArrayList<Message> temp = new ArrayList<Message>(getMessagesFor(other));
 		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
-				}
+			if (startTransfer(m, con) == RCV_OK) {
+				return true;
 			}
 		}
 		return false;
@@ -186,7 +266,12 @@ public abstract class ActiveRouter extends MessageRouter {
 			return MessageRouter.DENIED_POLICY;
 		}
 
-		retVal = con.startTransfer(getHost(), m);
+		if (con.getOtherNode(getHost()).getRouter().rejectsAsOld(m)) {
+			retVal = DENIED_OLD; // no need to offer (and replicate) it
+		}
+		else {
+			retVal = con.startTransfer(getHost(), m);
+		}
 		if (retVal == RCV_OK) { // started transfer
 			addToSendingConnections(con);
 		}
@@ -228,12 +313,32 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * does not fit into buffer
 	 */
 	protected int checkReceiving(Message m, DTNHost from) {
+		int retVal = checkAdmission(m, from);
+		if (retVal != RCV_OK) {
+			return retVal;
+		}
+
+		/* remove oldest messages but not the ones being sent */
+		if (!makeRoomForMessage(m.getSize())) {
+			return DENIED_NO_SPACE; // couldn't fit into buffer -> reject
+		}
+
+		return RCV_OK;
+	}
+
+	/**
+	 * Makes the checks of {@link #checkReceiving(Message, DTNHost)} that
+	 * don't change the state of the router. Subclasses that add such checks
+	 * should override this method instead of checkReceiving.
+	 */
+	@Override
+	public int checkAdmission(Message m, DTNHost from) {
 		if (isTransferring()) {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ||
-				super.isBlacklistedMessage(m.getId())) {
+		if ( hasMessage(m.getHandle()) || isDeliveredMessage(m) ||
+				super.isBlacklistedMessage(m.getHandle())) {
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 
@@ -250,14 +355,27 @@ public abstract class ActiveRouter extends MessageRouter {
 			return MessageRouter.DENIED_POLICY;
 		}
 
-		/* remove oldest messages but not the ones being sent */
-		if (!makeRoomForMessage(m.getSize())) {
-			return DENIED_NO_SPACE; // couldn't fit into buffer -> reject
+		if (m.getSize() > getBufferSize()) {
+			return DENIED_NO_SPACE; // would never fit into the buffer
 		}
 
 		return RCV_OK;
 	}
 
+	/**
+	 * Returns true if {@link #checkReceiving(Message, DTNHost)} would return
+	 * {@link #DENIED_OLD} for the message. Subclasses with checks that come
+	 * before the old message check must take them into account.
+	 */
+	@Override
+	public boolean rejectsAsOld(Message m) {
+		if (isTransferring()) {
+			return false; // would be TRY_LATER_BUSY
+		}
+		return hasMessage(m.getHandle()) || isDeliveredMessage(m) ||
+			super.isBlacklistedMessage(m.getHandle());
+	}
+
 	/**
 	 * Removes messages from the buffer (oldest first) until
 	 * there's enough space for the new message.
@@ -288,16 +406,46 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL has expired. The messages are found from the
+	 * expiry queue, so only the expired messages are looked at.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl();
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		Message m = this.expiryQueue.peek();
+		while (m != null && isExpired(m)) {
+			deleteMessage(m.getId(), true);
+			Message next = this.expiryQueue.peek();
+			if (next == m) {
+				break; // a subclass didn't remove the message
 			}
+			m = next;
+		}
+	}
+
+	/**
+	 * Returns true if the message's TTL has expired. With exact TTL expiry
+	 * the TTL expires at the message's expiry time; otherwise when the TTL
+	 * (in whole minutes) is zero.
+	 * @param m The message
+	 * @return true if the message's TTL has expired
+	 * @see #EXACT_TTL_EXPIRY_S
+	 */
+	private boolean isExpired(Message m) {
+		if (this.exactTtlExpiry) {
+			return m.getExpiryTime() <= SimClock.getTime();
+		}
+		return m.getTtl() <= 0;
+	}
+
+	/**
+	 * Returns true if it is time to drop the expired messages
+	 * @return true if it is time to drop the expired messages
+	 */
+	private boolean isTtlCheckDue() {
+		if (this.exactTtlExpiry) {
+			Message m = this.expiryQueue.peek();
+			return m != null && isExpired(m);
 		}
+		return SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL;
 	}
 
 	/**
@@ -313,33 +461,39 @@ public abstract class ActiveRouter extends MessageRouter {
 
 
 	/**
-	 * Returns the oldest (by receive time) message in the message buffer
-	 * (that is not being sent if excludeMsgBeingSent is true).
+	 * Returns the next message to drop from the message buffer according
+	 * to the drop policy (by default the oldest message by receive time)
+	 * that is not being sent if excludeMsgBeingSent is true.
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
-	 * being sent from the oldest message check (i.e. if oldest message is
-	 * being sent, the second oldest message is returned)
-	 * @return The oldest message or null if no message could be returned
-	 * (no messages in buffer or all messages in buffer are being sent and
-	 * exludeMsgBeingSent is true)
+	 * being sent from the check (i.e. if the next message to drop is
+	 * being sent, the one after it is returned)
+	 * @return The next message to drop or null if no message could be
+	 * returned (no messages in buffer or all messages in buffer are being
+	 * sent and exludeMsgBeingSent is true)
+	 * @see #DROP_POLICY_S
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; // skip the message(s) that router is sending
-			}
+		if (!excludeMsgBeingSent || this.sendingConnections.isEmpty()) {
+			return this.dropQueue.peek();
+		}
 
-			if (oldest == null ) {
-				oldest = m;
+		/* collect the handles of the message(s) that router is sending */
+		int nrofSending = 0;
+		for (int i=0, n=this.sendingConnections.size(); i<n; i++) {
+			Message m = this.sendingConnections.get(i).getMessage();
+			if (m == null) {
+				continue; // transmission is finalized
 			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
+			if (nrofSending == this.sendingHandles.length) {
+				int[] newHandles = new int[nrofSending * 2];
+				System.arraycopy(this.sendingHandles, 0, newHandles, 0,
+						nrofSending);
+				this.sendingHandles = newHandles;
 			}
+			this.sendingHandles[nrofSending++] = m.getHandle();
 		}
 
-		return oldest;
+		return this.dropQueue.peek(this.sendingHandles, nrofSending);
 	}
 
 	/**
@@ -355,13 +509,47 @@ public abstract class ActiveRouter extends MessageRouter {
 
 		List<Tuple<Message, Connection>> forTuples =
 			new ArrayList<Tuple<Message, Connection>>();
-		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
+		List<Connection> connections = getConnections();
+		int nrofCons = connections.size();
+		if (nrofCons == 1) {
+			Connection con = connections.get(0);
+			for (Message m : getMessagesFor(con.getOtherNode(getHost()))) {
+				forTuples.add(new Tuple<Message, Connection>(m,con));
+			}
+			return forTuples;
+		}
+
+		/* merge the destination lists (that are in the buffer order) so that
+		   the tuples are in the buffer order, and the tuples of the same
+		   message in the order of the connections */
+		List<List<Message>> lists = new ArrayList<List<Message>>(nrofCons);
+		int[] next = new int[nrofCons];
+		int[] nextIndex = new int[nrofCons]; /* buffer index of next msg */
+		for (int i=0; i<nrofCons; i++) {
+			List<Message> list =
+				getMessagesFor(connections.get(i).getOtherNode(getHost()));
+			lists.add(list);
+			nextIndex[i] = (list.isEmpty() ? Integer.MAX_VALUE :
+				getBufferIndex(list.get(0)));
+		}
+		while (true) {
+			int min = -1;
+			for (int i=0; i<nrofCons; i++) {
+				if (nextIndex[i] != Integer.MAX_VALUE &&
+						(min < 0 || nextIndex[i] < nextIndex[min])) {
+					min = i;
 				}
 			}
+			if (min < 0) {
+				break;
+			}
+
+			List<Message> list = lists.get(min);
+			forTuples.add(new Tuple<Message, Connection>(
+					list.get(next[min]), connections.get(min)));
+			next[min]++;
+			nextIndex[min] = (next[min] < list.size() ?
+				getBufferIndex(list.get(next[min])) : Integer.MAX_VALUE);
 		}
 
 		return forTuples;
@@ -441,8 +629,8 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	/**
 	 * Tries to send all messages that this router is carrying to all
-	 * connections this node has. Messages are ordered using the
-	 * {@link MessageRouter#sortByQueueMode(List)}. See
+	 * connections this node has. Messages are ordered by the queue mode
+	 * (see {@link MessageRouter#getSendQueue()}). See
 	 * {@link #tryMessagesToConnections(List, List)} for sending details.
 	 * @return The connections that started a transfer or null if no connection
 	 * accepted a message.
@@ -453,11 +641,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages =
-			new ArrayList<Message>(this.getMessageCollection());
-		this.sortByQueueMode(messages);
-
-		return tryMessagesToConnections(messages, connections);
+		return tryMessagesToConnections(getSendQueue(), connections);
 	}
 
 	/**
@@ -516,6 +700,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	protected void addToSendingConnections(Connection con) {
 		this.sendingConnections.add(con);
+		getHost().wakeUpRouter(); // the transfer must be finalized
 	}
 
 	/**
@@ -551,11 +736,22 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * @return True if the message is being sent false if not
 	 */
 	public boolean isSending(String msgId) {
+		return isSending(Message.lookupHandle(msgId));
+	}
+
+	/**
+	 * Returns true if this router is currently sending a message whose ID
+	 * has the given handle.
+	 * @param handle Handle of the message ID
+	 * @return True if the message is being sent false if not
+	 * @see Message#getHandle()
+	 */
+	public boolean isSending(int handle) {
 		for (Connection con : this.sendingConnections) {
 			if (con.getMessage() == null) {
 				continue; // transmission is finalized
 			}
-			if (con.getMessage().getId().equals(msgId)) {
+			if (con.getMessage().getHandle() == handle) {
 				return true;
 			}
 		}
@@ -618,8 +814,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL &&
-				sendingConnections.size() == 0) {
+		if (sendingConnections.size() == 0 && isTtlCheckDue()) {
 			dropExpiredMessages();
 			lastTtlCheck = SimClock.getTime();
 		}
@@ -631,6 +826,43 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns true if the router has nothing to do in {@link #update()}:
+	 * there are no transfers to finalize, no applications or energy model
+	 * to update, it is not time for a TTL check, and no transfers can be
+	 * started because there are no messages or no connections. Subclasses
+	 * whose update does something else must override this.
+	 * @return true if the router is idle
+	 * @see #getIdleEndTime()
+	 */
+	@Override
+	public boolean isIdle() {
+		if (!this.sendingConnections.isEmpty() || this.energy != null ||
+				hasApplications()) {
+			return false;
+		}
+		if (isTtlCheckDue()) {
+			return false; // time for a TTL check
+		}
+
+		return getNrofMessages() == 0 || !getHost().hasConnections();
+	}
+
+	/**
+	 * Returns the time of the next TTL check: the expiry time of the first
+	 * message to expire with exact TTL expiry, or the time when
+	 * {@link #TTL_CHECK_INTERVAL} has passed since the last check.
+	 * @return The end time of the idle period
+	 */
+	@Override
+	public double getIdleEndTime() {
+		if (this.exactTtlExpiry) {
+			Message m = this.expiryQueue.peek();
+			return m == null ? Double.MAX_VALUE : m.getExpiryTime();
+		}
+		return lastTtlCheck + TTL_CHECK_INTERVAL - TTL_WAKE_MARGIN;
+	}
+
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()}
 	 * due connection going down. This happens on the sending host.
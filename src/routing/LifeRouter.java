@@ -51,11 +51,11 @@ public class LifeRouter extends ActiveRouter {
 	 */
 	private int getPeerMessageCount(Message m) {
 		DTNHost me = getHost();
-		String id = m.getId();
+		int handle = m.getHandle();
 		int peerMsgCount = 0;
 
 		for (Connection c : getConnections()) {
-			if (c.getOtherNode(me).getRouter().hasMessage(id)) {
+			if (c.getOtherNode(me).getRouter().hasMessage(handle)) {
 				peerMsgCount++;
 			}
 		}
@@ -64,7 +64,12 @@ public class LifeRouter extends ActiveRouter {
 	}
 
 	@Override
-	protected int checkReceiving(Message m, DTNHost from) {
+	public boolean rejectsAsOld(Message m) {
+		return false; // peer message count is checked first
+	}
+
+	@Override
+	public int checkAdmission(Message m, DTNHost from) {
 		int peerMsgCount = getPeerMessageCount(m);
 
 		if (peerMsgCount < this.countRange[0] ||
@@ -73,7 +78,7 @@ public class LifeRouter extends ActiveRouter {
 		}
 
 		/* peer message count check OK; receive based on other checks */
-		return super.checkReceiving(m, from);
+		return super.checkAdmission(m, from);
 	}
 
 	@Override
@@ -4,9 +4,7 @@
  */
 package routing;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,6 +14,8 @@ import java.util.Set;
 
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
+import routing.util.DropQueue;
+import routing.util.KeyedTupleList;
 import routing.util.RoutingInfo;
 import util.Tuple;
 import core.Connection;
@@ -53,12 +53,10 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	private MaxPropDijkstra dijkstra;
 	/** IDs of the messages that are known to have reached the final dst */
 	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	/** Are the costs calculated with the current probabilities */
+	private boolean costsValid;
+	/** The buffered messages in MaxProp's drop order */
+	private MaxPropDropQueue maxPropDropQueue;
 
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -145,7 +143,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		super.changedConnection(con);
 
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			this.costsValid = false; // invalidate old cost estimates
+			this.dropQueue.invalidate(); // drop order depends on the costs
 
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -332,7 +331,6 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
@@ -397,20 +395,18 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		List<Message> validMessages = new ArrayList<Message>();
-
-		for (Message m : messages) {
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; // skip the message(s) that router is sending
-			}
-			validMessages.add(m);
-		}
-
-		Collections.sort(validMessages,
-				new MaxPropComparator(this.calcThreshold()));
+		this.maxPropDropQueue.setThreshold(this.calcThreshold());
+		return super.getNextMessageToRemove(excludeMsgBeingSent);
+	}
 
-		return validMessages.get(validMessages.size()-1); // return last message
+	/**
+	 * Creates a drop queue that orders the messages by MaxProp's message
+	 * ordering scheme
+	 */
+	@Override
+	protected DropQueue createDropQueue() {
+		this.maxPropDropQueue = new MaxPropDropQueue();
+		return this.maxPropDropQueue;
 	}
 
 	@Override
@@ -431,8 +427,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host,
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. The shortest path searches are continued
+	 * only as far as needed and reused until the probabilities change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or
@@ -440,29 +436,14 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
+		if (!this.costsValid) {
+			/* probabilities have changed -> old costs are invalid */
 			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-
-			/* calculate paths only to nodes we have messages to
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
-
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			this.dijkstra.invalidate();
+			this.costsValid = true;
 		}
 
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		return this.dijkstra.getCost(from.getAddress(), to.getAddress());
 	}
 
 	/**
@@ -471,10 +452,10 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 * @return The return value of {@link #tryMessagesForConnected(List)}
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages =
-			new ArrayList<Tuple<Message, Connection>>();
+		KeyedTupleList messages = new KeyedTupleList();
+		int threshold = calcThreshold();
 
-		Collection<Message> msgCollection = getMessageCollection();
+		List<Message> msgCollection = getSendQueue();
 
 		/* for all connected hosts that are not transferring at the moment,
 		 * collect all the messages that could be sent */
@@ -489,11 +470,20 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+				if (othRouter.hasMessage(m.getHandle()) ||
+						m.isOnPath(other)) {
 					continue;
 				}
-				messages.add(new Tuple<Message, Connection>(m,con));
+				/* messages below the threshold go first by hop count,
+				 * others by cost (from the other host) and hop count (see
+				 * MaxPropComparator) */
+				int hops = m.getHopCount();
+				if (hops < threshold) {
+					messages.add(m, con, hops - threshold);
+				}
+				else {
+					messages.add(m, con, getCost(other, m.getTo()), hops);
+				}
 			}
 		}
 
@@ -501,10 +491,9 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			return null;
 		}
 
-		/* sort the message-connection tuples according to the criteria
-		 * defined in MaxPropTupleComparator */
-		Collections.sort(messages, new MaxPropTupleComparator(calcThreshold()));
-		return tryMessagesForConnected(messages);
+		/* sort the message-connection tuples by the keys (equal ones are
+		 * in the queue mode order) */
+		return tryMessagesForConnected(messages.getSorted());
 	}
 
 	/**
@@ -536,32 +525,100 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			return 0; // no need for the threshold
 		}
 
-		/* creates a copy of the messages list, sorted by hop count */
-		ArrayList<Message> msgs = new ArrayList<Message>();
-		msgs.addAll(getMessageCollection());
-		if (msgs.size() == 0) {
+		/* finds the hop count of the first message (in hop count order)
+		 * that is beyond the calculated portion */
+		int[] counts = this.maxPropDropQueue.countByHopCount;
+		long[] bytes = this.maxPropDropQueue.bytesByHopCount;
+		int lastHopCount = -1;
+		for (int hops=0; hops<counts.length && p>0; hops++) {
+			if (counts[hops] == 0) {
+				continue; // no messages with this hop count
+			}
+			p -= bytes[hops];
+			lastHopCount = hops;
+		}
+
+		if (lastHopCount < 0) {
 			return 0; // no messages -> no need for threshold
 		}
-		/* anonymous comparator class for hop count comparison */
-		Comparator<Message> hopCountComparator = new Comparator<Message>() {
-			public int compare(Message m1, Message m2) {
-				return m1.getHopCount() - m2.getHopCount();
+
+		/* the threshold is that message's hop count + 1 (so that message and
+		 * perhaps some more are included in the priority part) */
+		return lastHopCount + 1;
+	}
+
+	/**
+	 * Drop queue that orders the messages in the reverse MaxProp order,
+	 * i.e., the message that would be sent last is dropped first. The order
+	 * depends on the threshold and the costs, so the queue is reordered when
+	 * either of them changes. The queue also keeps count of the buffered
+	 * messages and bytes per hop count for calculating the threshold.
+	 */
+	private class MaxPropDropQueue extends DropQueue {
+		/** the threshold of the current order */
+		private int threshold;
+		/** comparator for the current threshold */
+		private MaxPropComparator comparator;
+		/** number of the buffered messages, indexed by hop count */
+		private int[] countByHopCount;
+		/** bytes of the buffered messages, indexed by hop count */
+		private long[] bytesByHopCount;
+
+		public MaxPropDropQueue() {
+			super(POLICY_FIFO);
+			this.threshold = 0;
+			this.comparator = new MaxPropComparator(this.threshold);
+			this.countByHopCount = new int[8];
+			this.bytesByHopCount = new long[8];
+		}
+
+		/**
+		 * Sets the threshold value for the buffer's split
+		 * @param threshold The threshold
+		 */
+		public void setThreshold(int threshold) {
+			if (threshold != this.threshold) {
+				this.threshold = threshold;
+				this.comparator = new MaxPropComparator(threshold);
+				invalidate();
 			}
-		};
-		Collections.sort(msgs, hopCountComparator);
+		}
+
+		@Override
+		public void add(Message m) {
+			super.add(m);
+			count(m, 1);
+		}
 
-		/* finds the first message that is beyond the calculated portion */
-		int i=0;
-		for (int n=msgs.size(); i<n && p>0; i++) {
-			p -= msgs.get(i).getSize();
+		@Override
+		public Message remove(int handle) {
+			Message m = super.remove(handle);
+			if (m != null) {
+				count(m, -1);
+			}
+			return m;
 		}
 
-		i--; // the last round moved i one index too far
+		@Override
+		protected int compare(Message m1, Message m2) {
+			return comparator.compare(m2, m1); // last in order is dropped
+		}
 
-		/* now i points to the first packet that exceeds portion p;
-		 * the threshold is that packet's hop count + 1 (so that packet and
-		 * perhaps some more are included in the priority part) */
-		return msgs.get(i).getHopCount() + 1;
+		/**
+		 * Updates the per hop count statistics
+		 * @param m The message that was added or removed
+		 * @param diff 1 if the message was added, -1 if removed
+		 */
+		private void count(Message m, int diff) {
+			int hops = m.getHopCount();
+			if (hops >= countByHopCount.length) {
+				int length = Math.max(hops + 1, countByHopCount.length * 2);
+				countByHopCount = Arrays.copyOf(countByHopCount, length);
+				bytesByHopCount = Arrays.copyOf(bytesByHopCount, length);
+			}
+			countByHopCount[hops] += diff;
+			bytesByHopCount[hops] += diff * m.getSize();
+		}
 	}
 
 	/**
@@ -658,37 +715,6 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		}
 	}
 
-	/**
-	 * Message-Connection tuple comparator for the MaxProp routing
-	 * module. Uses MaxPropComparator on the messages of the tuples
-	 * setting the "from" host for that message to be the one in the connection
-	 * tuple (i.e., path is calculated starting from the host on the other end
-	 * of the connection).
-	 */
-	private class MaxPropTupleComparator
-			implements Comparator <Tuple<Message, Connection>>  {
-		private int threshold;
-
-		public MaxPropTupleComparator(int threshold) {
-			this.threshold = threshold;
-		}
-
-		/**
-		 * Compares two message-connection tuples using the
-		 * {@link MaxPropComparator#compare(Message, Message)}.
-		 */
-		public int compare(Tuple<Message, Connection> tuple1,
-				Tuple<Message, Connection> tuple2) {
-			MaxPropComparator comp;
-			DTNHost from1 = tuple1.getValue().getOtherNode(getHost());
-			DTNHost from2 = tuple2.getValue().getOtherNode(getHost());
-
-			comp = new MaxPropComparator(threshold, from1, from2);
-			return comp.compare(tuple1.getKey(), tuple2.getKey());
-		}
-	}
-
-
 	@Override
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo top = super.getRoutingInfo();
@@ -4,6 +4,8 @@
  */
 package routing;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -21,6 +23,7 @@ import core.SettingsError;
 import core.SimClock;
 import core.SimError;
 import routing.util.RoutingInfo;
+import util.IntHashMap;
 import util.Tuple;
 
 /**
@@ -85,12 +88,15 @@ public abstract class MessageRouter {
 	private List<MessageListener> mListeners;
 	/** The messages being transferred with msgID_hostName keys */
 	private HashMap<String, Message> incomingMessages;
-	/** The messages this router is carrying */
-	private HashMap<String, Message> messages;
+	/** The messages this router is carrying (with message handle keys) */
+	private IntHashMap<Message> messages;
+	/** The carried messages indexed by the address of their destination */
+	private IntHashMap<List<Message>> messagesByDestination;
 	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
-	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	private IntHashMap<Message> deliveredMessages;
+	/** Handles of the messages that Applications on this router have
+	 * blacklisted */
+	private BitSet blacklistedMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -99,6 +105,14 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** The carried messages in the order of their receive time (maintained
+	 * only in the FIFO queue mode) */
+	private ArrayList<Message> fifoQueue;
+	/** Cached send queue or null if the buffer has changed since */
+	private List<Message> sendQueue;
+	/** The (integer) sim time when the cached random send queue was
+	 * shuffled */
+	private int sendQueueTime;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>> applications = null;
@@ -152,9 +166,13 @@ public abstract class MessageRouter {
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		this.messages = new IntHashMap<Message>();
+		this.messagesByDestination = new IntHashMap<List<Message>>();
+		this.deliveredMessages = new IntHashMap<Message>();
+		this.blacklistedMessages = new BitSet();
+		this.fifoQueue = (sendQueueMode == Q_MODE_FIFO ?
+				new ArrayList<Message>() : null);
+		this.sendQueue = null;
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -189,6 +207,70 @@ public abstract class MessageRouter {
 		}
 	}
 
+	/**
+	 * Checks if this router would reject a message that another host offers.
+	 * The check must not have side effects (e.g., it must not drop messages
+	 * to make room for the new one). Connections make the check before
+	 * replicating the message for {@link #receiveMessage(Message, DTNHost)},
+	 * so the rejected messages are never replicated. If the check passes,
+	 * the message can still be rejected by receiveMessage. The default
+	 * implementation passes all messages.
+	 * @param m The message
+	 * @param from The host offering the message
+	 * @return {@link #RCV_OK} if the message passes the check, or the value
+	 * receiveMessage would return for the message
+	 */
+	public int checkAdmission(Message m, DTNHost from) {
+		return RCV_OK;
+	}
+
+	/**
+	 * Returns true if this router would reject the message with
+	 * {@link #DENIED_OLD} because it has already seen it, and rejecting it
+	 * would have no other effects. Senders use this as a summary of the
+	 * messages this router has, to skip such messages without replicating
+	 * them and calling {@link #receiveMessage(Message, DTNHost)}. The
+	 * default implementation returns false (the message is always offered).
+	 * @param m The message
+	 * @return true if the message would be rejected as an old one
+	 */
+	public boolean rejectsAsOld(Message m) {
+		return false;
+	}
+
+	/**
+	 * Returns true if calling {@link #update()} would do nothing now, and
+	 * would keep doing nothing until the connections of the host change,
+	 * messages are added to the router (see {@link DTNHost#wakeUpRouter()})
+	 * or the time returned by {@link #getIdleEndTime()} is reached.
+	 * Idle routers are parked, i.e., their updates are skipped, if
+	 * {@link core.World#PARK_IDLE_HOSTS_S} is set. The default
+	 * implementation returns false, i.e., the router is always updated.
+	 * @return true if the router is idle
+	 */
+	public boolean isIdle() {
+		return false;
+	}
+
+	/**
+	 * Returns the simulation time until which an idle router (see
+	 * {@link #isIdle()}) has nothing to do unless it is woken up. The
+	 * default implementation returns {@link Double#MAX_VALUE}, i.e., the
+	 * router has no time-based work.
+	 * @return The end time of the idle period
+	 */
+	public double getIdleEndTime() {
+		return Double.MAX_VALUE;
+	}
+
+	/**
+	 * Returns true if applications are attached to this router
+	 * @return true if applications are attached to this router
+	 */
+	protected boolean hasApplications() {
+		return !this.applications.isEmpty();
+	}
+
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -201,7 +283,17 @@ public abstract class MessageRouter {
 	 * @return The message
 	 */
 	protected Message getMessage(String id) {
-		return this.messages.get(id);
+		return getMessage(Message.lookupHandle(id));
+	}
+
+	/**
+	 * Returns a message by the handle of its ID.
+	 * @param handle Handle of the message ID
+	 * @return The message or null if there is no such message
+	 * @see Message#getHandle()
+	 */
+	protected Message getMessage(int handle) {
+		return this.messages.get(handle);
 	}
 
 	/**
@@ -210,7 +302,18 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	public boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return hasMessage(Message.lookupHandle(id));
+	}
+
+	/**
+	 * Checks if this router has a message with certain ID handle buffered.
+	 * This is faster than checking with the ID string.
+	 * @param handle Handle of the message ID
+	 * @return True if the router has the message, false if not
+	 * @see Message#getHandle()
+	 */
+	public boolean hasMessage(int handle) {
+		return handle >= 0 && this.messages.containsKey(handle);
 	}
 
 	/**
@@ -222,7 +325,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.containsKey(m.getHandle()));
 	}
 
 	/**
@@ -235,7 +338,18 @@ public abstract class MessageRouter {
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
 	 */
 	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+		return isBlacklistedMessage(Message.lookupHandle(id));
+	}
+
+	/**
+	 * Returns <code>true</code> if the message with the given ID handle has
+	 * been blacklisted.
+	 * @param handle Handle of the message ID
+	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
+	 * @see #isBlacklistedMessage(String)
+	 */
+	protected boolean isBlacklistedMessage(int handle) {
+		return handle >= 0 && this.blacklistedMessages.get(handle);
 	}
 
 	/**
@@ -250,6 +364,44 @@ public abstract class MessageRouter {
 		return this.messages.values();
 	}
 
+	/**
+	 * Returns the messages of this router that are destined to the given
+	 * host. The returned list must not be modified and, like with
+	 * {@link #getMessageCollection()}, a copy of it should be made if
+	 * messages may be added or deleted while iterating through it.
+	 * @param to The destination host
+	 * @return The messages destined to the host (in the order they are in
+	 * {@link #getMessageCollection()})
+	 */
+	public List<Message> getMessagesFor(DTNHost to) {
+		List<Message> list = this.messagesByDestination.get(to.getAddress());
+		if (list == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Returns the position of a message in the iteration order of
+	 * {@link #getMessageCollection()}
+	 * @param m The message
+	 * @return The position of the message or -1 if this router doesn't
+	 * have the message
+	 */
+	protected int getBufferIndex(Message m) {
+		return this.messages.indexOf(m.getHandle());
+	}
+
+	/**
+	 * Returns true if this router has messages destined to the given host
+	 * @param to The destination host
+	 * @return true if there are messages for the host, false if not
+	 */
+	public boolean hasMessagesFor(DTNHost to) {
+		List<Message> list = this.messagesByDestination.get(to.getAddress());
+		return list != null && list.size() > 0;
+	}
+
 	/**
 	 * Returns the number of messages this router has
 	 * @return How many messages this router has
@@ -383,11 +535,11 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.put(incoming.getHandle(), aMessage);
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.blacklistedMessages.set(incoming.getHandle());
 		}
 
 		for (MessageListener ml : this.mListeners) {
@@ -437,7 +589,17 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m.getHandle(), m);
+		if (old != null) { /* m took the place of the old message */
+			unindexMessage(old);
+			indexMessage(m, true);
+		}
+		else {
+			indexMessage(m, false);
+		}
+		if (this.host != null) {
+			this.host.wakeUpRouter();
+		}
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -452,10 +614,134 @@ public abstract class MessageRouter {
 	 * @return The removed message or null if message for the ID wasn't found
 	 */
 	protected Message removeFromMessages(String id) {
-		Message m = this.messages.remove(id);
+		int handle = Message.lookupHandle(id);
+		if (handle < 0) {
+			return null;
+		}
+		int index = this.messages.indexOf(handle);
+		if (index < 0) {
+			return null;
+		}
+
+		/* the last message of the buffer is moved to the freed place */
+		int last = this.messages.size() - 1;
+		Message moved = (index != last ? this.messages.valueAt(last) : null);
+		Message m = this.messages.remove(handle);
+		unindexMessage(m);
+		if (moved != null) {
+			List<Message> list = getDestinationList(moved);
+			list.remove(list.size() - 1); /* it was last in the buffer */
+			addInBufferOrder(list, moved, index);
+		}
 		return m;
 	}
 
+	/**
+	 * Adds a message to the destination index and to the send queue. The
+	 * destination lists are kept in the buffer order.
+	 * @param m The message
+	 * @param replaced True if the message took the place of another message
+	 * in the buffer, false if it was added to the end of the buffer
+	 */
+	private void indexMessage(Message m, boolean replaced) {
+		this.sendQueue = null;
+		if (this.fifoQueue != null) {
+			/* after the messages with the same or older receive time */
+			double time = m.getReceiveTime();
+			int low = 0;
+			int high = this.fifoQueue.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.fifoQueue.get(mid).getReceiveTime() <= time) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			this.fifoQueue.add(low, m);
+		}
+
+		int to = m.getTo().getAddress();
+		List<Message> list = this.messagesByDestination.get(to);
+		if (list == null) {
+			list = new ArrayList<Message>(2);
+			this.messagesByDestination.put(to, list);
+		}
+		if (replaced) {
+			addInBufferOrder(list, m, getBufferIndex(m));
+		}
+		else {
+			list.add(m); /* new messages are last in the buffer */
+		}
+	}
+
+	/**
+	 * Adds a message to a destination list at the position of its buffer
+	 * index. The other messages of the list must be in the buffer order.
+	 * @param list The destination list
+	 * @param m The message
+	 * @param index The buffer index of the message
+	 */
+	private void addInBufferOrder(List<Message> list, Message m, int index) {
+		int low = 0;
+		int high = list.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getBufferIndex(list.get(mid)) < index) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		list.add(low, m);
+	}
+
+	/**
+	 * Returns the destination list of a message
+	 * @param m The message
+	 * @return The list of messages to the same destination
+	 */
+	private List<Message> getDestinationList(Message m) {
+		return this.messagesByDestination.get(m.getTo().getAddress());
+	}
+
+	/**
+	 * Removes a message from the destination index and from the send queue
+	 * @param m The message
+	 */
+	private void unindexMessage(Message m) {
+		this.sendQueue = null;
+		if (this.fifoQueue != null) {
+			/* find the first message with the same receive time */
+			double time = m.getReceiveTime();
+			int low = 0;
+			int high = this.fifoQueue.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.fifoQueue.get(mid).getReceiveTime() < time) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			while (this.fifoQueue.get(low) != m) {
+				low++;
+			}
+			this.fifoQueue.remove(low);
+		}
+
+		List<Message> list = getDestinationList(m);
+		for (int i=0, n=list.size(); i<n; i++) {
+			if (list.get(i) == m) {
+				list.remove(i);
+				return;
+			}
+		}
+	}
+
 	/**
 	 * This method should be called (on the receiving host) when a message
 	 * transfer was aborted.
@@ -556,6 +842,36 @@ public abstract class MessageRouter {
 		return list;
 	}
 
+	/**
+	 * Returns the carried messages in the order of the current queue mode
+	 * (see {@link #sortByQueueMode(List)}). The list is cached until the
+	 * buffer changes (in the random mode also until the integer part of the
+	 * sim time changes) so asking for it on every update is cheap. In the
+	 * FIFO mode the order is maintained when messages are added and
+	 * removed, so the messages are never sorted. The returned list must not
+	 * be modified, but it is not affected by the changes of the buffer (i.e.,
+	 * it is safe to iterate over it while adding or deleting messages).
+	 * @return The messages in the send queue order
+	 */
+	protected List<Message> getSendQueue() {
+		if (sendQueueMode == Q_MODE_RANDOM) {
+			int time = SimClock.getIntTime();
+			if (this.sendQueue == null || this.sendQueueTime != time) {
+				List<Message> list =
+					new ArrayList<Message>(getMessageCollection());
+				Collections.shuffle(list, new Random(time));
+				this.sendQueue = Collections.unmodifiableList(list);
+				this.sendQueueTime = time;
+			}
+		}
+		else if (this.sendQueue == null) {
+			this.sendQueue = Collections.unmodifiableList(
+					new ArrayList<Message>(this.fifoQueue));
+		}
+
+		return this.sendQueue;
+	}
+
 	/**
 	 * Gives the order of the two given messages as defined by the current
 	 * queue mode
@@ -31,6 +31,11 @@ public class PassiveRouter extends MessageRouter {
 		super.update();
 	}
 
+	@Override
+	public boolean isIdle() {
+		return !hasApplications(); // only applications are updated
+	}
+
 	@Override
 	public void changedConnection(Connection con) {
 		// -"-
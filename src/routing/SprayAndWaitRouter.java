@@ -98,8 +98,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		}
 
 		/* create a list of SAWMessages that have copies left to distribute */
-		@SuppressWarnings(value = "unchecked")
-		List<Message> copiesLeft = sortByQueueMode(getMessagesWithCopiesLeft());
+		List<Message> copiesLeft = getMessagesWithCopiesLeft();
 
 		if (copiesLeft.size() > 0) {
 			/* try to send those messages */
@@ -110,12 +109,13 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	/**
 	 * Creates and returns a list of messages this router is currently
 	 * carrying and still has copies left to distribute (nrof copies > 1).
-	 * @return A list of messages that have copies left
+	 * @return A list of messages that have copies left (in the send queue
+	 * order)
 	 */
 	protected List<Message> getMessagesWithCopiesLeft() {
 		List<Message> list = new ArrayList<Message>();
 
-		for (Message m : getMessageCollection()) {
+		for (Message m : getSendQueue()) {
 			Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROPERTY);
 			assert nrofCopies != null : "SnW message " + m + " didn't have " +
 				"nrof copies property!";
@@ -63,19 +63,36 @@ public class WaveRouter extends ActiveRouter {
 	}
 
 	@Override
-	protected int checkReceiving(Message m, DTNHost from) {
+	public boolean rejectsAsOld(Message m) {
+		if (this.recentMessages.containsKey(m.getId())) {
+			return false; // immunity is checked first
+		}
+		return super.rejectsAsOld(m);
+	}
+
+	@Override
+	public int checkAdmission(Message m, DTNHost from) {
 		Double lastTime = this.recentMessages.get(m.getId());
 
-		if (lastTime != null) {
-			if (lastTime + this.immunityTime > SimClock.getTime()) {
-				return DENIED_POLICY; /* still immune to the message */
-			} else {
-				/* immunity has passed; remove from recent */
-				this.recentMessages.remove(m.getId());
-			}
+		if (lastTime != null &&
+				lastTime + this.immunityTime > SimClock.getTime()) {
+			return DENIED_POLICY; /* still immune to the message */
 		}
 
 		/* no last time or immunity passed; receive based on other checks */
+		return super.checkAdmission(m, from);
+	}
+
+	@Override
+	protected int checkReceiving(Message m, DTNHost from) {
+		Double lastTime = this.recentMessages.get(m.getId());
+
+		if (lastTime != null &&
+				lastTime + this.immunityTime <= SimClock.getTime()) {
+			/* immunity has passed; remove from recent */
+			this.recentMessages.remove(m.getId());
+		}
+
 		return super.checkReceiving(m, from);
 	}
 
@@ -99,7 +116,7 @@ public class WaveRouter extends ActiveRouter {
 			}
 
 
-			if (excludeMsgBeingSent && isSending(m.getId())) {
+			if (excludeMsgBeingSent && isSending(m.getHandle())) {
 				continue; /* skip the message(s) that router is sending */
 			}
 
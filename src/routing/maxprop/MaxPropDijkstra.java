@@ -4,35 +4,37 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * <P>
+ * The search state is kept in primitive arrays indexed by node index and
+ * searches are resumable: a search from a source node continues only until
+ * the cost of the requested node is known, and costs of the nodes already
+ * found are returned without new work. A search is kept for every source
+ * node that costs have been requested from, until the searches are
+ * invalidated with {@link #invalidate()} (i.e., when the probabilities
+ * change).
+ * </P>
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the node arrays */
+	private static final int INIT_SIZE = 16;
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
+	/** Searches from source nodes since the last invalidation */
+	private Map<Integer, Search> searches;
+	/** Searches that can be reused */
+	private List<Search> spareSearches;
 
 	/**
 	 * Constructor.
@@ -41,22 +43,17 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.searches = new HashMap<Integer, Search>();
+		this.spareSearches = new ArrayList<Search>();
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
+	 * Discards the results of all earlier searches. Must be called when the
+	 * probabilities change.
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+	public void invalidate() {
+		this.spareSearches.addAll(this.searches.values());
+		this.searches.clear();
 	}
 
 	/**
@@ -69,156 +66,245 @@ public class MaxPropDijkstra {
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
-
-		initWith(from);
-		Integer node = null;
-
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
-			}
 
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+		invalidate();
+		for (Integer node : to) {
+			double cost = getCost(from, node);
+			if (cost != INFINITY) {
+				distMap.put(node, cost);
+			}
 		}
 
 		return distMap;
 	}
 
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * Returns the total cost from a node to another. The search from the
+	 * source node is continued until the cost is known.
+	 * @param from The index (address) of the start node
+	 * @param to The index (address) of the destination node
+	 * @return The cost of the cheapest path to the node or Double.MAX_VALUE
+	 * if there is no path to the node
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-
-		if (!this.probs.containsKey(node)) {
-			return; // node's neighbors are not known
-		}
-
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
+	public double getCost(int from, int to) {
+		Search search = this.searches.get(from);
+		if (search == null) {
+			if (this.spareSearches.isEmpty()) {
+				search = new Search();
 			}
-
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-
-			if (distancesFromStart.get(n) > nDist) {
-				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
+			else {
+				search = this.spareSearches.remove(
+						this.spareSearches.size() - 1);
 			}
+			search.startFrom(from);
+			this.searches.put(from, search);
 		}
-	}
 
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+		return search.getCost(to);
 	}
 
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to".
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Search state of a single source node
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
-	}
+	private class Search {
+		/** Node distances from the source node */
+		private double[] distances;
+		/** Search number when the node was last discovered (distances of
+		 * nodes with older search number are infinite) */
+		private int[] discovered;
+		/** Positions of the nodes in the heap (-1 for visited nodes, i.e.,
+		 * nodes whose shortest path is known) */
+		private int[] heapPositions;
+		/** Binary heap of unvisited nodes discovered so far */
+		private int[] heap;
+		/** Number of nodes in the heap */
+		private int heapSize;
+		/** Number of the current search */
+		private int search;
 
-	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements
-		Comparator<Integer> {
+		public Search() {
+			this.distances = new double[INIT_SIZE];
+			this.discovered = new int[INIT_SIZE];
+			this.heapPositions = new int[INIT_SIZE];
+			this.heap = new int[INIT_SIZE];
+			this.search = 0;
+		}
 
 		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
+		 * Starts a new search from a node
+		 * @param firstHop The first hop router node
 		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
+		public void startFrom(int firstHop) {
+			this.search++;
+			this.heapSize = 0;
 
-			if (dist1 > dist2) {
-				return 1;
+			// set distance to source 0 and initialize unvisited queue
+			ensureCapacity(firstHop);
+			discover(firstHop, 0);
+		}
+
+		/**
+		 * Returns the cost from the source node to the given node
+		 * @param to The destination node
+		 * @return The cost or Double.MAX_VALUE if there is no path
+		 */
+		public double getCost(int to) {
+			if (isVisited(to)) {
+				return distances[to];
 			}
-			else if (dist1 < dist2) {
-				return -1;
+
+			// always take the node with shortest distance
+			while (heapSize > 0) {
+				int node = poll();
+				relax(node);   // add/update neighbor nodes' distances
+				if (node == to) {
+					return distances[node]; // found the requested node
+				}
 			}
-			else {
-				return node1.compareTo(node2);
+
+			return INFINITY;
+		}
+
+		/**
+		 * Relaxes the neighbors of a node (updates the shortest distances).
+		 * @param node The node whose neighbors are relaxed
+		 */
+		private void relax(int node) {
+			double nodeDist = distances[node];
+			MeetingProbabilitySet nodeProbs = probs.get(node);
+
+			if (nodeProbs == null) {
+				return; // node's neighbors are not known
+			}
+
+			for (int i=0, n=nodeProbs.size(); i<n; i++) {
+				int neighbor = nodeProbs.getNodeAt(i);
+				ensureCapacity(neighbor);
+				if (isVisited(neighbor)) {
+					continue; // skip visited nodes
+				}
+
+				// neighbor node's distance from path's source node
+				double nDist = nodeDist +
+					(1 - nodeProbs.getProbFor(neighbor));
+
+				if (discovered[neighbor] != search) {
+					discover(neighbor, nDist);
+				}
+				else if (distances[neighbor] > nDist) {
+					// stored distance > found dist -> update
+					distances[neighbor] = nDist;
+					siftUp(heapPositions[neighbor]);
+				}
 			}
 		}
-	}
 
-	/**
-	 * Simple Map implementation for storing distances.
-	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
+		/**
+		 * Returns true if the shortest path to the node is known
+		 * @param node The node
+		 * @return true if the node has been visited in the current search
+		 */
+		private boolean isVisited(int node) {
+			return node < discovered.length && discovered[node] == search &&
+				heapPositions[node] < 0;
+		}
 
 		/**
-		 * Constructor. Creates an empty distance map
+		 * Sets the first distance of a node and adds it to the unvisited
+		 * queue
+		 * @param node The node
+		 * @param distance The distance of the node from the source node
 		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>();
+		private void discover(int node, double distance) {
+			discovered[node] = search;
+			distances[node] = distance;
+			heap[heapSize] = node;
+			heapPositions[node] = heapSize;
+			heapSize++;
+			siftUp(heapSize - 1);
 		}
 
 		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
+		 * Removes the node with the shortest distance from the unvisited
+		 * queue and marks it visited
+		 * @return The node
 		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+		private int poll() {
+			int node = heap[0];
+			heapPositions[node] = -1;
+			heapSize--;
+			if (heapSize > 0) {
+				heap[0] = heap[heapSize];
+				heapPositions[heap[0]] = 0;
+				siftDown(0);
 			}
-			else {
-				return INFINITY;
+			return node;
+		}
+
+		private void siftUp(int pos) {
+			int node = heap[pos];
+			while (pos > 0) {
+				int parent = (pos - 1) / 2;
+				if (!isBefore(node, heap[parent])) {
+					break;
+				}
+				heap[pos] = heap[parent];
+				heapPositions[heap[pos]] = pos;
+				pos = parent;
 			}
+			heap[pos] = node;
+			heapPositions[node] = pos;
+		}
+
+		private void siftDown(int pos) {
+			int node = heap[pos];
+			while (true) {
+				int child = 2 * pos + 1;
+				if (child >= heapSize) {
+					break;
+				}
+				if (child + 1 < heapSize &&
+						isBefore(heap[child + 1], heap[child])) {
+					child++;
+				}
+				if (!isBefore(heap[child], node)) {
+					break;
+				}
+				heap[pos] = heap[child];
+				heapPositions[heap[pos]] = pos;
+				pos = child;
+			}
+			heap[pos] = node;
+			heapPositions[node] = pos;
 		}
 
 		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
+		 * Compares two nodes by their distance from the source node (and by
+		 * their index if the distances are equal)
+		 * @return true if node1 should be visited before node2
 		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		private boolean isBefore(int node1, int node2) {
+			double dist1 = distances[node1];
+			double dist2 = distances[node2];
+			if (dist1 != dist2) {
+				return dist1 < dist2;
+			}
+			return node1 < node2;
 		}
 
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Makes sure that the node arrays have room for the given node index
+		 * @param node The node index
 		 */
-		public String toString() {
-			return map.toString();
+		private void ensureCapacity(int node) {
+			if (node < distances.length) {
+				return;
+			}
+			int length = Math.max(node + 1, distances.length * 2);
+			distances = Arrays.copyOf(distances, length);
+			discovered = Arrays.copyOf(discovered, length);
+			heapPositions = Arrays.copyOf(heapPositions, length);
+			heap = Arrays.copyOf(heap, length);
 		}
 	}
 }
@@ -4,9 +4,10 @@
  */
 package routing.maxprop;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import core.SimClock;
 
@@ -15,11 +16,28 @@ import static core.Constants.DEBUG;
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
  * router module.
+ * <P>
+ * The probabilities are stored in a dense array indexed by node index
+ * (address), so normalizing the probabilities after an update is a loop over
+ * a primitive array. Replicates of a set share the arrays until either one
+ * of them is changed (copy-on-write), so replicating a set is cheap.
+ * </P>
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * indexed by node index */
+	private double[] values;
+	/** indexes of the nodes that have a probability value */
+	private int[] nodes;
+	/** positions of the nodes in the node index array plus one (zero for
+	 * nodes without a probability value); indexed by node index */
+	private int[] positions;
+	/** number of the nodes that have a probability value */
+	private int size;
+	/** are the arrays shared with a replicate */
+	private boolean shared;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
@@ -34,14 +52,16 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-	this.probs = new HashMap<Integer, Double>();
 	this.maxSetSize = INFINITE_SET_SIZE;
         } else {
-	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
         }
+		this.values = new double[0];
+		this.nodes = new int[0];
+		this.positions = new int[0];
+		this.size = 0;
+		this.shared = false;
 		this.lastUpdateTime = 0;
 	}
 
@@ -62,7 +82,7 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			setValue(i, prob);
 		}
 	}
 
@@ -75,38 +95,45 @@ public class MeetingProbabilitySet {
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
-        double smallestValue = Double.MAX_VALUE;
-
 		this.lastUpdateTime = SimClock.getTime();
 
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		if (size == 0) { // first entry
+			setValue(index, 1.0);
 			return;
 		}
 
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		setValue(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
 		 * normalize to one by dividing all the entries by 1+alpha */
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
-            }
-
+		for (int i=0; i<size; i++) {
+			values[nodes[i]] /= (1+alpha);
 		}
 
-        if (probs.size() >= maxSetSize) {
-            if (DEBUG) core.Debug.p("Probsize: " + probs.size() + " dropping " +
-					probs.remove(smallestEntry.getKey()));
+		/* the smallest value is dropped only in the debug mode: the removal
+		   has always been a part of the debug output, so without debugging
+		   the size of the set is not limited */
+        if (DEBUG && size >= maxSetSize) {
+			/* drop the smallest value (of the smallest node index if
+			   there are many) */
+			int smallest = 0;
+			for (int i=1; i<size; i++) {
+				double v = values[nodes[i]];
+				double min = values[nodes[smallest]];
+				if (v < min || (v == min && nodes[i] < nodes[smallest])) {
+					smallest = i;
+				}
+			}
+			int node = nodes[smallest];
+            core.Debug.p("Probsize: " + size + " dropping " +
+					getProbFor(node));
+			removeAt(smallest);
         }
 	}
 
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		setValue(index, iet);
 	}
 
 	/**
@@ -115,21 +142,51 @@ public class MeetingProbabilitySet {
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
-		}
-		else {
-			/* the node with the given index has not been met */
+		return getProbFor(index.intValue());
+	}
+
+	/**
+	 * Returns the current delivery probability value for the given node index
+	 * @param index The index of the node to look the P for
+	 * @return the current delivery probability value (0 if the node with
+	 * the index has not been met)
+	 */
+	public double getProbFor(int index) {
+		if (index >= values.length) {
 			return 0.0;
 		}
+		return values[index];
 	}
 
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the number of nodes that have a probability value
+	 * @return the number of nodes that have a probability value
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the index of a node that has a probability value. Together
+	 * with {@link #size()} this can be used for iterating over the nodes.
+	 * @param i Position of the node (0 ... size()-1)
+	 * @return The node index
+	 */
+	public int getNodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns a copy of the probabilities as a map from node indexes to
+	 * probabilities.
+	 * @return A map of the probabilities ordered by node index
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> probs = new TreeMap<Integer, Double>();
+		for (int i=0; i<size; i++) {
+			probs.put(nodes[i], getProbFor(nodes[i]));
+		}
+		return probs;
 	}
 
 	/**
@@ -148,28 +205,84 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a copy of the probability set. The copy shares the
+	 * probability data with this set until either one of them is updated.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
 		MeetingProbabilitySet replica = new MeetingProbabilitySet(
 				this.maxSetSize, alpha);
 
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
-		}
+		replica.values = this.values;
+		replica.nodes = this.nodes;
+		replica.positions = this.positions;
+		replica.size = this.size;
+		replica.shared = true;
+		this.shared = true;
 
 		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
 	}
 
+	/**
+	 * Sets the probability of a node
+	 * @param index Index of the node
+	 * @param prob The new probability
+	 */
+	private void setValue(int index, double prob) {
+		ensureCapacity(index);
+
+		if (positions[index] == 0) { // not known yet
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, Math.max(4, size * 2));
+			}
+			nodes[size++] = index;
+			positions[index] = size;
+		}
+		values[index] = prob;
+	}
+
+	/**
+	 * Makes sure that the arrays are not shared and that there's room for
+	 * the given node index in them
+	 * @param index The node index
+	 */
+	private void ensureCapacity(int index) {
+		if (!shared && index < values.length) {
+			return;
+		}
+
+		int length = values.length;
+		if (index >= length) {
+			length = Math.max(index + 1, length * 2);
+		}
+		values = Arrays.copyOf(values, length);
+		positions = Arrays.copyOf(positions, length);
+		nodes = Arrays.copyOf(nodes, nodes.length);
+		shared = false;
+	}
+
+	/**
+	 * Removes the value of a node
+	 * @param i Position of the node in the node list
+	 */
+	private void removeAt(int i) {
+		int node = nodes[i];
+		values[node] = 0;
+		positions[node] = 0;
+		size--;
+		if (i != size) {
+			nodes[i] = nodes[size];
+			positions[nodes[i]] = i + 1;
+		}
+	}
+
 	/**
 	 * Returns a String presentation of the probabilities
 	 * @return a String presentation of the probabilities
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Delivery predictability table for the PRoPHET family of routers. The
+ * predictabilities are stored in primitive arrays indexed by host address.
+ * Every entry remembers the time it was last aged, and aging
+ * (<CODE>P = P_old * GAMMA ^ k</CODE>, where k is the number of time units
+ * since the last aging) is applied to an entry only when it is read, so
+ * reading a single value doesn't touch the rest of the table.
+ */
+public class DeliveryPredictabilities {
+	/** Initial size of the arrays */
+	private static final int INIT_SIZE = 16;
+
+	/** the aging constant */
+	private double gamma;
+	/** how many seconds one time unit is when aging */
+	private double secondsInTimeUnit;
+
+	/** predictabilities (as they were at the time of the entry) */
+	private double[] preds;
+	/** the times when the entries were last aged */
+	private double[] times;
+	/** hosts of the entries, indexed by host address */
+	private DTNHost[] hosts;
+	/** addresses of the hosts that have an entry */
+	private int[] addresses;
+	/** number of hosts with an entry */
+	private int size;
+	/** the time difference of the last aging and its aging multiplier
+	 * (entries that were aged at the same time share the multiplier) */
+	private double lastTimeDiff;
+	private double lastMult;
+
+	/**
+	 * Constructor.
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit How many seconds one time unit is
+	 */
+	public DeliveryPredictabilities(double gamma, double secondsInTimeUnit) {
+		this.gamma = gamma;
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.preds = new double[INIT_SIZE];
+		this.times = new double[INIT_SIZE];
+		this.hosts = new DTNHost[INIT_SIZE];
+		this.addresses = new int[INIT_SIZE];
+		this.size = 0;
+		this.lastTimeDiff = 0;
+		this.lastMult = 1;
+	}
+
+	/**
+	 * Changes the aging constant. All the entries are aged with the old
+	 * constant up to the current time first.
+	 * @param gamma The new aging constant
+	 */
+	public void setGamma(double gamma) {
+		if (gamma != this.gamma) {
+			ageAll();
+			this.gamma = gamma;
+			this.lastTimeDiff = 0;
+			this.lastMult = 1;
+		}
+	}
+
+	/**
+	 * Returns the current (aged) predictability for a host or 0 if there
+	 * is no entry for the host.
+	 * @param host The host
+	 * @return The predictability
+	 */
+	public double get(DTNHost host) {
+		int address = host.getAddress();
+		if (address >= hosts.length || hosts[address] == null) {
+			return 0;
+		}
+		return age(address, SimClock.getTime());
+	}
+
+	/**
+	 * Sets the predictability for a host
+	 * @param host The host
+	 * @param pred The new predictability
+	 */
+	public void set(DTNHost host, double pred) {
+		int address = host.getAddress();
+		ensureCapacity(address);
+		if (hosts[address] == null) {
+			hosts[address] = host;
+			if (size == addresses.length) {
+				addresses = Arrays.copyOf(addresses, size * 2);
+			}
+			addresses[size++] = address;
+		}
+		preds[address] = pred;
+		times[address] = SimClock.getTime();
+	}
+
+	/**
+	 * Updates the predictability for a host that was just met.
+	 * <CODE>P(a,b) = P(a,b)_old + (1 - P(a,b)_old) * P_enc</CODE>
+	 * @param host The host that was met
+	 * @param pEnc The encounter value (e.g., P_INIT)
+	 */
+	public void updateEncounter(DTNHost host, double pEnc) {
+		double oldValue = get(host);
+		set(host, oldValue + (1 - oldValue) * pEnc);
+	}
+
+	/**
+	 * Updates transitive (A->B->C) predictabilities from B's table.
+	 * <CODE>P(a,c) = P(a,c)_old + (1 - P(a,c)_old) * P(a,b) * P(b,c) * BETA
+	 * </CODE>
+	 * or, if only the maximum is used,
+	 * <CODE>P(a,c) = max(P(a,c)_old, P(a,b) * P(b,c) * BETA)</CODE>
+	 * @param other The table of host B
+	 * @param self Host A (it is not added to the table)
+	 * @param pForHost P(a,b)
+	 * @param beta The transitivity scaling constant
+	 * @param useMax If true, the maximum of the old and the transitive value
+	 * is used
+	 */
+	public void updateTransitive(DeliveryPredictabilities other, DTNHost self,
+			double pForHost, double beta, boolean useMax) {
+		double now = SimClock.getTime();
+		other.ageAll();
+		double scale = pForHost * beta;
+
+		for (int i=0, n=other.size; i<n; i++) {
+			int address = other.addresses[i];
+			DTNHost host = other.hosts[address];
+			if (host == self) {
+				continue; // don't add yourself
+			}
+
+			double pOld = (address < hosts.length && hosts[address] != null ?
+					age(address, now) : 0); // P(a,c)_old
+			double pTrans = scale * other.preds[address];
+			if (useMax) {
+				if (pTrans > pOld) {
+					set(host, pTrans);
+				}
+			}
+			else {
+				set(host, pOld + (1 - pOld) * pTrans);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of hosts that have an entry
+	 * @return the number of hosts that have an entry
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a host that has an entry. Together with {@link #size()} this
+	 * can be used for iterating over the entries.
+	 * @param i Index of the entry (0 ... size()-1)
+	 * @return The host
+	 */
+	public DTNHost getHostAt(int i) {
+		return this.hosts[this.addresses[i]];
+	}
+
+	/**
+	 * Ages an entry up to the given time
+	 * @param address Address of the host of the entry
+	 * @param now The time
+	 * @return The aged predictability
+	 */
+	private double age(int address, double now) {
+		double timeDiff = (now - times[address]) / secondsInTimeUnit;
+		if (timeDiff != 0) {
+			if (timeDiff != lastTimeDiff) {
+				lastMult = Math.pow(gamma, timeDiff);
+				lastTimeDiff = timeDiff;
+			}
+			preds[address] *= lastMult;
+			times[address] = now;
+		}
+		return preds[address];
+	}
+
+	/**
+	 * Ages all the entries up to the current time
+	 */
+	private void ageAll() {
+		double now = SimClock.getTime();
+		for (int i=0; i<size; i++) {
+			age(addresses[i], now);
+		}
+	}
+
+	/**
+	 * Makes sure the arrays have room for the given address
+	 * @param address The address
+	 */
+	private void ensureCapacity(int address) {
+		if (address < hosts.length) {
+			return;
+		}
+		int length = Math.max(address + 1, hosts.length * 2);
+		preds = Arrays.copyOf(preds, length);
+		times = Arrays.copyOf(times, length);
+		hosts = Arrays.copyOf(hosts, length);
+	}
+}
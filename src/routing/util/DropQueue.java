@@ -0,0 +1,311 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import util.IntHashMap;
+
+import core.Message;
+import core.SimError;
+
+/**
+ * Priority queue of the messages in a router's buffer, ordered by the order
+ * in which the messages should be dropped when there is no room in the
+ * buffer. The queue is an indexed binary heap, so adding and removing a
+ * message, and finding the next message to drop, take O(log n) time.
+ * <P>
+ * The order is defined by the drop policy ({@link #POLICY_FIFO},
+ * {@link #POLICY_OLDEST} or {@link #POLICY_TTL}). Messages that are equal
+ * by the policy are dropped in the order they were added to the queue.
+ * Subclasses can define other orders by overriding
+ * {@link #compare(Message, Message)}; if the order of the messages in the
+ * queue changes, {@link #invalidate()} must be called.
+ * </P>
+ */
+public class DropQueue {
+	/** Drop policy for dropping the messages in the order they were added
+	 * to the buffer */
+	public static final int POLICY_FIFO = 1;
+	/** Drop policy for dropping the message with the oldest receive time
+	 * first */
+	public static final int POLICY_OLDEST = 2;
+	/** Drop policy for dropping the message with the smallest TTL first */
+	public static final int POLICY_TTL = 3;
+
+	/** Setting string for FIFO drop policy */
+	public static final String STR_POLICY_FIFO = "FIFO";
+	/** Setting string for oldest message first drop policy */
+	public static final String STR_POLICY_OLDEST = "OLDEST";
+	/** Setting string for smallest TTL first drop policy */
+	public static final String STR_POLICY_TTL = "TTL";
+
+	/** Initial size of the heap */
+	private static final int INIT_SIZE = 16;
+
+	/** the drop policy */
+	private int policy;
+	/** entries of the messages in the queue, keyed by message handle */
+	private IntHashMap<Entry> entries;
+	/** the binary heap (the next message to drop is at the root) */
+	private Entry[] heap;
+	/** number of entries in the heap */
+	private int size;
+	/** sequence number for the next added message */
+	private long nextSeq;
+	/** is the heap in order (false after invalidation) */
+	private boolean ordered;
+
+	/**
+	 * Constructor.
+	 * @param policy The drop policy
+	 */
+	public DropQueue(int policy) {
+		this.policy = policy;
+		this.entries = new IntHashMap<Entry>();
+		this.heap = new Entry[INIT_SIZE];
+		this.size = 0;
+		this.nextSeq = 0;
+		this.ordered = true;
+	}
+
+	/**
+	 * Adds a message to the queue. If there already is a message with the
+	 * same ID in the queue, that message is replaced.
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		remove(m.getHandle());
+
+		Entry e = new Entry(m, nextSeq++);
+		this.entries.put(m.getHandle(), e);
+		if (size == heap.length) {
+			Entry[] newHeap = new Entry[size * 2];
+			System.arraycopy(heap, 0, newHeap, 0, size);
+			heap = newHeap;
+		}
+		heap[size] = e;
+		e.pos = size;
+		size++;
+		if (ordered) {
+			siftUp(e.pos);
+		}
+	}
+
+	/**
+	 * Removes a message from the queue
+	 * @param handle Handle of the message's ID
+	 * @return The removed message or null if there was no such message
+	 */
+	public Message remove(int handle) {
+		Entry e = this.entries.remove(handle);
+		if (e == null) {
+			return null;
+		}
+
+		int pos = e.pos;
+		size--;
+		if (pos != size) {
+			Entry last = heap[size];
+			heap[pos] = last;
+			last.pos = pos;
+			if (ordered) {
+				siftUp(pos);
+				siftDown(last.pos);
+			}
+		}
+		heap[size] = null;
+
+		return e.msg;
+	}
+
+	/**
+	 * Returns the next message to drop
+	 * @return The next message to drop or null if the queue is empty
+	 */
+	public Message peek() {
+		if (size == 0) {
+			return null;
+		}
+		ensureOrdered();
+		return heap[0].msg;
+	}
+
+	/**
+	 * Returns the next message to drop that is not one of the excluded
+	 * messages. The time needed grows only with the number of the excluded
+	 * messages.
+	 * @param excluded Handles of the excluded messages
+	 * @param nrofExcluded Number of the excluded messages in the array
+	 * @return The next message to drop or null if there is no such message
+	 */
+	public Message peek(int[] excluded, int nrofExcluded) {
+		if (size == 0) {
+			return null;
+		}
+		ensureOrdered();
+
+		/* best-first search from the root: every excluded entry is replaced
+		 * by its children in the set of candidates */
+		int[] candidates = new int[nrofExcluded + 2];
+		int nrofCandidates = 1;
+		candidates[0] = 0;
+
+		while (nrofCandidates > 0) {
+			int best = 0;
+			for (int i=1; i<nrofCandidates; i++) {
+				if (isBefore(heap[candidates[i]], heap[candidates[best]])) {
+					best = i;
+				}
+			}
+
+			int pos = candidates[best];
+			if (!isExcluded(heap[pos].msg, excluded, nrofExcluded)) {
+				return heap[pos].msg;
+			}
+
+			candidates[best] = candidates[--nrofCandidates];
+			int child = 2 * pos + 1;
+			for (int i=child; i<=child + 1 && i<size; i++) {
+				candidates[nrofCandidates++] = i;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the number of messages in the queue
+	 * @return the number of messages in the queue
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Tells the queue that the order of the messages has changed. The queue
+	 * is reordered (in linear time) when the next message to drop is
+	 * requested.
+	 */
+	public void invalidate() {
+		this.ordered = false;
+	}
+
+	/**
+	 * Compares two messages by the drop policy
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return A negative value if m1 should be dropped before m2, a positive
+	 * value if m2 should be dropped before m1, or 0 if the messages are equal
+	 * by the policy
+	 */
+	protected int compare(Message m1, Message m2) {
+		double diff;
+		switch (policy) {
+		case POLICY_FIFO:
+			return 0; // the order of addition decides
+		case POLICY_OLDEST:
+			diff = m1.getReceiveTime() - m2.getReceiveTime();
+			break;
+		case POLICY_TTL:
+			diff = m1.getExpiryTime() - m2.getExpiryTime();
+			break;
+		default:
+			throw new SimError("Unknown drop policy " + policy);
+		}
+
+		if (diff == 0) {
+			return 0;
+		}
+		return (diff < 0 ? -1 : 1);
+	}
+
+	/**
+	 * Returns true if the message is one of the excluded messages
+	 */
+	private boolean isExcluded(Message m, int[] excluded, int nrofExcluded) {
+		int handle = m.getHandle();
+		for (int i=0; i<nrofExcluded; i++) {
+			if (excluded[i] == handle) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Puts the heap in order if it has been invalidated
+	 */
+	private void ensureOrdered() {
+		if (!ordered) {
+			for (int i = size / 2 - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+			ordered = true;
+		}
+	}
+
+	/**
+	 * Returns true if the message of entry e1 should be dropped before the
+	 * message of entry e2
+	 */
+	private boolean isBefore(Entry e1, Entry e2) {
+		int c = compare(e1.msg, e2.msg);
+		if (c != 0) {
+			return c < 0;
+		}
+		return e1.seq < e2.seq;
+	}
+
+	private void siftUp(int pos) {
+		Entry e = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!isBefore(e, heap[parent])) {
+				break;
+			}
+			heap[pos] = heap[parent];
+			heap[pos].pos = pos;
+			pos = parent;
+		}
+		heap[pos] = e;
+		e.pos = pos;
+	}
+
+	private void siftDown(int pos) {
+		Entry e = heap[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && isBefore(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!isBefore(heap[child], e)) {
+				break;
+			}
+			heap[pos] = heap[child];
+			heap[pos].pos = pos;
+			pos = child;
+		}
+		heap[pos] = e;
+		e.pos = pos;
+	}
+
+	/**
+	 * Heap entry of a message
+	 */
+	private static class Entry {
+		private Message msg;
+		/** order of addition to the queue */
+		private long seq;
+		/** position in the heap */
+		private int pos;
+
+		public Entry(Message msg, long seq) {
+			this.msg = msg;
+			this.seq = seq;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import util.Tuple;
+
+import core.Connection;
+import core.Message;
+
+/**
+ * List of message-connection tuples with sort keys. Routers that order the
+ * messages they try to send by some router-specific value (e.g., the
+ * delivery predictability of the other host) can compute the value once
+ * per tuple when the tuple is added, instead of in every comparison of a
+ * sort. The tuples are sorted by the key and then by the secondary key
+ * (smallest first). The sort is stable, so tuples with equal keys stay in
+ * the order they were added in; adding the tuples in the send queue order
+ * breaks the ties by the queue mode.
+ */
+public class KeyedTupleList {
+	/** the tuples and their keys, in the order they were added */
+	private List<Entry> entries;
+
+	/**
+	 * Constructor. Creates an empty list.
+	 */
+	public KeyedTupleList() {
+		this.entries = new ArrayList<Entry>();
+	}
+
+	/**
+	 * Adds a tuple to the list
+	 * @param m The message of the tuple
+	 * @param con The connection of the tuple
+	 * @param key The sort key
+	 */
+	public void add(Message m, Connection con, double key) {
+		add(m, con, key, 0);
+	}
+
+	/**
+	 * Adds a tuple to the list
+	 * @param m The message of the tuple
+	 * @param con The connection of the tuple
+	 * @param key The sort key
+	 * @param secondaryKey The sort key for tuples with equal keys
+	 */
+	public void add(Message m, Connection con, double key,
+			double secondaryKey) {
+		this.entries.add(new Entry(new Tuple<Message, Connection>(m, con),
+				key, secondaryKey));
+	}
+
+	/**
+	 * Returns the number of tuples in the list
+	 * @return the number of tuples in the list
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Returns the tuples sorted by their keys
+	 * @return A new list of the tuples in the key order
+	 */
+	public List<Tuple<Message, Connection>> getSorted() {
+		Entry[] sorted = this.entries.toArray(new Entry[this.entries.size()]);
+		Arrays.sort(sorted, new Comparator<Entry>() {
+			public int compare(Entry e1, Entry e2) {
+				if (e1.key != e2.key) {
+					return (e1.key < e2.key ? -1 : 1);
+				}
+				if (e1.secondaryKey != e2.secondaryKey) {
+					return (e1.secondaryKey < e2.secondaryKey ? -1 : 1);
+				}
+				return 0;
+			}
+		});
+
+		List<Tuple<Message, Connection>> tuples =
+			new ArrayList<Tuple<Message, Connection>>(sorted.length);
+		for (Entry e : sorted) {
+			tuples.add(e.tuple);
+		}
+		return tuples;
+	}
+
+	/**
+	 * A tuple and its keys
+	 */
+	private static class Entry {
+		private Tuple<Message, Connection> tuple;
+		private double key;
+		private double secondaryKey;
+
+		public Entry(Tuple<Message, Connection> tuple, double key,
+				double secondaryKey) {
+			this.tuple = tuple;
+			this.key = key;
+			this.secondaryKey = secondaryKey;
+		}
+	}
+}
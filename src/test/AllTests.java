@@ -47,9 +47,14 @@ public class AllTests {
 		suite.addTestSuite(MaxPropDijkstraTest.class);
 		suite.addTestSuite(MaxPropRouterTest.class);
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
+		suite.addTestSuite(EventCalendarTest.class);
 		suite.addTestSuite(MessageTest.class);
+		suite.addTestSuite(IntHashMapTest.class);
+		suite.addTestSuite(DropQueueTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		suite.addTestSuite(DTNHostTest.class);
+		suite.addTestSuite(NeighborGridTest.class);
+		suite.addTestSuite(DeliveryPredictabilitiesTest.class);
 		//$JUnit-END$
 		return suite;
 	}
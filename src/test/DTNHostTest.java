@@ -7,6 +7,7 @@ import core.MessageListener;
 import core.MovementListener;
 import core.NetworkInterface;
 import core.Settings;
+import core.SimClock;
 import movement.MovementModel;
 import movement.Path;
 
@@ -67,21 +68,110 @@ public class DTNHostTest extends TestCase {
     assertFalse("Radio reported as active.", host.isRadioActive());
   }
 
+  /**
+   * Tests the velocity and the velocity change time of a moving host.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testVelocity()
+  throws Exception {
+    SimClock.reset();
+    DTNHost.reset();
+    final Path path = new Path(2.0);
+    path.addWaypoint(new Coord(0, 0));
+    path.addWaypoint(new Coord(6, 8));
+    final DTNHost host = new DTNHost(
+            new ArrayList<MessageListener>(),
+            new ArrayList<MovementListener>(),
+            "",
+            new ArrayList<NetworkInterface>(),
+            null,
+            makeMovementModel(path),
+            makeMessageRouter());
+
+    host.move(0);
+    assertEquals(1.2, host.getVelocityX(), 0.00001);
+    assertEquals(1.6, host.getVelocityY(), 0.00001);
+    assertEquals(5.0, host.getVelocityChangeTime(), 0.00001);
+    assertEquals(2.0, DTNHost.getMaxSpeed(), 0.00001);
+
+    host.move(5.0);
+    assertEquals(0.0, host.getVelocityX(), 0.00001);
+    assertEquals(0.0, host.getVelocityY(), 0.00001);
+    assertEquals(Double.MAX_VALUE, host.getVelocityChangeTime());
+  }
+
+  /**
+   * Tests moving a host along a path with a different speed on every leg.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testVariableSpeedPath()
+  throws Exception {
+    SimClock.reset();
+    DTNHost.reset();
+    final Path path = new Path();
+    path.addWaypoint(0, 0, 1.0);
+    path.addWaypoint(new Coord(3, 4), 1.0);
+    path.addWaypoint(3, 10, 2.0);
+    assertEquals(3, path.getNrofWaypoints());
+    // the coordinates are copies
+    path.getCoords().get(1).setLocation(100, 100);
+    assertEquals(new Coord(3, 4), path.getCoords().get(1));
+
+    final DTNHost host = new DTNHost(
+            new ArrayList<MessageListener>(),
+            new ArrayList<MovementListener>(),
+            "",
+            new ArrayList<NetworkInterface>(),
+            null,
+            makeMovementModel(path),
+            makeMessageRouter());
+
+    host.move(0);
+    host.move(5.0);
+    assertEquals(new Coord(3, 4), host.getLocation());
+    host.move(1.0);
+    assertEquals(new Coord(3, 6), host.getLocation());
+    assertEquals(2.0, host.getVelocityY(), 0.00001);
+    assertEquals(2.0, DTNHost.getMaxSpeed(), 0.00001);
+  }
+
   private static MovementModel makeMovementModel() {
+    return makeMovementModel(null);
+  }
+
+  private static MovementModel makeMovementModel(final Path path) {
     return new MovementModel() {
+      private Path nextPath = path;
+
       @Override
       public Path getPath() {
-        return null;
+        Path p = this.nextPath;
+        this.nextPath = null;
+        return p;
       }
 
       @Override
       public Coord getInitialLocation() {
-        return null;
+        return (path == null ? null : new Coord(0, 0));
+      }
+
+      @Override
+      public boolean isActive() {
+        return true;
+      }
+
+      @Override
+      public double nextPathAvailable() {
+        return (this.nextPath == null ? Double.MAX_VALUE : 0);
       }
 
       @Override
       public MovementModel replicate() {
-        return makeMovementModel();
+        return makeMovementModel(path);
       }
     };
   }
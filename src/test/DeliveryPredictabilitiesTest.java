@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.util.DeliveryPredictabilities;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests for the delivery predictability table of the PRoPHET routers.
+ */
+public class DeliveryPredictabilitiesTest extends TestCase {
+	private static final double GAMMA = 0.98;
+	private static final double SECONDS_IN_UNIT = 30;
+	/* amount of deviation from expected values that is OK */
+	private static final double DELTA = 0.0000001;
+
+	private SimClock clock;
+	private DTNHost a, b, c, d, e;
+	private DeliveryPredictabilities preds;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		NetworkInterface.reset();
+		DTNHost.reset();
+		TestUtils tu = new TestUtils(null, null, new TestSettings());
+		a = tu.createHost();
+		b = tu.createHost();
+		c = tu.createHost();
+		d = tu.createHost();
+		e = tu.createHost();
+		preds = new DeliveryPredictabilities(GAMMA, SECONDS_IN_UNIT);
+	}
+
+	public void testAging() {
+		assertEquals(0.0, preds.get(b));
+		preds.set(b, 0.5);
+		assertEquals(0.5, preds.get(b), DELTA);
+
+		clock.setTime(15);
+		preds.set(c, 0.8);
+
+		clock.setTime(45); /* b: 1.5 units, c: 1 unit */
+		assertEquals(0.5 * Math.pow(GAMMA, 1.5), preds.get(b), DELTA);
+		assertEquals(0.8 * GAMMA, preds.get(c), DELTA);
+		/* reading again at the same time doesn't age again */
+		assertEquals(0.5 * Math.pow(GAMMA, 1.5), preds.get(b), DELTA);
+
+		clock.setTime(75); /* both aged 1 unit more with the same multiplier */
+		assertEquals(0.8 * Math.pow(GAMMA, 2), preds.get(c), DELTA);
+		assertEquals(0.5 * Math.pow(GAMMA, 2.5), preds.get(b), DELTA);
+
+		clock.setTime(375);
+		assertEquals(0.5 * Math.pow(GAMMA, 12.5), preds.get(b), DELTA);
+		assertEquals(0.8 * Math.pow(GAMMA, 12), preds.get(c), DELTA);
+
+		assertEquals(2, preds.size());
+		assertEquals(b, preds.getHostAt(0));
+		assertEquals(c, preds.getHostAt(1));
+	}
+
+	public void testUpdateEncounter() {
+		preds.updateEncounter(b, 0.75);
+		assertEquals(0.75, preds.get(b), DELTA);
+
+		clock.setTime(30);
+		double old = 0.75 * GAMMA;
+		preds.updateEncounter(b, 0.75);
+		assertEquals(old + (1 - old) * 0.75, preds.get(b), DELTA);
+		assertEquals(1, preds.size());
+	}
+
+	public void testUpdateTransitive() {
+		DeliveryPredictabilities other =
+			new DeliveryPredictabilities(GAMMA, SECONDS_IN_UNIT);
+		other.set(a, 0.9); /* a itself must not be added */
+		other.set(c, 0.6);
+		other.set(d, 0.4);
+		preds.set(c, 0.2);
+
+		clock.setTime(30);
+		double scale = 0.7 * 0.25;
+		preds.updateTransitive(other, a, 0.7, 0.25, false);
+
+		double oldC = 0.2 * GAMMA;
+		double transC = scale * 0.6 * GAMMA;
+		assertEquals(oldC + (1 - oldC) * transC, preds.get(c), DELTA);
+		assertEquals(scale * 0.4 * GAMMA, preds.get(d), DELTA);
+		assertEquals(0.0, preds.get(a));
+		assertEquals(2, preds.size());
+	}
+
+	public void testUpdateTransitiveMax() {
+		DeliveryPredictabilities other =
+			new DeliveryPredictabilities(GAMMA, SECONDS_IN_UNIT);
+		other.set(a, 0.9);
+		other.set(c, 0.6);
+		other.set(d, 0.4);
+		other.set(e, 0.5);
+		preds.set(c, 0.05);
+		preds.set(e, 0.9);
+
+		clock.setTime(30);
+		double scale = 0.7 * 0.25;
+		preds.updateTransitive(other, a, 0.7, 0.25, true);
+
+		/* transitive value is larger than the old one */
+		assertEquals(scale * 0.6 * GAMMA, preds.get(c), DELTA);
+		assertEquals(scale * 0.4 * GAMMA, preds.get(d), DELTA);
+		/* old value is larger -> kept (aged) */
+		assertEquals(0.9 * GAMMA, preds.get(e), DELTA);
+		assertEquals(0.0, preds.get(a));
+		assertEquals(3, preds.size());
+	}
+
+	public void testSetGamma() {
+		clock.setTime(30);
+		preds.set(b, 0.5);
+		preds.set(c, 1.0);
+
+		clock.setTime(60);
+		assertEquals(GAMMA, preds.get(c), DELTA); /* 1 unit with old gamma */
+		preds.setGamma(0.5); /* b's pending unit is aged with the old gamma */
+
+		clock.setTime(90); /* 1 unit with the new gamma */
+		assertEquals(0.5 * GAMMA * 0.5, preds.get(b), DELTA);
+		assertEquals(GAMMA * 0.5, preds.get(c), DELTA);
+
+		preds.setGamma(0.5); /* no change */
+		clock.setTime(150);
+		assertEquals(0.5 * GAMMA * Math.pow(0.5, 3), preds.get(b), DELTA);
+	}
+}
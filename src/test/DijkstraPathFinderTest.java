@@ -9,7 +9,9 @@ import java.util.List;
 import junit.framework.TestCase;
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.RouteCache;
 import core.Coord;
+import core.World;
 
 public class DijkstraPathFinderTest extends TestCase {
 	private DijkstraPathFinder r;
@@ -73,6 +75,51 @@ public class DijkstraPathFinderTest extends TestCase {
 		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
 	}
 
+	public void testMapChanges() {
+		MapNode n9 = newNode(30, 0);
+		assertEquals(0, getPath(n1, n9).size()); // not connected
+
+		/* new nodes and shortcuts are taken into account */
+		n3.addNeighbor(n9);
+		n9.addNeighbor(n8);
+		checkPath(getPath(n1, n9), n1, n2, n3, n9);
+		n1.addNeighbor(n8);
+		checkPath(getPath(n1, n8), n1, n8);
+		checkPath(getPath(n4, n9), n4, n5, n6, n3, n9);
+	}
+
+	public void testRouteCache() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				RouteCache.ROUTE_CACHE_SIZE_S, "2");
+		RouteCache.reset();
+
+		try {
+			checkPath(getPath(n1, n6), n1, n2, n5, n6);
+			checkPath(getPath(n1, n6), n1, n2, n5, n6);
+			assertEquals(1, RouteCache.getNrofHits());
+			assertEquals(1, RouteCache.getNrofMisses());
+
+			/* n4-n8 is the least recently used path when n5-n3 is added */
+			checkPath(getPath(n4, n8), n4, n5, n6, n7, n8);
+			checkPath(getPath(n1, n6), n1, n2, n5, n6);
+			checkPath(getPath(n5, n3), n5, n6, n3);
+			checkPath(getPath(n4, n8), n4, n5, n6, n7, n8);
+			assertEquals(2, RouteCache.getNrofHits());
+			assertEquals(4, RouteCache.getNrofMisses());
+			checkPath(getPath(n4, n8), n4, n5, n6, n7, n8);
+			assertEquals(3, RouteCache.getNrofHits());
+
+			/* changing the map drops the cached paths */
+			n1.addNeighbor(n6);
+			checkPath(getPath(n1, n6), n1, n6);
+			assertEquals(5, RouteCache.getNrofMisses());
+		} finally {
+			new TestSettings();
+			RouteCache.reset();
+		}
+	}
+
 	private void checkPath(List<MapNode> path, MapNode ... nodes) {
 		assertEquals(nodes.length,path.size());
 
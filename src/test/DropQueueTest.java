@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.DropQueue;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the DropQueue
+ */
+public class DropQueueTest extends TestCase {
+	private SimClock clock;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Message.reset();
+		clock = SimClock.getInstance();
+		clock.setTime(0);
+	}
+
+	private Message newMessage(String id, double receiveTime, int ttl) {
+		Message m = new Message(null, null, id, 10);
+		m.setTtl(ttl);
+		m.setReceiveTime(receiveTime);
+		return m;
+	}
+
+	public void testPolicies() {
+		Message m1 = newMessage("M1", 20, 10);
+		Message m2 = newMessage("M2", 10, 30);
+		Message m3 = newMessage("M3", 30, 5);
+
+		DropQueue fifo = new DropQueue(DropQueue.POLICY_FIFO);
+		DropQueue oldest = new DropQueue(DropQueue.POLICY_OLDEST);
+		DropQueue ttl = new DropQueue(DropQueue.POLICY_TTL);
+		for (Message m : new Message[] {m1, m2, m3}) {
+			fifo.add(m);
+			oldest.add(m);
+			ttl.add(m);
+		}
+
+		assertEquals(m1, fifo.peek());
+		assertEquals(m2, oldest.peek());
+		assertEquals(m3, ttl.peek());
+
+		assertEquals(m3, ttl.remove(m3.getHandle()));
+		assertNull(ttl.remove(m3.getHandle()));
+		assertEquals(m1, ttl.peek());
+		assertEquals(2, ttl.size());
+
+		/* re-adding a message moves it to the end of the FIFO order */
+		fifo.add(m1);
+		assertEquals(3, fifo.size());
+		assertEquals(m2, fifo.peek());
+	}
+
+	public void testExcluded() {
+		DropQueue q = new DropQueue(DropQueue.POLICY_OLDEST);
+		assertNull(q.peek(new int[] {0}, 1));
+
+		Message[] msgs = new Message[10];
+		for (int i=0; i<msgs.length; i++) {
+			msgs[i] = newMessage("M" + i, i, 10);
+			q.add(msgs[i]);
+		}
+
+		int[] excluded = {msgs[0].getHandle(), msgs[1].getHandle(),
+				msgs[3].getHandle()};
+		assertEquals(msgs[0], q.peek(excluded, 0));
+		assertEquals(msgs[1], q.peek(excluded, 1));
+		assertEquals(msgs[2], q.peek(excluded, 3));
+
+		q = new DropQueue(DropQueue.POLICY_OLDEST);
+		q.add(msgs[5]);
+		assertNull(q.peek(new int[] {msgs[5].getHandle()}, 1));
+	}
+
+	public void testAgainstLinearSearch() {
+		Random rng = new Random(1);
+		DropQueue q = new DropQueue(DropQueue.POLICY_OLDEST);
+		List<Message> ref = new ArrayList<Message>();
+		int[] excluded = new int[2];
+
+		for (int i=0; i<5000; i++) {
+			if (ref.isEmpty() || rng.nextInt(3) > 0) {
+				Message m = newMessage("M" + i, rng.nextInt(100), 10);
+				q.add(m);
+				ref.add(m);
+			}
+			else {
+				Message m = ref.remove(rng.nextInt(ref.size()));
+				assertEquals(m, q.remove(m.getHandle()));
+			}
+			assertEquals(ref.size(), q.size());
+
+			int nrofExcluded = 0;
+			for (int j=0; j<excluded.length && j<ref.size(); j++) {
+				if (rng.nextBoolean()) {
+					excluded[nrofExcluded++] =
+						ref.get(rng.nextInt(ref.size())).getHandle();
+				}
+			}
+
+			/* oldest non-excluded message; equal ones in order of addition */
+			Message expected = null;
+			for (Message m : ref) {
+				boolean skip = false;
+				for (int j=0; j<nrofExcluded; j++) {
+					skip |= (excluded[j] == m.getHandle());
+				}
+				if (!skip && (expected == null ||
+						m.getReceiveTime() < expected.getReceiveTime())) {
+					expected = m;
+				}
+			}
+			assertEquals(expected, q.peek(excluded, nrofExcluded));
+
+			if (i % 100 == 0) {
+				q.invalidate();
+			}
+		}
+	}
+}
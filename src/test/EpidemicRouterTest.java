@@ -4,6 +4,10 @@
  */
 package test;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import routing.ActiveRouter;
 import routing.EpidemicRouter;
 import routing.MessageRouter;
 import core.DTNHost;
@@ -619,4 +623,126 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertNotSame(orderedIds, runMessageExchange(true));
 		assertNotSame(orderedIds, runMessageExchange(false));
 	}
+
+	public void testExactTtlExpiry() throws Exception {
+		ts.putSetting(ActiveRouter.EXACT_TTL_EXPIRY_S, "true");
+		this.setUp();
+		ts.putSetting(ActiveRouter.EXACT_TTL_EXPIRY_S, "false");
+
+		Message m1 = new Message(h1,h3, msgId1, 1);
+		h1.createNewMessage(m1);
+		checkCreates(1);
+
+		clock.advance(TTL*60 - 1);
+		updateAllNodes();
+		assertFalse(mc.next()); // a second of TTL left
+
+		clock.advance(1);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		assertEquals(h1, mc.getLastFrom());
+		assertEquals(msgId1, mc.getLastMsg().getId());
+
+		assertFalse(mc.next());
+	}
+
+	public void testRejectsAsOld() {
+		Message m1 = new Message(h1,h3, msgId1, 1);
+		h1.createNewMessage(m1);
+		checkCreates(1);
+
+		h1.connect(h2);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_START, mc.getLastType());
+		assertFalse(h2.getRouter().rejectsAsOld(m1)); // busy, not old
+
+		clock.advance(10);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+
+		assertTrue(h1.getRouter().rejectsAsOld(m1));
+		assertTrue(h2.getRouter().rejectsAsOld(m1));
+		assertFalse(h3.getRouter().rejectsAsOld(m1));
+
+		/* h2 already has the message, so it's not offered again */
+		updateAllNodes();
+		assertFalse(mc.next());
+	}
+
+	public void testConnectionsView() {
+		assertEquals(0, h1.getConnections().size());
+		int modCount = h1.getConnectionsModCount();
+
+		h1.connect(h2);
+		h1.connect(h3);
+		assertTrue(h1.getConnectionsModCount() != modCount);
+		assertEquals(2, h1.getConnections().size());
+		assertEquals(h2, h1.getConnections().get(0).getOtherNode(h1));
+		assertEquals(h3, h1.getConnections().get(1).getOtherNode(h1));
+		assertEquals(1, h2.getConnections().size());
+
+		/* the view stays the same until the connections change */
+		modCount = h1.getConnectionsModCount();
+		assertSame(h1.getConnections(), h1.getConnections());
+		assertEquals(modCount, h1.getConnectionsModCount());
+
+		disconnect(h2);
+		assertTrue(h1.getConnectionsModCount() != modCount);
+		assertEquals(1, h1.getConnections().size());
+		assertEquals(h3, h1.getConnections().get(0).getOtherNode(h1));
+		assertEquals(0, h2.getConnections().size());
+
+		try {
+			h1.getConnections().clear();
+			fail("Connections view should be read-only");
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+	}
+
+	public void testMessagesForInBufferOrder() {
+		for (int i=0; i<10; i++) {
+			h1.createNewMessage(new Message(h1, (i % 3 == 0 ? h3 : h2),
+					"M" + i, 1));
+		}
+		checkMessagesFor(h1, h2);
+		checkMessagesFor(h1, h3);
+
+		/* removals move the last message of the buffer to the freed place */
+		String[] deleted = {"M1", "M6", "M0", "M9", "M4"};
+		for (String id : deleted) {
+			h1.deleteMessage(id, true);
+			checkMessagesFor(h1, h2);
+			checkMessagesFor(h1, h3);
+		}
+		h1.createNewMessage(new Message(h1, h3, "M10", 1));
+		checkMessagesFor(h1, h2);
+		checkMessagesFor(h1, h3);
+
+		try {
+			h1.getRouter().getMessagesFor(h2).clear();
+			fail("Messages for a host should be read-only");
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+	}
+
+	/**
+	 * Checks that the messages for a host are the ones in the router's
+	 * buffer that are destined to the host, in the buffer order
+	 * @param host The host whose router is checked
+	 * @param to The destination
+	 */
+	private void checkMessagesFor(DTNHost host, DTNHost to) {
+		List<Message> expected = new ArrayList<Message>();
+		for (Message m : host.getRouter().getMessageCollection()) {
+			if (m.getTo() == to) {
+				expected.add(m);
+			}
+		}
+		assertEquals(expected, host.getRouter().getMessagesFor(to));
+	}
 }
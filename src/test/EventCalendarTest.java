@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventCalendar;
+import input.EventQueue;
+import input.ScheduledUpdatesQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the EventCalendar
+ */
+public class EventCalendarTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private ScheduledUpdatesQueue q1;
+	private ScheduledUpdatesQueue q2;
+	private ScheduledUpdatesQueue q3;
+	private List<EventQueue> queues;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		q1 = new ScheduledUpdatesQueue();
+		q2 = new ScheduledUpdatesQueue();
+		q3 = new ScheduledUpdatesQueue();
+		queues = new ArrayList<EventQueue>();
+		queues.add(q1);
+		queues.add(q2);
+		queues.add(q3);
+	}
+
+	public void testOrder() {
+		q1.addUpdate(1);
+		q1.addUpdate(5);
+		q2.addUpdate(2);
+		q2.addUpdate(3);
+		q3.addUpdate(0.5);
+		q3.addUpdate(10);
+		EventCalendar ec = new EventCalendar(queues);
+
+		assertEquals(0.5, ec.nextEventsTime());
+		assertEquals(0.5, ec.nextEvent().getTime());
+		assertEquals(1.0, ec.nextEvent().getTime());
+		assertEquals(2.0, ec.nextEventsTime());
+		assertEquals(2.0, ec.nextEvent().getTime());
+		assertEquals(3.0, ec.nextEvent().getTime());
+		assertEquals(5.0, ec.nextEvent().getTime());
+		assertEquals(10.0, ec.nextEvent().getTime());
+
+		assertEquals(MAX, ec.nextEventsTime());
+		assertEquals(MAX, ec.nextEvent().getTime());
+	}
+
+	public void testSameTimes() {
+		q1.addUpdate(4);
+		q2.addUpdate(1);
+		q2.addUpdate(4);
+		q3.addUpdate(4);
+		EventCalendar ec = new EventCalendar(queues);
+
+		assertSame(q2, ec.nextQueue());
+		ec.nextEvent();
+
+		/* same times are returned in the queue order */
+		assertSame(q1, ec.nextQueue());
+		ec.nextEvent();
+		assertSame(q2, ec.nextQueue());
+		ec.nextEvent();
+		assertSame(q3, ec.nextQueue());
+		assertEquals(4.0, ec.nextEvent().getTime());
+		assertEquals(MAX, ec.nextEventsTime());
+	}
+
+	public void testEventsTakenFromQueues() {
+		q1.addUpdate(1);
+		q1.addUpdate(2);
+		q2.addUpdate(1.5);
+		EventCalendar ec = new EventCalendar(queues);
+
+		assertSame(q1, ec.nextQueue());
+		q1.nextEvent(); // taken directly from the queue
+		assertSame(q2, ec.nextQueue());
+		assertEquals(1.5, ec.nextEvent().getTime());
+		assertEquals(2.0, ec.nextEvent().getTime());
+	}
+
+	public void testNoQueues() {
+		EventCalendar ec = new EventCalendar(new ArrayList<EventQueue>());
+		assertNull(ec.nextQueue());
+		assertEquals(MAX, ec.nextEventsTime());
+		assertEquals(MAX, ec.nextEvent().getTime());
+	}
+}
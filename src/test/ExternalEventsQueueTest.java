@@ -5,6 +5,7 @@
 package test;
 
 import input.BinaryEventsReader;
+import input.CompactEventsReader;
 import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
@@ -66,6 +67,35 @@ public class ExternalEventsQueueTest extends TestCase {
 	}
 
 
+	public void testPrefetchingEEQ() {
+		int preload = 3;
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), preload, 2);
+		checkEeq(eeq, preload);
+
+		preload = 1;
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), preload, 1);
+		checkEeq(eeq, preload);
+	}
+
+	public void testPrefetchingStoppedOnReset() {
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), 1, 1);
+		assertEquals(msgTimes[0], eeq.nextEvent().getTime());
+		/* the background thread is now waiting for space in the buffer */
+		assertTrue(isPrefetcherAlive());
+
+		ExternalEventsQueue.reset();
+		assertFalse(isPrefetcherAlive());
+	}
+
+	private boolean isPrefetcherAlive() {
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals("ExternalEventsPrefetcher") && t.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public void testBinaryEEQ() throws Exception{
 		int preload = 7;
 		File tmpBinFile = File.createTempFile("TempBinTest",
@@ -82,6 +112,63 @@ public class ExternalEventsQueueTest extends TestCase {
 	}
 
 
+	public void testCompactEEQ() throws Exception{
+		int preload = 7;
+		File tmpFile = File.createTempFile("TempCompactTest",
+				CompactEventsReader.COMPACT_EXT);
+		String fileName = tmpFile.getAbsolutePath();
+		ExternalEventsReader r = new StandardEventsReader(tempFile);
+		CompactEventsReader.storeToCompactFile(fileName, r);
+		r.close();
+
+		assertTrue(CompactEventsReader.isCompactEeFile(tmpFile));
+		eeq = new ExternalEventsQueue(fileName, preload);
+		checkEeq(eeq, preload);
+
+		/* all the fields of the events are restored */
+		r = new StandardEventsReader(tempFile);
+		List<ExternalEvent> expected = r.readEvents(100);
+		r.close();
+		CompactEventsReader cr = new CompactEventsReader(tmpFile);
+		List<ExternalEvent> events = cr.readEvents(3);
+		events.addAll(cr.readEvents(100));
+		assertEquals(0, cr.readEvents(100).size());
+		cr.close();
+		assertEquals(expected.size(), events.size());
+		for (int i=0; i<expected.size(); i++) {
+			assertEquals(expected.get(i).toString(), events.get(i).toString());
+		}
+
+		assertTrue(tmpFile.delete());
+	}
+
+	public void testCompactConnectionEvents() throws Exception {
+		File txtFile = File.createTempFile("eeqConnTest", ".tmp");
+		PrintWriter out = new PrintWriter(txtFile);
+		out.println("0.5 CONN 1 2 up");
+		out.println("1.5 CONN n1 n2 down btInterface");
+		out.println("2 C M1 n3 n4 2k 100");
+		out.close();
+		File tmpFile = File.createTempFile("TempCompactTest",
+				CompactEventsReader.COMPACT_EXT);
+		ExternalEventsReader r = new StandardEventsReader(txtFile);
+		CompactEventsReader.storeToCompactFile(tmpFile.getAbsolutePath(), r);
+		r.close();
+
+		CompactEventsReader cr = new CompactEventsReader(tmpFile);
+		List<ExternalEvent> events = cr.readEvents(10);
+		cr.close();
+		assertEquals(3, events.size());
+		assertEquals("CONN up @0.5 1<->2", events.get(0).toString());
+		assertEquals("CONN down @1.5 1<->2", events.get(1).toString());
+		assertEquals(2.0, events.get(2).getTime());
+		assertTrue(events.get(2).toString().endsWith(
+				"[3->4] size:2000 CREATE"));
+
+		assertTrue(tmpFile.delete());
+		assertTrue(txtFile.delete());
+	}
+
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
 		ExternalEvent ee;
 		assertEquals(msgTimes[0],eeq.nextEventsTime());
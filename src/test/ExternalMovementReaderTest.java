@@ -63,6 +63,22 @@ public class ExternalMovementReaderTest extends TestCase {
 		assertEquals(0, list.size());
 	}
 
+	public void testPrefetchingReader() {
+		List<Tuple<String, Coord>> list;
+		r.startPrefetching(1);
+
+		for (int i=0; i<times.length; i++) {
+			list = r.readNextMovements();
+			checkTuples(list, ids, coords[i]);
+			assertEquals(times[i], r.getLastTimeStamp());
+		}
+
+		list = r.readNextMovements();
+		assertEquals(0, list.size());
+		assertEquals(times[times.length-1], r.getLastTimeStamp());
+		r.stopPrefetching();
+	}
+
 	private void checkTuples(List<Tuple<String, Coord>> list, String[] ids,
 			Coord[] coords) {
 
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.IntHashMap;
+
+/**
+ * Tests for the IntHashMap
+ */
+public class IntHashMapTest extends TestCase {
+	private IntHashMap<String> map;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		map = new IntHashMap<String>();
+	}
+
+	public void testPutGetRemove() {
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(17, "b"));
+		assertEquals("a", map.put(1, "c"));
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(1));
+		assertEquals("b", map.get(17));
+		assertNull(map.get(2));
+
+		assertEquals("c", map.remove(1));
+		assertNull(map.remove(1));
+		assertFalse(map.containsKey(1));
+		assertTrue(map.containsKey(17));
+		assertEquals(1, map.size());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(17));
+	}
+
+	public void testValuesOrder() {
+		for (int i=0; i<5; i++) {
+			map.put(i * 100, "v" + i);
+		}
+		map.remove(100);
+
+		String[] expected = {"v0", "v4", "v2", "v3"};
+		int i = 0;
+		for (String v : map.values()) {
+			assertEquals(expected[i++], v);
+		}
+		assertEquals(4, i);
+		assertEquals(1, map.indexOf(400));
+		assertEquals(3, map.indexOf(300));
+		assertEquals(-1, map.indexOf(100));
+		assertEquals("v4", map.valueAt(1));
+		assertEquals("v3", map.valueAt(3));
+	}
+
+	public void testAgainstHashMap() {
+		HashMap<Integer, String> ref = new HashMap<Integer, String>();
+		Random rng = new Random(1);
+
+		for (int i=0; i<20000; i++) {
+			int key = rng.nextInt(500);
+			if (rng.nextBoolean()) {
+				assertEquals(ref.put(key, "" + i), map.put(key, "" + i));
+			}
+			else {
+				assertEquals(ref.remove(key), map.remove(key));
+			}
+			assertEquals(ref.size(), map.size());
+		}
+
+		for (int key=0; key<500; key++) {
+			assertEquals(ref.get(key), map.get(key));
+		}
+		assertEquals(ref.size(), map.values().size());
+		assertTrue(ref.values().containsAll(map.values()));
+	}
+}
@@ -4,6 +4,7 @@
  */
 package test;
 
+import input.CompactMapFile;
 import input.WKTMapReader;
 
 import java.io.File;
@@ -192,6 +193,48 @@ public class MapBasedMovementTest extends TestCase {
 		assertTrue(thirdMap == fourthMap);
 	}
 
+	/**
+	 * Tests storing a map to a compact map file and reading it back
+	 */
+	public void testCompactMapFile() throws IOException {
+		WKTMapReader reader = new WKTMapReader(true);
+		reader.addPaths(new StringReader(WKT), 1);
+		reader.addPaths(new StringReader("LINESTRING (4.0 1.0, 5.0 2.0)"), 2);
+		SimMap original = reader.getMap();
+		original.mirror();
+		original.translate(-1, 2);
+
+		File f = File.createTempFile("compactMapTest", ".bin");
+		f.deleteOnExit();
+		CompactMapFile.store(f, original, 2);
+		CompactMapFile cmf = new CompactMapFile(f);
+		SimMap loaded = cmf.getMap();
+
+		assertEquals(2, cmf.getNrofMapFiles());
+		assertEquals(original.getOffset(), loaded.getOffset());
+		assertTrue(loaded.isMirrored());
+		assertEquals(original.getMinBound(), loaded.getMinBound());
+		assertEquals(original.getMaxBound(), loaded.getMaxBound());
+
+		List<MapNode> nodes = original.getNodes();
+		List<MapNode> loadedNodes = loaded.getNodes();
+		assertEquals(nodes.size(), loadedNodes.size());
+		for (int i=0; i<nodes.size(); i++) {
+			MapNode n = nodes.get(i);
+			MapNode ln = loadedNodes.get(i);
+			// same order, locations, types and neighbor order
+			assertEquals(n.getLocation(), ln.getLocation());
+			assertEquals(n.isType(1), ln.isType(1));
+			assertEquals(n.isType(2), ln.isType(2));
+			assertEquals(n.getNeighbors().size(), ln.getNeighbors().size());
+			for (int j=0; j<n.getNeighbors().size(); j++) {
+				assertEquals(n.getNeighbors().get(j).getLocation(),
+						ln.getNeighbors().get(j).getLocation());
+			}
+			assertSame(ln, loaded.getNodeByCoord(ln.getLocation()));
+		}
+	}
+
 	public void testHostMoving() {
 		final int NROF = 15;
 
@@ -154,4 +154,38 @@ public class MaxPropDijkstraTest extends TestCase {
 
 	}
 
+	public void testReplicateIsIndependent() {
+		MeetingProbabilitySet mps = mapping.get(0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+		MeetingProbabilitySet replica = mps.replicate();
+
+		mps.updateMeetingProbFor(3);
+		assertEquals(0.5, replica.getProbFor(1), DELTA);
+		assertEquals(0.5, replica.getProbFor(2), DELTA);
+		assertEquals(0.0, replica.getProbFor(3), DELTA);
+		assertEquals(2, replica.size());
+		assertEquals(0.25, mps.getProbFor(1), DELTA);
+		assertEquals(0.5, mps.getProbFor(3), DELTA);
+		assertEquals(3, mps.size());
+	}
+
+	public void testResumedSearch() {
+		mapping.get(0).updateMeetingProbFor(1);
+		mapping.get(1).updateMeetingProbFor(2);
+		mapping.get(2).updateMeetingProbFor(3);
+
+		assertEquals(0.0, mpd.getCost(0, 1), DELTA);
+		assertEquals(0.0, mpd.getCost(0, 3), DELTA);
+		assertEquals(Double.MAX_VALUE, mpd.getCost(0, 4));
+		assertEquals(Double.MAX_VALUE, mpd.getCost(1, 0));
+
+		/* old results are used until the searches are invalidated */
+		mapping.get(0).updateMeetingProbFor(3);
+		assertEquals(0.0, mpd.getCost(0, 3), DELTA);
+		mpd.invalidate();
+		assertEquals(0.5, mpd.getCost(0, 1), DELTA);
+		assertEquals(0.5, mpd.getCost(0, 3), DELTA);
+	}
+
 }
@@ -60,5 +60,29 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testReplicate() {
+		msg.addProperty("foo", "value1");
+		Message rep = msg.replicate();
+
+		assertEquals(msg.getId(), rep.getId());
+		assertEquals(msg.getHandle(), rep.getHandle());
+		assertTrue(msg.getUniqueId() != rep.getUniqueId());
+		assertEquals(10, rep.getTtl());
+		assertEquals("value1", rep.getProperty("foo"));
+
+		/* changes to a replicate must not affect the original */
+		rep.setTtl(20);
+		rep.updateProperty("foo", "value2");
+		rep.addNodeOnPath(to);
+		assertEquals(10, msg.getTtl());
+		assertEquals(20, rep.getTtl());
+		assertEquals("value1", msg.getProperty("foo"));
+		assertEquals("value2", rep.getProperty("foo"));
+		assertEquals(0, msg.getHopCount());
+		assertEquals(1, rep.getHopCount());
+		assertEquals(2, rep.getHops().size());
+	}
+
 
 }
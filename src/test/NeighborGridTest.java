@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.NeighborGrid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.World;
+
+/**
+ * Tests for the NeighborGrid connectivity optimizer
+ */
+public class NeighborGridTest extends TestCase {
+	private static final double RANGE = 1.0;
+	private TestUtils utils;
+	private NeighborGrid grid;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				NeighborGrid.NEIGHBOR_GRID_S, "true");
+		NeighborGrid.reset();
+
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + RANGE);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		utils = new TestUtils(null, null, ts);
+		grid = NeighborGrid.NeighborGridFactory(TestUtils.IFACE_NS.hashCode(),
+				RANGE);
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		new TestSettings();
+		NeighborGrid.reset();
+	}
+
+	public void testNearInterfaces() {
+		NetworkInterface n1 = iface(utils.createHost(new Coord(10, 10)));
+		NetworkInterface n2 = iface(utils.createHost(new Coord(10.5, 10)));
+		NetworkInterface n3 = iface(utils.createHost(new Coord(20, 20)));
+
+		Collection<NetworkInterface> near = grid.getNearInterfaces(n1);
+		assertEquals(2, near.size());
+		assertTrue(near.contains(n1));
+		assertTrue(near.contains(n2));
+		assertFalse(near.contains(n3));
+
+		near = grid.getNearInterfaces(n3);
+		assertEquals(1, near.size());
+		assertTrue(near.contains(n3));
+	}
+
+	public void testMovement() {
+		DTNHost h1 = utils.createHost(new Coord(10, 10));
+		DTNHost h2 = utils.createHost(new Coord(10.5, 10));
+		DTNHost h3 = utils.createHost(new Coord(20, 20));
+		NetworkInterface n1 = iface(h1);
+		NetworkInterface n2 = iface(h2);
+		NetworkInterface n3 = iface(h3);
+		assertTrue(grid.getNearInterfaces(n1).contains(n2));
+
+		h3.setLocation(new Coord(10, 10.5));
+		grid.updateLocation(n3);
+		assertTrue(grid.getNearInterfaces(n1).contains(n3));
+		assertTrue(grid.getNearInterfaces(n3).contains(n1));
+
+		h2.setLocation(new Coord(30, 10));
+		grid.updateLocation(n2);
+		assertFalse(grid.getNearInterfaces(n1).contains(n2));
+		assertFalse(grid.getNearInterfaces(n2).contains(n1));
+		assertEquals(1, grid.getNearInterfaces(n2).size());
+	}
+
+	public void testRemoveInterface() {
+		NetworkInterface n1 = iface(utils.createHost(new Coord(10, 10)));
+		NetworkInterface n2 = iface(utils.createHost(new Coord(10.5, 10)));
+		NetworkInterface n3 = iface(utils.createHost(new Coord(10, 10.5)));
+		assertEquals(3, grid.getNearInterfaces(n3).size());
+
+		grid.removeInterface(n1);
+		assertEquals(2, grid.getNearInterfaces(n3).size());
+		assertTrue(grid.getNearInterfaces(n3).contains(n2));
+		assertFalse(grid.getNearInterfaces(n2).contains(n1));
+		assertEquals(2, grid.getAllInterfaces().size());
+	}
+
+	/**
+	 * Moves random subsets of hosts around and compares the neighbor sets to
+	 * the ones computed by checking all pairs
+	 */
+	public void testRandomMovement() {
+		Random rng = new Random(1);
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<100; i++) {
+			hosts.add(utils.createHost(randomCoord(rng)));
+		}
+
+		for (int round=0; round<20; round++) {
+			/* every other round most of the hosts move */
+			double moveProb = (round % 2 == 0 ? 0.9 : 0.1);
+			for (DTNHost h : hosts) {
+				if (rng.nextDouble() < moveProb) {
+					h.setLocation(randomCoord(rng));
+					grid.updateLocation(iface(h));
+				}
+			}
+
+			for (DTNHost h : hosts) {
+				Collection<NetworkInterface> near =
+					grid.getNearInterfaces(iface(h));
+				int nrofNear = 0;
+				for (DTNHost other : hosts) {
+					boolean inRange = h.getLocation().distance(
+							other.getLocation()) <= RANGE;
+					assertEquals(inRange, near.contains(iface(other)));
+					nrofNear += (inRange ? 1 : 0);
+				}
+				assertEquals(nrofNear, near.size());
+			}
+		}
+	}
+
+	private Coord randomCoord(Random rng) {
+		return new Coord(rng.nextDouble() * 10, rng.nextDouble() * 10);
+	}
+
+	private NetworkInterface iface(DTNHost h) {
+		return h.getInterfaces().get(0);
+	}
+}
@@ -45,4 +45,19 @@ public class WKTPointReaderTest extends TestCase {
 			assertEquals(coords.get(i), POINTS[i]);
 		}
 	}
+
+	public void testNumberFormats() throws Exception {
+		String data = "POINT (-1.5 0.000125)\n" +
+			"POINT(1e3 -2.5E-2)\n" +
+			"POINT (+7 007.10 3.0)\n" + // third value is skipped
+			"POINT (12345678901234567890 0.1234567890123456789)\n";
+		List<Coord> coords = r.readPoints(new StringReader(data));
+
+		assertEquals(4, coords.size());
+		assertEquals(new Coord(-1.5, 0.000125), coords.get(0));
+		assertEquals(new Coord(1e3, -2.5E-2), coords.get(1));
+		assertEquals(new Coord(7, 7.1), coords.get(2));
+		assertEquals(new Coord(Double.parseDouble("12345678901234567890"),
+				Double.parseDouble("0.1234567890123456789")), coords.get(3));
+	}
 }
@@ -12,7 +12,9 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.TestCase;
@@ -237,6 +239,38 @@ public class WKTReaderTest extends TestCase {
 		assertFalse(map.getNodeByCoord(n11c).isType(2));
 	}
 
+	public void testParallelLoading() throws Exception {
+		String[] data = {TST_TOPOLOGY, ADD_TOPOLOGY, ADD_TOPOLOGY2};
+		int[] types = {1, 2, 31};
+		List<File> files = new ArrayList<File>();
+		for (String d : data) {
+			File f = File.createTempFile("WKTReaderTest","tmp");
+			f.deleteOnExit();
+			PrintWriter pw = new PrintWriter(f);
+			pw.println(d);
+			pw.close();
+			files.add(f);
+		}
+
+		WKTMapReader sequential = new WKTMapReader(true);
+		for (int i=0; i<files.size(); i++) {
+			sequential.addPaths(files.get(i), types[i]);
+		}
+		WKTMapReader parallel = new WKTMapReader(true);
+		parallel.addPaths(files, types, 3);
+
+		// same nodes in the same order with the same types and neighbors
+		List<MapNode> seqNodes = sequential.getMap().getNodes();
+		List<MapNode> parNodes = parallel.getMap().getNodes();
+		assertEquals(seqNodes.size(), parNodes.size());
+		for (int i=0; i<seqNodes.size(); i++) {
+			assertEquals(seqNodes.get(i).toString(),
+					parNodes.get(i).toString());
+			assertEquals(seqNodes.get(i).getNeighbors().toString(),
+					parNodes.get(i).getNeighbors().toString());
+		}
+	}
+
 	private void basicNodesTests(WKTMapReader reader) {
 		Collection<MapNode> col = reader.getNodes();
 
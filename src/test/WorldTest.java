@@ -5,15 +5,22 @@
 package test;
 
 import input.EventQueue;
+import input.ExternalEvent;
+import input.MessageRelayEvent;
+import interfaces.ConnectivityGrid;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import junit.framework.TestCase;
+import movement.MovementModel;
+import core.ConnectionListener;
 import core.DTNHost;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
 import core.SimClock;
+import core.SimScenario;
 import core.UpdateListener;
 import core.World;
 
@@ -36,6 +43,7 @@ public class WorldTest extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 		SimClock.reset();
+		DTNHost.reset();
 		TestSettings testSettings = new TestSettings();
 		testSettings.setNameSpace(TestUtils.IFACE_NS);
 		testSettings.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
@@ -80,6 +88,97 @@ public class WorldTest extends TestCase {
 		}
 	}
 
+	public void testParallelUpdate() {
+		TestSettings ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(World.PARALLEL_UPDATE_S, "true");
+		ts.putSetting(World.PARALLEL_THREADS_S, "2");
+		TestScenario scen = new TestScenario();
+		this.world = new World(scen.getHosts(), scen.getWorldSizeX(),
+				scen.getWorldSizeY(), scen.getUpdateInterval(),
+				scen.getUpdateListeners(), scen.simulateConnections(),
+				scen.getExternalEvents());
+
+		world.scheduleUpdate(0.25);
+		for (int i=0; i<10; i++) {
+			world.update();
+		}
+
+		assertEquals(1.0, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(11);
+	}
+
+	/**
+	 * Runs the same scenario with sequential and parallel update and checks
+	 * that the connection events are the same (also the initiator and the
+	 * order of the events within the same update)
+	 */
+	public void testParallelUpdateEvents() {
+		try {
+			List<String> sequential = runScenarioEvents(false);
+			List<String> parallel = runScenarioEvents(true);
+			assertTrue(sequential.size() > 100);
+			assertEquals(sequential, parallel);
+		} finally {
+			new TestSettings();
+			resetScenario();
+		}
+	}
+
+	private void resetScenario() {
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		ConnectivityGrid.reset();
+		MovementModel.reset();
+		SimScenario.reset();
+	}
+
+	private List<String> runScenarioEvents(boolean parallelUpdate) {
+		TestSettings ts = new TestSettings();
+		ts.putSetting("Scenario.endTime", "200");
+		ts.putSetting("MovementModel.worldSize", "200,200");
+		ts.putSetting("MovementModel.rngSeed", "1");
+		ts.putSetting("Group.groupID", "n");
+		ts.putSetting("Group.nrofHosts", "60");
+		ts.putSetting("Group.movementModel", "RandomWaypoint");
+		ts.putSetting("Group.speed", "2,10");
+		ts.putSetting("Group.waitTime", "0,10");
+		ts.putSetting("Group.router", "PassiveRouter");
+		ts.putSetting("Group.bufferSize", "1M");
+		ts.putSetting("Group.nrofInterfaces", "1");
+		ts.putSetting("Group.interface1", "iface");
+		ts.putSetting("iface.type", "SimpleBroadcastInterface");
+		ts.putSetting("iface.transmitSpeed", "250k");
+		ts.putSetting("iface.transmitRange", "10");
+		/* small cells -> hosts often change cells between the updates */
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + ".cellSizeMult", "1");
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.PARALLEL_UPDATE_S, "" + parallelUpdate);
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.PARALLEL_THREADS_S, "4");
+		resetScenario();
+
+		final List<String> events = new ArrayList<String>();
+		SimScenario scen = SimScenario.getInstance();
+		scen.addConnectionListener(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				events.add(SimClock.getTime() + " " + host1 + " " + host2 +
+						" up");
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				events.add(SimClock.getTime() + " " + host1 + " " + host2 +
+						" down");
+			}
+		});
+
+		World w = scen.getWorld();
+		w.warmupMovementModel(0);
+		while (SimClock.getTime() < scen.getEndTime()) {
+			w.update();
+		}
+		return events;
+	}
+
 	public void testUpdateScheduling() {
 		world.scheduleUpdate(0.25);
 
@@ -102,6 +201,58 @@ public class WorldTest extends TestCase {
 	}
 
 
+	public void testBatchEvents() {
+		TestSettings ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(World.BATCH_EVENTS_S, "true");
+		ts.putSetting(World.EVENT_BATCH_WINDOW_S, "0.01");
+		eQueues.add(new EventList(
+				new MessageRelayEvent(1, 2, "M1", 0.05,
+						MessageRelayEvent.ABORTED),
+				new MessageRelayEvent(3, 4, "M2", 0.055,
+						MessageRelayEvent.ABORTED),
+				new MessageRelayEvent(5, 6, "M3", 0.07,
+						MessageRelayEvent.ABORTED)));
+		TestScenario scen = new TestScenario();
+		this.world = new World(scen.getHosts(), scen.getWorldSizeX(),
+				scen.getWorldSizeY(), scen.getUpdateInterval(),
+				scen.getUpdateListeners(), scen.simulateConnections(),
+				scen.getExternalEvents());
+
+		world.update();
+
+		/* first two events in one batch, the third one in another */
+		assertEquals(3, testHosts.get(0).nrofUpdate);
+		for (int i=1; i<=6; i++) {
+			assertEquals(4, testHosts.get(i).nrofUpdate);
+		}
+		assertEquals(3, testHosts.get(7).nrofUpdate);
+		assertEquals("M2", testHosts.get(4).abortedId);
+		assertEquals("M3", testHosts.get(6).abortedId);
+	}
+
+	/** Event queue of a fixed list of events */
+	private class EventList implements EventQueue {
+		private List<ExternalEvent> events;
+
+		public EventList(ExternalEvent... events) {
+			this.events = new ArrayList<ExternalEvent>(Arrays.asList(events));
+		}
+
+		public ExternalEvent nextEvent() {
+			if (events.isEmpty()) {
+				return new ExternalEvent(Double.MAX_VALUE);
+			}
+			return events.remove(0);
+		}
+
+		public double nextEventsTime() {
+			if (events.isEmpty()) {
+				return Double.MAX_VALUE;
+			}
+			return events.get(0).getTime();
+		}
+	}
+
 	/** Dummy scenario for providing test values for the World */
 	@SuppressWarnings("serial")
 	private class TestScenario extends core.SimScenario {
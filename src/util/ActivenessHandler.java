@@ -101,6 +101,15 @@ public class ActivenessHandler {
 		return timesList;
 	}
 
+	/**
+	 * Returns true if neither active times nor active periods are defined,
+	 * i.e., the node is always active
+	 * @return true if the node is always active
+	 */
+	public boolean isAlwaysActive() {
+		return this.activeTimes == null && this.activePeriods == null;
+	}
+
 	/**
 	 * Returns true if node should be active at the moment
 	 * @return true if node should be active at the moment
@@ -115,7 +124,7 @@ public class ActivenessHandler {
 	 * @param offset The offset
 	 * @return true if node should be active, false if not
 	 */
-	public boolean isActive(int offset) {
+	public synchronized boolean isActive(int offset) {
 		if (this.activeTimes == null) {
 			if (this.activePeriods == null) {
 				return true; // no inactive times nor periods -> always active
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with non-negative primitive int keys. Uses open addressing
+ * with linear probing, so no objects are created for the keys or the
+ * entries. The values are kept in a dense array, so iterating over them is
+ * as fast as iterating over a list. The iteration order is the insertion
+ * order, except that removing a value moves the last value to its place.
+ * @param <V> Type of the values
+ */
+public class IntHashMap<V> {
+	private static final int INITIAL_CAPACITY = 16;
+	/** marker for an empty slot in the hash table */
+	private static final int EMPTY = -1;
+
+	/** hash table of indexes to the dense arrays */
+	private int[] table;
+	/** keys in the order of the values */
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	/** number of structural modifications (for detecting concurrent
+	 * modification during iteration) */
+	private int modCount;
+	private Collection<V> valuesView;
+
+	/**
+	 * Creates a new, empty map
+	 */
+	public IntHashMap() {
+		this.keys = new int[INITIAL_CAPACITY];
+		this.values = new Object[INITIAL_CAPACITY];
+		this.table = newTable(INITIAL_CAPACITY * 2);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the number of values in the map
+	 * @return the number of values in the map
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the map is empty
+	 * @return true if the map is empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Returns true if the map contains a value for the key
+	 * @param key The key
+	 * @return true if the map contains a value for the key
+	 */
+	public boolean containsKey(int key) {
+		return findSlot(key) >= 0;
+	}
+
+	/**
+	 * Returns the position of the key's value in the iteration order of
+	 * {@link #values()}
+	 * @param key The key
+	 * @return The position of the value or -1 if there is no value for the key
+	 */
+	public int indexOf(int key) {
+		int slot = findSlot(key);
+		return (slot < 0 ? -1 : this.table[slot]);
+	}
+
+	/**
+	 * Returns the value at a position in the iteration order of
+	 * {@link #values()}
+	 * @param index The position (0 &lt;= index &lt; size())
+	 * @return The value at the position
+	 */
+	@SuppressWarnings("unchecked")
+	public V valueAt(int index) {
+		assert index >= 0 && index < this.size : "Invalid index " + index;
+		return (V)this.values[index];
+	}
+
+	/**
+	 * Returns the value for the key
+	 * @param key The key
+	 * @return The value or null if there is no value for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int slot = findSlot(key);
+		return (slot < 0 ? null : (V)this.values[this.table[slot]]);
+	}
+
+	/**
+	 * Puts a value to the map
+	 * @param key The key of the value (must not be negative)
+	 * @param value The value
+	 * @return The previous value for the key or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		assert key >= 0 : "Negative key " + key;
+		int slot = findSlot(key);
+		if (slot >= 0) {
+			V old = (V)this.values[this.table[slot]];
+			this.values[this.table[slot]] = value;
+			return old;
+		}
+
+		if (this.size == this.keys.length) {
+			grow();
+			slot = findSlot(key); /* the table was rebuilt */
+		}
+		this.keys[this.size] = key;
+		this.values[this.size] = value;
+		this.table[-slot - 1] = this.size;
+		this.size++;
+		this.modCount++;
+		return null;
+	}
+
+	/**
+	 * Removes the value of the key from the map
+	 * @param key The key
+	 * @return The removed value or null if there was no value for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int slot = findSlot(key);
+		if (slot < 0) {
+			return null;
+		}
+
+		int index = this.table[slot];
+		V old = (V)this.values[index];
+		deleteSlot(slot);
+
+		/* move the last value to the freed place */
+		int last = this.size - 1;
+		if (index != last) {
+			this.keys[index] = this.keys[last];
+			this.values[index] = this.values[last];
+			this.table[findSlot(this.keys[index])] = index;
+		}
+		this.values[last] = null;
+		this.size--;
+		this.modCount++;
+		return old;
+	}
+
+	/**
+	 * Removes all the values from the map
+	 */
+	public void clear() {
+		Arrays.fill(this.table, EMPTY);
+		Arrays.fill(this.values, 0, this.size, null);
+		this.size = 0;
+		this.modCount++;
+	}
+
+	/**
+	 * Returns a collection view of the values. The view can't be modified.
+	 * @return The values
+	 */
+	public Collection<V> values() {
+		if (this.valuesView == null) {
+			this.valuesView = new AbstractCollection<V>() {
+				public Iterator<V> iterator() {
+					return new ValueIterator();
+				}
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return this.valuesView;
+	}
+
+	/**
+	 * Finds the slot of the key in the hash table
+	 * @param key The key
+	 * @return The slot of the key, or (-(insertion slot) - 1) if the key
+	 * is not in the table
+	 */
+	private int findSlot(int key) {
+		int mask = this.table.length - 1;
+		int slot = hash(key) & mask;
+		while (true) {
+			int index = this.table[slot];
+			if (index == EMPTY) {
+				return -slot - 1;
+			}
+			if (this.keys[index] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Empties a slot of the hash table and moves the following entries of
+	 * the same probe sequence backwards so that they can still be found
+	 * @param slot The slot to empty
+	 */
+	private void deleteSlot(int slot) {
+		int mask = this.table.length - 1;
+		int hole = slot;
+		int next = (slot + 1) & mask;
+		while (this.table[next] != EMPTY) {
+			int home = hash(this.keys[this.table[next]]) & mask;
+			/* can the entry be moved to the hole (is the hole between the
+			   entry's home slot and the entry, cyclically)? */
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				this.table[hole] = this.table[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		this.table[hole] = EMPTY;
+	}
+
+	/**
+	 * Doubles the capacity of the map
+	 */
+	private void grow() {
+		int capacity = this.keys.length * 2;
+		this.keys = Arrays.copyOf(this.keys, capacity);
+		this.values = Arrays.copyOf(this.values, capacity);
+		this.table = newTable(capacity * 2);
+		for (int i=0; i<this.size; i++) {
+			this.table[-findSlot(this.keys[i]) - 1] = i;
+		}
+	}
+
+	private static int[] newTable(int length) {
+		int[] t = new int[length];
+		Arrays.fill(t, EMPTY);
+		return t;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Iterator over the values
+	 */
+	private class ValueIterator implements Iterator<V> {
+		private int next = 0;
+		private int expectedModCount = modCount;
+
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+			return (V)values[next++];
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}